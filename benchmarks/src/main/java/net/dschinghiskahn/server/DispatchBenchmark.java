@@ -0,0 +1,114 @@
+package net.dschinghiskahn.server;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dschinghiskahn.objectdecoupler.IObjectReceiver;
+import net.dschinghiskahn.server.net.INetworkData;
+
+/**
+ * Measures the handoff latency of the connection queue, from a worker thread
+ * adding an object to the receiver being called, for the sequential
+ * {@link net.dschinghiskahn.objectdecoupler.ObjectDecoupler} dispatch, the
+ * executor based dispatch and the dispatch striped across lanes. Lives in the server package to reach the
+ * package-private queue without sockets distorting the result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark implements IObjectReceiver<INetworkData> {
+
+	private static final int LANES = 4;
+
+	private static final INetworkData NETWORK_DATA = new INetworkData() {
+
+		@Override
+		public InetSocketAddress getSender() {
+			return null;
+		}
+
+		@Override
+		public InetSocketAddress getReceiver() {
+			return null;
+		}
+	};
+
+	@Param({ "DECOUPLER", "EXECUTOR", "VIRTUAL_THREADS", "LANES" })
+	public String dispatch;
+
+	private ConnectionQueue connectionQueue;
+	private ExecutorService executor;
+	private volatile Thread waiter;
+	private volatile boolean isDelivered;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		connectionQueue = new ConnectionQueue() {
+
+			@Override
+			protected void hookAboveHighWaterMark(int depth) {
+			}
+
+			@Override
+			protected void hookBelowLowWaterMark(int depth) {
+			}
+
+			@Override
+			protected void hookDropped(INetworkData networkData) {
+			}
+		};
+		if ("EXECUTOR".equals(dispatch)) {
+			executor = Executors.newCachedThreadPool();
+		} else if ("VIRTUAL_THREADS".equals(dispatch)) {
+			executor = Server.newVirtualThreadPerTaskExecutor();
+		} else if ("LANES".equals(dispatch)) {
+			executor = Executors.newFixedThreadPool(LANES);
+		}
+		connectionQueue.setExecutor(executor, "LANES".equals(dispatch) ? LANES : 0);
+		connectionQueue.registerReceiver(this);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		connectionQueue.stop();
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public void receiveObject(INetworkData networkData) {
+		isDelivered = true;
+		LockSupport.unpark(waiter);
+	}
+
+	@Benchmark
+	public void handoff() {
+		waiter = Thread.currentThread();
+		isDelivered = false;
+		connectionQueue.add(NETWORK_DATA);
+		while (!isDelivered) {
+			LockSupport.parkNanos(this, 1000);
+		}
+	}
+}
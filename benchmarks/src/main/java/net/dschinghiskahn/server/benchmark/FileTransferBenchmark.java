@@ -0,0 +1,127 @@
+package net.dschinghiskahn.server.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dschinghiskahn.objectdecoupler.IObjectReceiver;
+import net.dschinghiskahn.server.Server;
+import net.dschinghiskahn.server.net.INetworkData;
+import net.dschinghiskahn.server.net.TcpNetworkData;
+
+/**
+ * Compares sending a file through the stream of a {@link TcpNetworkData} with
+ * {@link TcpNetworkData#sendFile(FileChannel, long, long)} over loopback. A
+ * client thread drains the socket so only the sending side is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileTransferBenchmark implements IObjectReceiver<INetworkData> {
+
+	@Param({ "65536", "1048576", "16777216" })
+	public int fileSize;
+
+	private final BlockingQueue<TcpNetworkData> connections = new LinkedBlockingQueue<TcpNetworkData>();
+	private Server server;
+	private Socket client;
+	private Thread drain;
+	private File file;
+	private FileInputStream fileInput;
+	private TcpNetworkData connection;
+	private byte[] copyBuffer;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, InterruptedException {
+		file = File.createTempFile("benchmark", ".bin");
+		file.deleteOnExit();
+		FileOutputStream fileOutput = new FileOutputStream(file);
+		try {
+			fileOutput.write(new byte[fileSize]);
+		} finally {
+			fileOutput.close();
+		}
+		fileInput = new FileInputStream(file);
+		copyBuffer = new byte[64 * 1024];
+
+		server = ServerConfiguration.DEFAULT.create(1);
+		server.registerSocketReceiver(this);
+		client = new Socket(ServerConfiguration.HOSTNAME, ServerConfiguration.PORT);
+		final InputStream clientInput = client.getInputStream();
+		drain = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				byte[] buffer = new byte[64 * 1024];
+				try {
+					while (clientInput.read(buffer) >= 0) {
+						// Intentionally left empty
+					}
+				} catch (IOException e) {
+					// Intentionally left empty
+				}
+			}
+		}, "BenchmarkDrain");
+		drain.setDaemon(true);
+		drain.start();
+		connection = connections.take();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		connection.close();
+		client.close();
+		fileInput.close();
+		server.shutdown();
+		file.delete();
+	}
+
+	@Override
+	public void receiveObject(INetworkData networkData) {
+		if (networkData instanceof TcpNetworkData) {
+			connections.add((TcpNetworkData) networkData);
+		}
+	}
+
+	@Benchmark
+	public void stream() throws IOException {
+		FileChannel channel = fileInput.getChannel();
+		channel.position(0);
+		OutputStream output = connection.getTcpOutputStream();
+		int read;
+		while ((read = fileInput.read(copyBuffer)) > 0) {
+			output.write(copyBuffer, 0, read);
+		}
+		output.flush();
+	}
+
+	@Benchmark
+	public void sendFile() throws IOException {
+		connection.sendFile(fileInput.getChannel(), 0, fileSize);
+	}
+}
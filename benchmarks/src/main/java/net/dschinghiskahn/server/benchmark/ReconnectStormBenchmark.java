@@ -0,0 +1,131 @@
+package net.dschinghiskahn.server.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dschinghiskahn.objectdecoupler.IObjectReceiver;
+import net.dschinghiskahn.server.Server;
+import net.dschinghiskahn.server.net.INetworkData;
+import net.dschinghiskahn.server.net.TcpNetworkData;
+
+/**
+ * Measures how many TCP connections per second a {@link Server} accepts while
+ * 50000 clients reconnect at once, e.g. after a failover. A single client
+ * thread fires non-blocking connects as fast as the kernel completes them,
+ * keeping up to a given number in flight, and resets every connection once it
+ * is established. Each operation is one connection; an invocation ends once
+ * the receiver got all of them. Compare
+ * <code>-p configuration=LARGE_BACKLOG,ACCEPT_BATCH</code>. Up to twice the
+ * number of connections in flight must fit into the open file limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReconnectStormBenchmark implements IObjectReceiver<INetworkData> {
+
+	private static final int CLIENTS = 50000;
+
+	@Param({ "LARGE_BACKLOG", "ACCEPT_BATCH" })
+	public ServerConfiguration configuration;
+
+	@Param({ "1", "4" })
+	public int numThreads;
+
+	@Param({ "4096" })
+	public int inFlight;
+
+	private Server server;
+	private InetSocketAddress address;
+	private Semaphore accepted;
+	private Selector selector;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		accepted = new Semaphore(0);
+		server = configuration.create(numThreads);
+		server.registerSocketReceiver(this);
+		address = new InetSocketAddress(ServerConfiguration.HOSTNAME, ServerConfiguration.PORT);
+		selector = Selector.open();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		selector.close();
+		server.shutdown();
+	}
+
+	@Override
+	public void receiveObject(INetworkData networkData) {
+		try {
+			((TcpNetworkData) networkData).close();
+		} catch (IOException e) {
+			// Intentionally left empty
+		}
+		accepted.release();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CLIENTS)
+	public void reconnectStorm() throws IOException, InterruptedException {
+		int started = 0;
+		int connected = 0;
+		while (connected < CLIENTS) {
+			while (started < CLIENTS && started - connected < inFlight) {
+				SocketChannel channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+				started++;
+				if (channel.connect(address)) {
+					channel.close();
+					connected++;
+				} else {
+					channel.register(selector, SelectionKey.OP_CONNECT);
+				}
+			}
+			selector.select();
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				SocketChannel channel = (SocketChannel) key.channel();
+				try {
+					if (!channel.finishConnect()) {
+						continue;
+					}
+					connected++;
+				} catch (IOException e) {
+					// Refused or timed out while the accept queue was full, so
+					// the client reconnects.
+					started--;
+				}
+				channel.close();
+			}
+		}
+		accepted.acquire(CLIENTS);
+	}
+}
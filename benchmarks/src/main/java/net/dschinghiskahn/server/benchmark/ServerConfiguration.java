@@ -0,0 +1,162 @@
+package net.dschinghiskahn.server.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import net.dschinghiskahn.server.Server;
+import net.dschinghiskahn.server.WaitStrategy;
+import net.dschinghiskahn.server.net.Endpoint;
+import net.dschinghiskahn.server.net.ListenerOptions;
+
+/**
+ * The {@link Server} set-ups the benchmarks can be run against. Benchmarks take
+ * the name of a configuration as parameter, e.g.
+ * <code>-p configuration=REUSE_PORT,EXECUTOR</code>, so a new set-up only needs
+ * a new constant here to be compared with the existing ones.
+ */
+public enum ServerConfiguration {
+
+	/**
+	 * A shared listener, one acceptor thread and sequential dispatch.
+	 */
+	DEFAULT {
+		@Override
+		Server create(String hostname, int port, int numThreads) throws IOException {
+			return new Server(hostname, port, numThreads, true);
+		}
+	},
+
+	/**
+	 * One SO_REUSEPORT listener per worker thread.
+	 */
+	REUSE_PORT {
+		@Override
+		Server create(String hostname, int port, int numThreads) throws IOException {
+			return new Server(hostname, port, numThreads, true, 64 * 1024, true);
+		}
+	},
+
+	/**
+	 * Receivers dispatched on a cached pool of daemon platform threads.
+	 */
+	EXECUTOR {
+		@Override
+		Server create(String hostname, int port, int numThreads) throws IOException {
+			Server server = new Server(hostname, port, numThreads, true);
+			server.setDispatchExecutor(Executors.newCachedThreadPool(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "BenchmarkDispatcher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			}));
+			return server;
+		}
+	},
+
+	/**
+	 * Receivers dispatched on one virtual thread per connection (Java 21+).
+	 */
+	VIRTUAL_THREADS {
+		@Override
+		Server create(String hostname, int port, int numThreads) throws IOException {
+			Server server = new Server(hostname, port, numThreads, true);
+			server.setDispatchExecutor(Server.newVirtualThreadPerTaskExecutor());
+			return server;
+		}
+	},
+
+	/**
+	 * UDP datagrams drained and dispatched in batches of up to 32.
+	 */
+	UDP_BATCH {
+		@Override
+		Server create(String hostname, int port, int numThreads) throws IOException {
+			Server server = new Server(hostname, port, numThreads, true);
+			server.setUdpBatchSize(32);
+			return server;
+		}
+	},
+
+	/**
+	 * Worker and acceptor threads polling their selectors without ever
+	 * blocking.
+	 */
+	BUSY_SPIN {
+		@Override
+		Server create(String hostname, int port, int numThreads) throws IOException {
+			Server server = new Server(hostname, port, numThreads, true);
+			server.setWaitStrategy(WaitStrategy.BUSY_SPIN, WaitStrategy.BUSY_SPIN);
+			return server;
+		}
+	},
+
+	/**
+	 * Worker and acceptor threads polling their selectors 10000 times, then
+	 * yielding 1000 times before they block.
+	 */
+	SPIN_YIELD_PARK {
+		@Override
+		Server create(String hostname, int port, int numThreads) throws IOException {
+			Server server = new Server(hostname, port, numThreads, true);
+			WaitStrategy waitStrategy = WaitStrategy.spinYieldPark(10000, 1000);
+			server.setWaitStrategy(waitStrategy, waitStrategy);
+			return server;
+		}
+	},
+
+	/**
+	 * A TCP accept queue of 65535 connections, drained one connection per
+	 * wakeup.
+	 */
+	LARGE_BACKLOG {
+		@Override
+		Server create(String hostname, int port, int numThreads) throws IOException {
+			return new Server(Collections.singletonList(Endpoint.tcpAndUdp(hostname, port)
+					.withOptions(ListenerOptions.builder().backlog(65535).build())), numThreads, true, 64 * 1024, false);
+		}
+	},
+
+	/**
+	 * A TCP accept queue of 65535 connections, drained up to 256 connections
+	 * per wakeup.
+	 */
+	ACCEPT_BATCH {
+		@Override
+		Server create(String hostname, int port, int numThreads) throws IOException {
+			Server server = LARGE_BACKLOG.create(hostname, port, numThreads);
+			server.setAcceptBatchSize(256);
+			return server;
+		}
+	};
+
+	public static final String HOSTNAME = "localhost";
+	public static final int PORT = 51000;
+
+	/**
+	 * Creates and starts a {@link Server} with this configuration.
+	 * 
+	 * @param hostname   The interface/ip to listen on.
+	 * @param port       The port to listen on.
+	 * @param numThreads The number of worker threads.
+	 * @return The started {@link Server}.
+	 * @throws IOException
+	 */
+	abstract Server create(String hostname, int port, int numThreads) throws IOException;
+
+	/**
+	 * Creates and starts a {@link Server} with this configuration on the default
+	 * benchmark address.
+	 * 
+	 * @param numThreads The number of worker threads.
+	 * @return The started {@link Server}.
+	 * @throws IOException
+	 */
+	public Server create(int numThreads) throws IOException {
+		return create(HOSTNAME, PORT, numThreads);
+	}
+}
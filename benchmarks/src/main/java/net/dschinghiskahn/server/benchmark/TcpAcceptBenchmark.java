@@ -0,0 +1,87 @@
+package net.dschinghiskahn.server.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dschinghiskahn.objectdecoupler.IObjectReceiver;
+import net.dschinghiskahn.server.Server;
+import net.dschinghiskahn.server.net.INetworkData;
+import net.dschinghiskahn.server.net.TcpNetworkData;
+
+/**
+ * Measures how many TCP connections per second a {@link Server} accepts and
+ * hands to its receiver over loopback. Each operation connects a client,
+ * waits until the receiver got the connection and closes both ends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TcpAcceptBenchmark implements IObjectReceiver<INetworkData> {
+
+	@Param({ "DEFAULT", "REUSE_PORT", "EXECUTOR" })
+	public ServerConfiguration configuration;
+
+	@Param({ "1", "4" })
+	public int numThreads;
+
+	private Server server;
+	private InetSocketAddress address;
+	private Semaphore accepted;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		accepted = new Semaphore(0);
+		server = configuration.create(numThreads);
+		server.registerSocketReceiver(this);
+		address = new InetSocketAddress(ServerConfiguration.HOSTNAME, ServerConfiguration.PORT);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		server.shutdown();
+	}
+
+	@Override
+	public void receiveObject(INetworkData networkData) {
+		try {
+			((TcpNetworkData) networkData).close();
+		} catch (IOException e) {
+			// Intentionally left empty
+		}
+		accepted.release();
+	}
+
+	@Benchmark
+	public void connectAndAccept() throws IOException, InterruptedException {
+		Socket socket = new Socket();
+		try {
+			socket.setSoLinger(true, 0);
+			socket.connect(address);
+			accepted.acquire();
+		} finally {
+			socket.close();
+		}
+	}
+}
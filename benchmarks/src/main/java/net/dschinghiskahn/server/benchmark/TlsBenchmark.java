@@ -0,0 +1,166 @@
+package net.dschinghiskahn.server.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dschinghiskahn.objectdecoupler.IObjectReceiver;
+import net.dschinghiskahn.server.Server;
+import net.dschinghiskahn.server.net.IConnectionHandler;
+import net.dschinghiskahn.server.net.INetworkData;
+import net.dschinghiskahn.server.net.TcpNetworkData;
+
+/**
+ * Compares TLS connections terminated by the {@link Server} with plaintext
+ * connections over loopback, using the self-signed certificate in
+ * <code>localhost.p12</code>. {@link #handshake()} measures connections per
+ * second including the handshake, {@link #bulk()} measures the throughput of
+ * 64 KiB writes into a non-blocking connection which discards the data. The
+ * client encrypts on the benchmark thread, so the TLS numbers include the
+ * cost of both ends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TlsBenchmark implements IObjectReceiver<INetworkData> {
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	@Param({ "false", "true" })
+	public boolean tls;
+
+	/**
+	 * Controls if the client resumes cached sessions or performs a full
+	 * handshake for every connection.
+	 */
+	@Param({ "false", "true" })
+	public boolean resumeSessions;
+
+	private final BlockingQueue<TcpNetworkData> connections = new LinkedBlockingQueue<TcpNetworkData>();
+	private SSLContext sslContext;
+	private Server server;
+	private Socket client;
+	private OutputStream clientOutput;
+	private byte[] chunk;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, GeneralSecurityException, InterruptedException {
+		sslContext = createSslContext();
+		server = ServerConfiguration.DEFAULT.create(1);
+		if (tls) {
+			server.setSslContext(sslContext);
+		}
+		server.registerSocketReceiver(this);
+		chunk = new byte[CHUNK_SIZE];
+
+		client = connect();
+		clientOutput = client.getOutputStream();
+		connections.take().setConnectionHandler(new IConnectionHandler() {
+
+			@Override
+			public void receiveData(TcpNetworkData connection, ByteBuffer data) {
+				// Intentionally left empty
+			}
+
+			@Override
+			public void connectionClosed(TcpNetworkData connection) {
+				// Intentionally left empty
+			}
+		});
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		client.close();
+		server.shutdown();
+	}
+
+	@Override
+	public void receiveObject(INetworkData networkData) {
+		if (networkData instanceof TcpNetworkData) {
+			connections.add((TcpNetworkData) networkData);
+		}
+	}
+
+	@Benchmark
+	public void handshake() throws IOException, InterruptedException {
+		Socket socket = connect();
+		try {
+			connections.take().close();
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Benchmark
+	public void bulk() throws IOException {
+		clientOutput.write(chunk);
+	}
+
+	/**
+	 * Connects a client and completes the TLS handshake if enabled.
+	 */
+	private Socket connect() throws IOException {
+		if (!tls) {
+			return new Socket(ServerConfiguration.HOSTNAME, ServerConfiguration.PORT);
+		}
+		SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket(ServerConfiguration.HOSTNAME,
+				ServerConfiguration.PORT);
+		socket.startHandshake();
+		if (!resumeSessions) {
+			socket.getSession().invalidate();
+		}
+		return socket;
+	}
+
+	/**
+	 * Creates a context using the self-signed certificate as key and as the only
+	 * trusted certificate, so it serves both the server and the client.
+	 */
+	private static SSLContext createSslContext() throws IOException, GeneralSecurityException {
+		char[] password = "changeit".toCharArray();
+		KeyStore keyStore = KeyStore.getInstance("PKCS12");
+		InputStream input = TlsBenchmark.class.getResourceAsStream("/localhost.p12");
+		try {
+			keyStore.load(input, password);
+		} finally {
+			input.close();
+		}
+		KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagers.init(keyStore, password);
+		TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trustManagers.init(keyStore);
+		SSLContext sslContext = SSLContext.getInstance("TLS");
+		sslContext.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+		return sslContext;
+	}
+}
@@ -0,0 +1,120 @@
+package net.dschinghiskahn.server.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dschinghiskahn.objectdecoupler.IObjectReceiver;
+import net.dschinghiskahn.server.Server;
+import net.dschinghiskahn.server.net.INetworkData;
+import net.dschinghiskahn.server.net.UdpNetworkData;
+import net.dschinghiskahn.server.net.UdpNetworkDataBatch;
+
+/**
+ * Measures how many UDP datagrams per second a {@link Server} receives and
+ * delivers over loopback for different payload sizes. Each invocation sends a
+ * burst of datagrams and waits until the receiver got them; datagrams the
+ * kernel dropped are reported in the <code>lost</code> counter instead of
+ * stalling the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UdpReceiveBenchmark implements IObjectReceiver<INetworkData> {
+
+	private static final int BURST = 64;
+	private static final long BURST_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+
+	@Param({ "DEFAULT", "UDP_BATCH" })
+	public ServerConfiguration configuration;
+
+	@Param({ "1", "4" })
+	public int numThreads;
+
+	@Param({ "64", "512", "1400", "8192" })
+	public int payloadSize;
+
+	private Server server;
+	private DatagramChannel client;
+	private ByteBuffer payload;
+	private final AtomicLong received = new AtomicLong();
+	private long sent;
+
+	/**
+	 * Additional counters reported next to the throughput.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Loss {
+
+		public long lost;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		server = configuration.create(numThreads);
+		server.registerSocketReceiver(this);
+		client = DatagramChannel.open();
+		client.connect(new InetSocketAddress(ServerConfiguration.HOSTNAME, ServerConfiguration.PORT));
+		payload = ByteBuffer.allocateDirect(payloadSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		client.close();
+		server.shutdown();
+	}
+
+	@Override
+	public void receiveObject(INetworkData networkData) {
+		if (networkData instanceof UdpNetworkDataBatch) {
+			UdpNetworkDataBatch batch = (UdpNetworkDataBatch) networkData;
+			received.addAndGet(batch.size());
+			batch.release();
+		} else {
+			received.incrementAndGet();
+			((UdpNetworkData) networkData).release();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BURST)
+	public void receive(Loss loss) throws IOException {
+		for (int i = 0; i < BURST; i++) {
+			payload.clear();
+			client.write(payload);
+		}
+		sent += BURST;
+		long deadline = System.nanoTime() + BURST_TIMEOUT;
+		while (received.get() < sent) {
+			if (System.nanoTime() - deadline > 0) {
+				loss.lost += sent - received.get();
+				sent = received.get();
+				break;
+			}
+			Thread.yield();
+		}
+	}
+}
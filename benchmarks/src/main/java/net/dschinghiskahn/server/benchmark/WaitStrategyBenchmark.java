@@ -0,0 +1,132 @@
+package net.dschinghiskahn.server.benchmark;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dschinghiskahn.objectdecoupler.IObjectReceiver;
+import net.dschinghiskahn.server.Server;
+import net.dschinghiskahn.server.WaitStrategy;
+import net.dschinghiskahn.server.net.IConnectionHandler;
+import net.dschinghiskahn.server.net.INetworkData;
+import net.dschinghiskahn.server.net.TcpNetworkData;
+
+/**
+ * Measures the round trip time of small requests echoed by a non-blocking
+ * connection for the {@link WaitStrategy}s of the worker thread. The CPU time
+ * the worker thread burns is printed after every iteration as share of a core,
+ * which shows what the lower latency of the polling strategies costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WaitStrategyBenchmark implements IObjectReceiver<INetworkData> {
+
+	private static final int REQUEST_SIZE = 64;
+
+	@Param({ "DEFAULT", "BUSY_SPIN", "SPIN_YIELD_PARK" })
+	public ServerConfiguration configuration;
+
+	private final BlockingQueue<TcpNetworkData> connections = new LinkedBlockingQueue<TcpNetworkData>();
+	private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+	private Server server;
+	private Socket client;
+	private OutputStream clientOutput;
+	private DataInputStream clientInput;
+	private byte[] request;
+	private long workerThreadId;
+	private long cpuNanos;
+	private long wallNanos;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, InterruptedException {
+		server = configuration.create(1);
+		server.registerSocketReceiver(this);
+		request = new byte[REQUEST_SIZE];
+		client = new Socket(ServerConfiguration.HOSTNAME, ServerConfiguration.PORT);
+		client.setTcpNoDelay(true);
+		clientOutput = client.getOutputStream();
+		clientInput = new DataInputStream(client.getInputStream());
+		connections.take().setConnectionHandler(new IConnectionHandler() {
+
+			@Override
+			public void receiveData(TcpNetworkData connection, ByteBuffer data) {
+				ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+				copy.put(data);
+				copy.flip();
+				try {
+					connection.write(copy);
+				} catch (IOException e) {
+					// Intentionally left empty
+				}
+			}
+
+			@Override
+			public void connectionClosed(TcpNetworkData connection) {
+				// Intentionally left empty
+			}
+		});
+		String workerName = "ServerWorker-" + ServerConfiguration.PORT + "-0";
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals(workerName)) {
+				workerThreadId = thread.getId();
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		client.close();
+		server.shutdown();
+	}
+
+	@Setup(Level.Iteration)
+	public void startCpuMeasurement() {
+		cpuNanos = threadMXBean.getThreadCpuTime(workerThreadId);
+		wallNanos = System.nanoTime();
+	}
+
+	@TearDown(Level.Iteration)
+	public void printCpuMeasurement() {
+		double cpu = (double) (threadMXBean.getThreadCpuTime(workerThreadId) - cpuNanos)
+				/ (System.nanoTime() - wallNanos);
+		System.out.printf("Worker thread CPU: %.1f%% of a core%n", cpu * 100);
+	}
+
+	@Override
+	public void receiveObject(INetworkData networkData) {
+		if (networkData instanceof TcpNetworkData) {
+			connections.add((TcpNetworkData) networkData);
+		}
+	}
+
+	@Benchmark
+	public void roundTrip() throws IOException {
+		clientOutput.write(request);
+		clientInput.readFully(request);
+	}
+}
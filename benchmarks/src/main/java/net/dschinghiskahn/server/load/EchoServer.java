@@ -0,0 +1,104 @@
+package net.dschinghiskahn.server.load;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.dschinghiskahn.objectdecoupler.IObjectReceiver;
+import net.dschinghiskahn.server.Server;
+import net.dschinghiskahn.server.net.FrameEncoder;
+import net.dschinghiskahn.server.net.IFrameHandler;
+import net.dschinghiskahn.server.net.INetworkData;
+import net.dschinghiskahn.server.net.LengthFieldFrameDecoder;
+import net.dschinghiskahn.server.net.LengthFieldFrameEncoder;
+import net.dschinghiskahn.server.net.TcpNetworkData;
+import net.dschinghiskahn.server.net.UdpNetworkData;
+import net.dschinghiskahn.server.net.UdpNetworkDataBatch;
+
+/**
+ * A receiver turning a {@link Server} into the counterpart of the
+ * {@link LoadGenerator}: TCP connections echo every frame prefixed by a 4 byte
+ * length field, UDP datagrams are counted and released.
+ */
+public class EchoServer implements IObjectReceiver<INetworkData>, IFrameHandler {
+
+	private final Server server;
+	private final FrameEncoder encoder;
+	private final int maxFrameLength;
+	private final AtomicLong udpDatagrams;
+
+	/**
+	 * Registers a new echo receiver with the given {@link Server}.
+	 * 
+	 * @param server         The server to answer the load with.
+	 * @param maxFrameLength The maximum length of an echoed TCP frame.
+	 */
+	public EchoServer(Server server, int maxFrameLength) {
+		this.server = server;
+		this.encoder = new LengthFieldFrameEncoder(4);
+		this.maxFrameLength = maxFrameLength;
+		this.udpDatagrams = new AtomicLong();
+		server.registerSocketReceiver(this);
+	}
+
+	@Override
+	public void receiveObject(INetworkData networkData) {
+		if (networkData instanceof TcpNetworkData) {
+			try {
+				((TcpNetworkData) networkData)
+						.setConnectionHandler(new LengthFieldFrameDecoder(4, maxFrameLength, this));
+			} catch (IOException e) {
+				close((TcpNetworkData) networkData);
+			}
+		} else if (networkData instanceof UdpNetworkDataBatch) {
+			UdpNetworkDataBatch batch = (UdpNetworkDataBatch) networkData;
+			udpDatagrams.addAndGet(batch.size());
+			batch.release();
+		} else if (networkData instanceof UdpNetworkData) {
+			udpDatagrams.incrementAndGet();
+			((UdpNetworkData) networkData).release();
+		}
+	}
+
+	@Override
+	public void receiveFrame(TcpNetworkData connection, ByteBuffer frame) {
+		ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+		copy.put(frame);
+		copy.flip();
+		try {
+			encoder.write(connection, copy);
+		} catch (IOException e) {
+			close(connection);
+		}
+	}
+
+	@Override
+	public void connectionClosed(TcpNetworkData connection) {
+	}
+
+	private static void close(TcpNetworkData connection) {
+		try {
+			connection.close();
+		} catch (IOException e) {
+			// Intentionally left empty
+		}
+	}
+
+	/**
+	 * Returns the number of UDP datagrams received so far.
+	 * 
+	 * @return The number of received UDP datagrams.
+	 */
+	public long getUdpDatagrams() {
+		return udpDatagrams.get();
+	}
+
+	/**
+	 * Returns the {@link Server} the echo receiver is registered with.
+	 * 
+	 * @return The {@link Server}.
+	 */
+	public Server getServer() {
+		return server;
+	}
+}
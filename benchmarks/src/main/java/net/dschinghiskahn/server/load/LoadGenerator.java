@@ -0,0 +1,174 @@
+package net.dschinghiskahn.server.load;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.dschinghiskahn.server.LatencyHistogram;
+import net.dschinghiskahn.server.Server;
+
+/**
+ * A command line load generator for soak testing a {@link Server} over
+ * loopback. It keeps many TCP connections busy with length-prefixed echo
+ * traffic and/or sends UDP datagrams at a fixed rate, and prints throughput,
+ * round-trip percentiles and error counts once per interval.
+ * 
+ * <pre>
+ * java -cp target/benchmarks.jar net.dschinghiskahn.server.load.LoadGenerator \
+ *     --embedded=4 --connections=5000 --udp-rate=100000 --duration=60
+ * </pre>
+ * 
+ * With <code>--embedded</code> an {@link EchoServer} is started in the same
+ * process, otherwise the target at <code>--host</code> and <code>--port</code>
+ * has to echo TCP frames with a 4 byte length field itself.
+ */
+public class LoadGenerator {
+
+	private static final String USAGE = "Options (all optional):\n"
+			+ "  --host=localhost     Address of the server\n"
+			+ "  --port=52000         Port of the server\n"
+			+ "  --embedded=N         Start an echo server with N worker threads in this process\n"
+			+ "  --connections=100    Number of concurrent TCP echo connections\n"
+			+ "  --threads=N          Client threads driving the connections (default: processors)\n"
+			+ "  --payload=64         TCP frame payload in bytes (at least 8)\n"
+			+ "  --udp-rate=0         UDP datagrams per second\n"
+			+ "  --udp-payload=512    UDP datagram payload in bytes\n"
+			+ "  --duration=30        Run time in seconds\n"
+			+ "  --interval=1         Seconds between two reports\n";
+
+	private final Map<String, String> options;
+	private final PrintStream out;
+	private final LoadStats stats;
+
+	LoadGenerator(Map<String, String> options, PrintStream out) {
+		this.options = options;
+		this.out = out;
+		this.stats = new LoadStats();
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Map<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			if (!arg.startsWith("--")) {
+				System.err.print("Unknown argument: " + arg + "\n" + USAGE);
+				System.exit(1);
+			}
+			int separator = arg.indexOf('=');
+			if (separator < 0) {
+				options.put(arg.substring(2), "");
+			} else {
+				options.put(arg.substring(2, separator), arg.substring(separator + 1));
+			}
+		}
+		if (options.containsKey("help")) {
+			System.out.print(USAGE);
+			return;
+		}
+		new LoadGenerator(options, System.out).run();
+	}
+
+	private int getInt(String name, int defaultValue) {
+		String value = options.get(name);
+		return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+	}
+
+	void run() throws IOException, InterruptedException {
+		String host = options.containsKey("host") ? options.get("host") : "localhost";
+		int port = getInt("port", 52000);
+		int connections = getInt("connections", 100);
+		int threads = Math.max(1, Math.min(connections, getInt("threads", Runtime.getRuntime().availableProcessors())));
+		int payload = getInt("payload", 64);
+		int udpRate = getInt("udp-rate", 0);
+		int udpPayload = getInt("udp-payload", 512);
+		int duration = getInt("duration", 30);
+		int interval = getInt("interval", 1);
+		if (payload < 8) {
+			throw new IllegalArgumentException("The TCP payload must hold the 8 byte timestamp: " + payload);
+		}
+
+		EchoServer echoServer = null;
+		if (options.containsKey("embedded")) {
+			echoServer = new EchoServer(new Server(host, port, getInt("embedded", 1), true), payload);
+		}
+		InetSocketAddress address = new InetSocketAddress(host, port);
+
+		List<TcpClientThread> tcpThreads = new ArrayList<TcpClientThread>();
+		for (int i = 0; i < threads && connections > 0; i++) {
+			int share = connections / threads + (i < connections % threads ? 1 : 0);
+			TcpClientThread thread = new TcpClientThread("LoadGeneratorTcp" + i, address, share, payload, stats); // NOPMD
+			tcpThreads.add(thread);
+			thread.start();
+		}
+		UdpSenderThread udpThread = null;
+		if (udpRate > 0) {
+			udpThread = new UdpSenderThread(address, udpRate, udpPayload, stats);
+			udpThread.start();
+		}
+
+		try {
+			report(echoServer, duration, interval);
+		} finally {
+			for (TcpClientThread thread : tcpThreads) {
+				thread.shutdown();
+			}
+			if (udpThread != null) {
+				udpThread.shutdown();
+			}
+			for (TcpClientThread thread : tcpThreads) {
+				thread.join(1000);
+			}
+			if (echoServer != null) {
+				echoServer.getServer().shutdown();
+			}
+		}
+	}
+
+	private void report(EchoServer echoServer, int duration, int interval) throws InterruptedException {
+		out.println(String.format(Locale.ROOT, "%6s %8s %11s %9s %9s %9s %9s %10s %10s %7s", "time", "conns",
+				"tcp msg/s", "MiB/s", "p50 us", "p99 us", "p999 us", "udp sent/s", "udp recv/s", "errors"));
+		long start = System.nanoTime();
+		long last = start;
+		long lastMessages = 0;
+		long lastBytes = 0;
+		long lastDatagrams = 0;
+		long lastReceived = 0;
+		long end = start + TimeUnit.SECONDS.toNanos(duration);
+		while (System.nanoTime() < end) {
+			Thread.sleep(TimeUnit.SECONDS.toMillis(interval));
+			long now = System.nanoTime();
+			double seconds = (now - last) / 1e9;
+			LatencyHistogram roundTrips = stats.nextInterval();
+			long messages = stats.getTcpMessages();
+			long bytes = stats.getTcpBytes();
+			long datagrams = stats.getUdpDatagrams();
+			long received = echoServer == null ? 0 : echoServer.getUdpDatagrams();
+			out.println(String.format(Locale.ROOT, "%5ds %8d %11.0f %9.2f %9.1f %9.1f %9.1f %10.0f %10s %7d",
+					TimeUnit.NANOSECONDS.toSeconds(now - start), stats.getConnections(),
+					(messages - lastMessages) / seconds, (bytes - lastBytes) / seconds / (1024 * 1024),
+					roundTrips.getPercentile(50) / 1e3, roundTrips.getPercentile(99) / 1e3,
+					roundTrips.getPercentile(99.9) / 1e3, (datagrams - lastDatagrams) / seconds,
+					echoServer == null ? "-" : String.format(Locale.ROOT, "%.0f", (received - lastReceived) / seconds),
+					stats.getErrors()));
+			last = now;
+			lastMessages = messages;
+			lastBytes = bytes;
+			lastDatagrams = datagrams;
+			lastReceived = received;
+		}
+		LatencyHistogram total = stats.getTotalRoundTrips();
+		out.println(String.format(Locale.ROOT,
+				"total: %d tcp round trips, p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus, %d udp datagrams sent%s, %d errors",
+				total.getCount(), total.getPercentile(50) / 1e3, total.getPercentile(99) / 1e3,
+				total.getPercentile(99.9) / 1e3, total.getMax() / 1e3, stats.getUdpDatagrams(),
+				echoServer == null ? "" : " / " + echoServer.getUdpDatagrams() + " received", stats.getErrors()));
+		if (echoServer != null) {
+			out.println(echoServer.getServer().getMetrics());
+		}
+	}
+}
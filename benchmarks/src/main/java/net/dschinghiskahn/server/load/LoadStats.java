@@ -0,0 +1,84 @@
+package net.dschinghiskahn.server.load;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.dschinghiskahn.server.LatencyHistogram;
+
+/**
+ * The counters shared by the load generating threads. Round-trip times are
+ * recorded twice: in a histogram covering the whole run and in one covering
+ * the current reporting interval only.
+ */
+class LoadStats {
+
+	private final AtomicLong tcpMessages = new AtomicLong();
+	private final AtomicLong tcpBytes = new AtomicLong();
+	private final AtomicLong udpDatagrams = new AtomicLong();
+	private final AtomicLong udpBytes = new AtomicLong();
+	private final AtomicLong connections = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final LatencyHistogram totalRoundTrips = new LatencyHistogram();
+	private final AtomicReference<LatencyHistogram> intervalRoundTrips = new AtomicReference<LatencyHistogram>(
+			new LatencyHistogram());
+
+	void roundTrip(long nanos, int bytes) {
+		tcpMessages.incrementAndGet();
+		tcpBytes.addAndGet(bytes);
+		totalRoundTrips.record(nanos);
+		intervalRoundTrips.get().record(nanos);
+	}
+
+	void datagramSent(int bytes) {
+		udpDatagrams.incrementAndGet();
+		udpBytes.addAndGet(bytes);
+	}
+
+	void connected() {
+		connections.incrementAndGet();
+	}
+
+	void disconnected() {
+		connections.decrementAndGet();
+	}
+
+	void error() {
+		errors.incrementAndGet();
+	}
+
+	long getTcpMessages() {
+		return tcpMessages.get();
+	}
+
+	long getTcpBytes() {
+		return tcpBytes.get();
+	}
+
+	long getUdpDatagrams() {
+		return udpDatagrams.get();
+	}
+
+	long getUdpBytes() {
+		return udpBytes.get();
+	}
+
+	long getConnections() {
+		return connections.get();
+	}
+
+	long getErrors() {
+		return errors.get();
+	}
+
+	LatencyHistogram getTotalRoundTrips() {
+		return totalRoundTrips;
+	}
+
+	/**
+	 * Returns the round-trip times of the interval that just ended and starts
+	 * a new interval.
+	 */
+	LatencyHistogram nextInterval() {
+		return intervalRoundTrips.getAndSet(new LatencyHistogram());
+	}
+}
@@ -0,0 +1,184 @@
+package net.dschinghiskahn.server.load;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * Drives a share of the TCP connections of the {@link LoadGenerator} on a
+ * single selector. Every connection sends a length-prefixed frame carrying its
+ * send time, waits for the echo and records the round-trip time before sending
+ * the next frame. Connections are opened gradually so the listen backlog of
+ * the server is not overrun.
+ */
+class TcpClientThread extends Thread {
+
+	private static final int CONNECTS_PER_LOOP = 16;
+
+	private final InetSocketAddress address;
+	private final int connections;
+	private final int payloadSize;
+	private final LoadStats stats;
+	private final Selector selector;
+	private volatile boolean isRunning;
+	private int opened;
+	private int pending;
+
+	TcpClientThread(String name, InetSocketAddress address, int connections, int payloadSize, LoadStats stats)
+			throws IOException {
+		super(name);
+		setDaemon(true);
+		this.address = address;
+		this.connections = connections;
+		this.payloadSize = payloadSize;
+		this.stats = stats;
+		this.selector = Selector.open();
+		this.isRunning = true;
+	}
+
+	void shutdown() {
+		isRunning = false;
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (isRunning) {
+				openConnections();
+				selector.select(100);
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					Connection connection = (Connection) key.attachment();
+					try {
+						connection.handle(key);
+					} catch (IOException e) {
+						stats.error();
+						connection.close(key);
+					}
+				}
+			}
+		} catch (IOException e) {
+			stats.error();
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				((Connection) key.attachment()).close(key);
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// Intentionally left empty
+			}
+		}
+	}
+
+	private void openConnections() {
+		for (int i = 0; i < CONNECTS_PER_LOOP && opened < connections && pending < CONNECTS_PER_LOOP; i++) {
+			opened++;
+			SocketChannel channel = null;
+			try {
+				channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				Connection connection = new Connection(channel);
+				if (channel.connect(address)) {
+					connection.connected(channel.register(selector, 0, connection));
+				} else {
+					pending++;
+					channel.register(selector, SelectionKey.OP_CONNECT, connection);
+				}
+			} catch (IOException e) {
+				stats.error();
+				if (channel != null) {
+					try {
+						channel.close();
+					} catch (IOException e1) {
+						// Intentionally left empty
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A single echo connection.
+	 */
+	private class Connection {
+
+		private final SocketChannel channel;
+		private final ByteBuffer out;
+		private final ByteBuffer in;
+		private boolean isConnected;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+			this.out = ByteBuffer.allocateDirect(4 + payloadSize);
+			this.in = ByteBuffer.allocateDirect(4 + payloadSize);
+		}
+
+		void handle(SelectionKey key) throws IOException {
+			if (key.isConnectable()) {
+				pending--;
+				channel.finishConnect();
+				connected(key);
+			} else if (key.isWritable()) {
+				write(key);
+			} else if (key.isReadable()) {
+				read(key);
+			}
+		}
+
+		void connected(SelectionKey key) throws IOException {
+			isConnected = true;
+			stats.connected();
+			send(key);
+		}
+
+		private void send(SelectionKey key) throws IOException {
+			out.clear();
+			out.putInt(payloadSize);
+			out.putLong(System.nanoTime());
+			out.position(out.limit());
+			out.flip();
+			write(key);
+		}
+
+		private void write(SelectionKey key) throws IOException {
+			channel.write(out);
+			key.interestOps(out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		}
+
+		private void read(SelectionKey key) throws IOException {
+			if (channel.read(in) < 0) {
+				throw new IOException("Connection closed by the server.");
+			}
+			if (!in.hasRemaining()) {
+				stats.roundTrip(System.nanoTime() - in.getLong(4), in.capacity());
+				in.clear();
+				send(key);
+			}
+		}
+
+		void close(SelectionKey key) {
+			if (isConnected) {
+				isConnected = false;
+				stats.disconnected();
+			} else if (channel.isConnectionPending()) {
+				pending--;
+			}
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Intentionally left empty
+			}
+		}
+	}
+}
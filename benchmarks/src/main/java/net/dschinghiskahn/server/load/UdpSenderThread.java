@@ -0,0 +1,73 @@
+package net.dschinghiskahn.server.load;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends UDP datagrams at a fixed rate. The sender catches up in bursts if it
+ * falls behind, so the average rate holds as long as the machine can keep up.
+ */
+class UdpSenderThread extends Thread {
+
+	private final InetSocketAddress address;
+	private final long rate;
+	private final int payloadSize;
+	private final LoadStats stats;
+	private volatile boolean isRunning;
+
+	UdpSenderThread(InetSocketAddress address, long rate, int payloadSize, LoadStats stats) {
+		super("LoadGeneratorUdp");
+		setDaemon(true);
+		this.address = address;
+		this.rate = rate;
+		this.payloadSize = payloadSize;
+		this.stats = stats;
+		this.isRunning = true;
+	}
+
+	void shutdown() {
+		isRunning = false;
+	}
+
+	@Override
+	public void run() {
+		DatagramChannel channel = null;
+		try {
+			channel = DatagramChannel.open();
+			channel.connect(address);
+			ByteBuffer payload = ByteBuffer.allocateDirect(payloadSize);
+			long start = System.nanoTime();
+			long sent = 0;
+			while (isRunning) {
+				long due = (System.nanoTime() - start) * rate / TimeUnit.SECONDS.toNanos(1);
+				if (sent >= due) {
+					LockSupport.parkNanos(100000);
+					continue;
+				}
+				for (; sent < due && isRunning; sent++) {
+					payload.clear();
+					try {
+						channel.write(payload);
+						stats.datagramSent(payloadSize);
+					} catch (IOException e) {
+						stats.error();
+					}
+				}
+			}
+		} catch (IOException e) {
+			stats.error();
+		} finally {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					// Intentionally left empty
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,512 @@
+package net.dschinghiskahn.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.dschinghiskahn.objectdecoupler.IObjectReceiver;
+import net.dschinghiskahn.objectdecoupler.ObjectDecoupler;
+import net.dschinghiskahn.server.net.INetworkData;
+import net.dschinghiskahn.server.net.TcpNetworkData;
+import net.dschinghiskahn.server.net.UdpNetworkData;
+import net.dschinghiskahn.server.net.UdpNetworkDataBatch;
+
+/**
+ * Hands accepted connections and received datagrams to the registered
+ * receivers, either one after the other through an {@link ObjectDecoupler} or
+ * as separate tasks of an {@link Executor}. Tasks of an {@link Executor} can be
+ * striped across lanes by sender, so objects of the same sender are delivered
+ * in order while different senders are delivered in parallel. The number of
+ * objects waiting for or being in delivery can be bounded.
+ */
+abstract class ConnectionQueue {
+
+	private final ObjectDecoupler<Entry> decoupler;
+	private final IObjectReceiver<Entry> decouplerReceiver;
+	private final List<IObjectReceiver<INetworkData>> receivers;
+	private final Queue<Entry> dropCandidates;
+	private final AtomicBoolean isTrimming;
+	private final AtomicInteger depth;
+	private final AtomicBoolean isAboveHighWaterMark;
+	private final AtomicLong dropped;
+	private final LatencyHistogram queueWait;
+	private final LatencyHistogram receiverTime;
+	private volatile Executor executor;
+	private volatile Lane[] lanes;
+	private volatile int capacity;
+	private volatile OverflowPolicy overflowPolicy;
+	private volatile int lowWaterMark;
+	private volatile int highWaterMark;
+	private volatile boolean isStopped;
+	private volatile boolean isPaused;
+
+	ConnectionQueue() {
+		decoupler = new ObjectDecoupler<Entry>();
+		decouplerReceiver = new IObjectReceiver<Entry>() {
+
+			@Override
+			public void receiveObject(Entry entry) {
+				entry.run();
+			}
+		};
+		receivers = new CopyOnWriteArrayList<IObjectReceiver<INetworkData>>();
+		dropCandidates = new ConcurrentLinkedQueue<Entry>();
+		isTrimming = new AtomicBoolean();
+		depth = new AtomicInteger();
+		isAboveHighWaterMark = new AtomicBoolean();
+		dropped = new AtomicLong();
+		queueWait = new LatencyHistogram();
+		receiverTime = new LatencyHistogram();
+		capacity = Integer.MAX_VALUE;
+		overflowPolicy = OverflowPolicy.BLOCK;
+		lowWaterMark = Integer.MAX_VALUE;
+		highWaterMark = Integer.MAX_VALUE;
+	}
+
+	void setExecutor(Executor executor, int laneCount) {
+		if (laneCount < 0) {
+			throw new IllegalArgumentException("The number of lanes must not be negative: " + laneCount);
+		}
+		if (executor == null || laneCount == 0) {
+			this.lanes = null;
+		} else {
+			Lane[] newLanes = new Lane[laneCount];
+			for (int i = 0; i < laneCount; i++) {
+				newLanes[i] = new Lane(i, executor);
+			}
+			this.lanes = newLanes;
+		}
+		this.executor = executor;
+	}
+
+	void setCapacity(int capacity, OverflowPolicy overflowPolicy) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be at least 1: " + capacity);
+		}
+		this.overflowPolicy = overflowPolicy;
+		this.capacity = capacity;
+		if (overflowPolicy != OverflowPolicy.DROP_OLDEST) {
+			dropCandidates.clear();
+		}
+		resume();
+	}
+
+	void setWaterMarks(int lowWaterMark, int highWaterMark) {
+		if (lowWaterMark < 0 || lowWaterMark > highWaterMark) {
+			throw new IllegalArgumentException("Invalid water marks: " + lowWaterMark + " / " + highWaterMark);
+		}
+		this.lowWaterMark = lowWaterMark;
+		this.highWaterMark = highWaterMark;
+		resume();
+	}
+
+	int getDepth() {
+		return depth.get();
+	}
+
+	long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Returns the counters of every lane or an empty list if objects are not
+	 * striped across lanes.
+	 */
+	List<DispatchLaneStats> getLaneStats() {
+		Lane[] currentLanes = lanes;
+		if (currentLanes == null) {
+			return Collections.emptyList();
+		}
+		List<DispatchLaneStats> stats = new ArrayList<DispatchLaneStats>(currentLanes.length);
+		for (Lane lane : currentLanes) {
+			stats.add(lane.stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * Returns the time objects waited between being queued and being picked up
+	 * for delivery.
+	 */
+	LatencyHistogram getQueueWait() {
+		return queueWait;
+	}
+
+	/**
+	 * Returns the time the registered receivers took to handle an object.
+	 */
+	LatencyHistogram getReceiverTime() {
+		return receiverTime;
+	}
+
+	/**
+	 * Queues the given object for delivery, applying the overflow policy if the
+	 * queue is full.
+	 */
+	void add(INetworkData networkData) {
+		Lane[] currentLanes = lanes;
+		if (currentLanes != null && networkData instanceof UdpNetworkDataBatch) {
+			addStriped((UdpNetworkDataBatch) networkData, currentLanes);
+		} else {
+			add(networkData, currentLanes);
+		}
+	}
+
+	private void add(INetworkData networkData, Lane[] currentLanes) {
+		if (!reserve(networkData)) {
+			return;
+		}
+		Entry entry = new Entry(networkData);
+		if (overflowPolicy == OverflowPolicy.DROP_OLDEST && isDatagram(networkData)) {
+			dropCandidates.add(entry);
+			trimDropCandidates();
+		}
+		Executor currentExecutor = executor;
+		if (currentExecutor == null || receivers.isEmpty()) {
+			decoupler.add(entry);
+		} else if (currentLanes == null) {
+			currentExecutor.execute(entry);
+		} else {
+			currentLanes[laneOf(networkData, currentLanes.length)].add(entry);
+		}
+	}
+
+	/**
+	 * Splits a batch into one batch per lane, keeping the order of the
+	 * datagrams, so datagrams of different senders are not delivered in the
+	 * lane of the first sender.
+	 */
+	private void addStriped(UdpNetworkDataBatch batch, Lane[] currentLanes) {
+		int firstLane = laneOf(batch, currentLanes.length);
+		boolean isSingleLane = true;
+		for (UdpNetworkData datagram : batch) {
+			if (laneOf(datagram, currentLanes.length) != firstLane) {
+				isSingleLane = false;
+				break;
+			}
+		}
+		if (isSingleLane) {
+			add(batch, currentLanes);
+			return;
+		}
+		UdpNetworkData[] datagrams = new UdpNetworkData[batch.size()];
+		boolean[] isDone = new boolean[batch.size()];
+		for (int i = 0; i < isDone.length; i++) {
+			if (isDone[i]) {
+				continue;
+			}
+			int lane = laneOf(batch.getDatagrams().get(i), currentLanes.length);
+			int count = 0;
+			for (int j = i; j < isDone.length; j++) {
+				UdpNetworkData datagram = batch.getDatagrams().get(j);
+				if (!isDone[j] && laneOf(datagram, currentLanes.length) == lane) {
+					datagrams[count++] = datagram;
+					isDone[j] = true;
+				}
+			}
+			add(new UdpNetworkDataBatch(datagrams, count), currentLanes);
+		}
+	}
+
+	private static int laneOf(INetworkData networkData, int laneCount) {
+		InetSocketAddress sender;
+		try {
+			sender = networkData.getSender();
+		} catch (IOException e) {
+			return 0;
+		}
+		if (sender == null) {
+			return 0;
+		}
+		int hash = sender.hashCode();
+		hash ^= hash >>> 16;
+		return (hash & Integer.MAX_VALUE) % laneCount;
+	}
+
+	/**
+	 * Counts the object against the capacity. Returns false if the object was
+	 * dropped instead. Under {@link OverflowPolicy#BLOCK} the object is always
+	 * taken, and the sockets are paused once the capacity is reached.
+	 */
+	private boolean reserve(INetworkData networkData) {
+		while (true) {
+			int current = depth.get();
+			boolean isBlocking = overflowPolicy == OverflowPolicy.BLOCK && !isStopped;
+			if (current < capacity || isBlocking) {
+				if (depth.compareAndSet(current, current + 1)) {
+					if (current + 1 >= highWaterMark && isAboveHighWaterMark.compareAndSet(false, true)) {
+						hookAboveHighWaterMark(current + 1);
+					}
+					if (isBlocking && current + 1 >= capacity) {
+						pause();
+					}
+					return true;
+				}
+			} else if (isStopped || overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+				drop(networkData);
+				return false;
+			} else if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+				if (!isDatagram(networkData) || !dropOldest()) {
+					drop(networkData);
+					return false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops the oldest queued datagram which is not being delivered yet.
+	 * Returns false if there is none, i.e. the queue is full of connections and
+	 * datagrams in delivery.
+	 */
+	private boolean dropOldest() {
+		Entry entry;
+		while ((entry = dropCandidates.poll()) != null) {
+			if (entry.claim()) {
+				drop(entry.networkData);
+				release();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isDatagram(INetworkData networkData) {
+		return networkData instanceof UdpNetworkData || networkData instanceof UdpNetworkDataBatch;
+	}
+
+	/**
+	 * Removes the delivered entries from the head of the drop candidates.
+	 * Removing an entry from the middle of the queue when it is delivered
+	 * would scan the queue, so delivered entries are skipped by
+	 * {@link #dropOldest()} and trimmed here once they reach the head.
+	 * Removing the head does not scan; a single trimming thread keeps two
+	 * threads from removing the same head.
+	 */
+	private void trimDropCandidates() {
+		if (!isTrimming.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			Entry head;
+			while ((head = dropCandidates.peek()) != null && head.isClaimed()) {
+				dropCandidates.remove(head);
+			}
+		} finally {
+			isTrimming.set(false);
+		}
+	}
+
+	/**
+	 * Pauses the sockets unless they are paused already or a receiver made
+	 * room in the meantime. The flag is set before the depth is checked, so a
+	 * concurrent {@link #release()} either sees the flag and resumes or its
+	 * decrement is seen here.
+	 */
+	private synchronized void pause() {
+		if (isPaused) {
+			return;
+		}
+		isPaused = true;
+		if (depth.get() < capacity) {
+			isPaused = false;
+			return;
+		}
+		hookPause();
+	}
+
+	/**
+	 * Resumes the paused sockets once the queue drained to the low-water mark,
+	 * or right away if the queue no longer blocks. Pausing and resuming are
+	 * serialized, so the hooks are called in the order of the state changes.
+	 */
+	private synchronized void resume() {
+		if (!isPaused) {
+			return;
+		}
+		if (overflowPolicy == OverflowPolicy.BLOCK && !isStopped
+				&& depth.get() > Math.min(lowWaterMark, capacity - 1)) {
+			return;
+		}
+		isPaused = false;
+		hookResume();
+	}
+
+	private void drop(INetworkData networkData) {
+		if (networkData instanceof TcpNetworkData) {
+			try {
+				((TcpNetworkData) networkData).close();
+			} catch (IOException e) {
+				// Intentionally left empty
+			}
+		} else if (networkData instanceof UdpNetworkData) {
+			((UdpNetworkData) networkData).release();
+		} else if (networkData instanceof UdpNetworkDataBatch) {
+			((UdpNetworkDataBatch) networkData).release();
+		}
+		dropped.incrementAndGet();
+		hookDropped(networkData);
+	}
+
+	/**
+	 * Frees the capacity taken by a delivered or dropped object.
+	 */
+	private void release() {
+		int current = depth.decrementAndGet();
+		if (current <= lowWaterMark && isAboveHighWaterMark.compareAndSet(true, false)) {
+			hookBelowLowWaterMark(current);
+		}
+		if (isPaused && current <= Math.min(lowWaterMark, capacity - 1)) {
+			resume();
+		}
+	}
+
+	void registerReceiver(IObjectReceiver<INetworkData> receiver) {
+		synchronized (receivers) {
+			receivers.add(receiver);
+			if (receivers.size() == 1) {
+				decoupler.registerObjectReceiver(decouplerReceiver);
+			}
+		}
+	}
+
+	void unregisterReceiver(IObjectReceiver<INetworkData> receiver) {
+		synchronized (receivers) {
+			if (receivers.remove(receiver) && receivers.isEmpty()) {
+				decoupler.unregisterObjectReceiver(decouplerReceiver);
+			}
+		}
+	}
+
+	void stop() {
+		isStopped = true;
+		decoupler.stop();
+	}
+
+	protected abstract void hookAboveHighWaterMark(int depth);
+
+	protected abstract void hookBelowLowWaterMark(int depth);
+
+	protected abstract void hookDropped(INetworkData networkData);
+
+	/**
+	 * Called once the queue is full under {@link OverflowPolicy#BLOCK}, so no
+	 * further connections should be accepted and no datagrams be received.
+	 */
+	protected abstract void hookPause();
+
+	/**
+	 * Called once a paused queue has room again.
+	 */
+	protected abstract void hookResume();
+
+	/**
+	 * Runs the entries of the senders hashed to it one after the other as tasks
+	 * of an {@link Executor}. At most one task of a lane is submitted at a time
+	 * and each task hands back its thread after a bounded number of entries.
+	 */
+	private static class Lane implements Runnable {
+
+		private static final int MAX_ENTRIES_PER_RUN = 64;
+
+		private final Executor executor;
+		private final Queue<Entry> entries;
+		private final AtomicBoolean isScheduled;
+		private final DispatchLaneStats stats;
+
+		Lane(int index, Executor executor) {
+			this.executor = executor;
+			this.entries = new ConcurrentLinkedQueue<Entry>();
+			this.isScheduled = new AtomicBoolean();
+			this.stats = new DispatchLaneStats(index);
+		}
+
+		void add(Entry entry) {
+			entries.add(entry);
+			stats.queued();
+			schedule();
+		}
+
+		private void schedule() {
+			if (isScheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(this);
+				} catch (RuntimeException e) {
+					isScheduled.set(false);
+					throw e;
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				Entry entry;
+				for (int i = 0; i < MAX_ENTRIES_PER_RUN && (entry = entries.poll()) != null; i++) {
+					stats.dispatched();
+					entry.run();
+				}
+			} finally {
+				isScheduled.set(false);
+				if (!entries.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A queued object. Its state decides whether it is delivered or dropped if
+	 * both happen concurrently, and marks delivered entries which are still
+	 * among the drop candidates as stale.
+	 */
+	private class Entry implements Runnable {
+
+		private final INetworkData networkData;
+		private final long queuedAt;
+		private final AtomicBoolean claimed;
+
+		Entry(INetworkData networkData) {
+			this.networkData = networkData;
+			this.queuedAt = System.nanoTime();
+			this.claimed = new AtomicBoolean();
+		}
+
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		boolean isClaimed() {
+			return claimed.get();
+		}
+
+		@Override
+		public void run() {
+			if (!claim()) {
+				return;
+			}
+			long startedAt = System.nanoTime();
+			queueWait.record(startedAt - queuedAt);
+			try {
+				for (IObjectReceiver<INetworkData> receiver : receivers) {
+					receiver.receiveObject(networkData);
+				}
+			} finally {
+				receiverTime.record(System.nanoTime() - startedAt);
+				release();
+				if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+					trimDropCandidates();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package net.dschinghiskahn.server;
+
+/**
+ * The kinds of timeouts the {@link Server} enforces on TCP connections.
+ */
+public enum ConnectionTimeout {
+
+	/**
+	 * Nothing was read from the connection for too long.
+	 */
+	READ,
+
+	/**
+	 * Nothing was written to the connection for too long.
+	 */
+	WRITE,
+
+	/**
+	 * Nothing was read from or written to the connection for too long.
+	 */
+	IDLE
+}
@@ -0,0 +1,88 @@
+package net.dschinghiskahn.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the connections and datagrams a single dispatch lane of the
+ * {@link Server} handled and how many of them are waiting.
+ * 
+ * @see Server#setDispatchExecutor(java.util.concurrent.Executor, int)
+ */
+public class DispatchLaneStats {
+
+	private final int index;
+	private final AtomicLong dispatched;
+	private final AtomicInteger backlog;
+	private final AtomicInteger maxBacklog;
+
+	DispatchLaneStats(int index) {
+		this.index = index;
+		this.dispatched = new AtomicLong();
+		this.backlog = new AtomicInteger();
+		this.maxBacklog = new AtomicInteger();
+	}
+
+	void queued() {
+		int current = backlog.incrementAndGet();
+		int max;
+		while (current > (max = maxBacklog.get())) {
+			if (maxBacklog.compareAndSet(max, current)) {
+				break;
+			}
+		}
+	}
+
+	void dispatched() {
+		backlog.decrementAndGet();
+		dispatched.incrementAndGet();
+	}
+
+	/**
+	 * Returns the index of the lane.
+	 * 
+	 * @return The index of the lane.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the number of objects the lane handed to the receivers, including
+	 * objects dropped while waiting in the lane.
+	 * 
+	 * @return The number of dispatched objects.
+	 */
+	public long getDispatched() {
+		return dispatched.get();
+	}
+
+	/**
+	 * Returns the number of objects waiting in the lane.
+	 * 
+	 * @return The current backlog of the lane.
+	 */
+	public int getBacklog() {
+		return backlog.get();
+	}
+
+	/**
+	 * Returns the largest number of objects which waited in the lane at once.
+	 * 
+	 * @return The largest backlog of the lane.
+	 */
+	public int getMaxBacklog() {
+		return maxBacklog.get();
+	}
+
+	/**
+	 * Returns the {@link DispatchLaneStats} as string object.
+	 * 
+	 * @return The {@link DispatchLaneStats} as string object.
+	 */
+	@Override
+	public String toString() {
+		return "DispatchLaneStats [index=" + index + ", dispatched=" + dispatched + ", backlog=" + backlog
+				+ ", maxBacklog=" + maxBacklog + "]";
+	}
+}
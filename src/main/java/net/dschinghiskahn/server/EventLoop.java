@@ -0,0 +1,391 @@
+package net.dschinghiskahn.server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.dschinghiskahn.worker.AbstractWorker;
+
+/**
+ * A worker object running a loop over its own {@link Selector}. Tasks handed
+ * to the loop from other threads are run on the loop's thread after each
+ * wakeup, so channels registered with the selector are only ever touched by a
+ * single thread.
+ */
+abstract class EventLoop extends AbstractWorker<Object> {
+
+	protected final Selector selector;
+	protected final HashedWheelTimer timer;
+	private final Queue<Runnable> tasks;
+	private final PriorityQueue<ScheduledTask> scheduledTasks;
+	private final EventLoopStats stats;
+	private final CompletableFuture<Void> termination;
+	private volatile Thread thread;
+	private volatile String threadName;
+	private volatile WaitStrategy waitStrategy;
+	private volatile boolean isSelecting;
+	private volatile boolean isShuttingDown;
+	private volatile boolean isTerminated;
+
+	/**
+	 * Creates a new event loop with its own {@link Selector}.
+	 * 
+	 * @param name     The name of the worker thread.
+	 * @param isDaemon Controls if the thread is started in daemon mode.
+	 * @throws IOException
+	 */
+	EventLoop(String name, boolean isDaemon) throws IOException {
+		super(name, isDaemon);
+		selector = Selector.open();
+		tasks = new ConcurrentLinkedQueue<Runnable>();
+		scheduledTasks = new PriorityQueue<ScheduledTask>();
+		timer = new HashedWheelTimer(100, TimeUnit.MILLISECONDS, 512);
+		stats = new EventLoopStats(name);
+		termination = new CompletableFuture<Void>();
+		waitStrategy = WaitStrategy.BLOCKING;
+	}
+
+	/**
+	 * Runs the given task on the loop's thread.
+	 * 
+	 * @param task The task to run.
+	 */
+	public void execute(Runnable task) {
+		tasks.add(task);
+		if (isSelecting) {
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * Runs the given task on the loop's thread once the given delay expired.
+	 * 
+	 * @param task  The task to run.
+	 * @param delay The delay.
+	 * @param unit  The unit of the delay.
+	 */
+	public void schedule(final Runnable task, long delay, TimeUnit unit) {
+		final long deadline = System.nanoTime() + unit.toNanos(delay);
+		execute(new Runnable() {
+
+			@Override
+			public void run() {
+				scheduledTasks.add(new ScheduledTask(deadline, task));
+			}
+		});
+	}
+
+	/**
+	 * Cancels the given key and runs the given task on the loop's thread once
+	 * the channel was deregistered from the selector, e.g. to switch the channel
+	 * back to blocking mode.
+	 * 
+	 * @param key  The key to cancel.
+	 * @param task The task to run.
+	 */
+	void deregister(SelectionKey key, final Runnable task) {
+		key.cancel();
+		execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					selector.selectNow();
+				} catch (IOException e) {
+					hookExceptionDuringWork(e);
+				}
+				task.run();
+			}
+		});
+	}
+
+	/**
+	 * Adds the given operations to or removes them from the interest set of the
+	 * given key on the loop's thread.
+	 * 
+	 * @param key          The key to update.
+	 * @param ops          The operations to add or remove.
+	 * @param isInterested Controls if the operations are added or removed.
+	 */
+	void setInterest(final SelectionKey key, final int ops, final boolean isInterested) {
+		execute(new Runnable() {
+
+			@Override
+			public void run() {
+				if (key.isValid()) {
+					key.interestOps(isInterested ? key.interestOps() | ops : key.interestOps() & ~ops);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the {@link Selector} of the event loop.
+	 * 
+	 * @return The {@link Selector} of the event loop.
+	 */
+	public Selector getSelector() {
+		return selector;
+	}
+
+	/**
+	 * Sets how the loop waits for ready channels and tasks. Takes effect with
+	 * the next wait.
+	 * 
+	 * @param waitStrategy The {@link WaitStrategy} of the loop.
+	 */
+	void setWaitStrategy(WaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+		selector.wakeup();
+	}
+
+	/**
+	 * Sets the name the loop's thread is renamed to once it starts, replacing
+	 * the name with the counter suffix the thread was created with. A stable
+	 * name lets tools like <code>ps -T</code> and <code>taskset</code> find and
+	 * pin the thread.
+	 * 
+	 * @param threadName The name of the thread.
+	 */
+	void setThreadName(String threadName) {
+		this.threadName = threadName;
+	}
+
+	/**
+	 * Asks the loop to terminate. The loop wakes up, runs the tasks handed to it
+	 * so far, closes its selector and stops its thread.
+	 * 
+	 * @return A future completed once the loop has terminated.
+	 */
+	CompletableFuture<Void> terminate() {
+		isShuttingDown = true;
+		selector.wakeup();
+		return termination;
+	}
+
+	/**
+	 * Returns the wakeup and utilization counters of the loop.
+	 * 
+	 * @return The {@link EventLoopStats} of the loop.
+	 */
+	EventLoopStats getStats() {
+		return stats;
+	}
+
+	void close() throws IOException {
+		if (selector.isOpen()) {
+			selector.close();
+		}
+	}
+
+	@Override
+	protected void doWork(Object item) {
+		if (isShuttingDown) {
+			terminateNow();
+			return;
+		}
+		if (thread == null) {
+			thread = Thread.currentThread();
+			if (threadName != null) {
+				thread.setName(threadName);
+			}
+			stats.setName(thread.getName());
+		}
+		long busySince;
+		try {
+			long idleSince = System.nanoTime();
+			select();
+			busySince = System.nanoTime();
+			stats.selected(selector.selectedKeys().size(), busySince - idleSince);
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				try {
+					if (key.isValid()) {
+						processKey(key);
+					}
+				} catch (Exception e) {
+					hookExceptionDuringWork(e);
+				}
+			}
+		} catch (Exception e) {
+			hookExceptionDuringWork(e);
+			return;
+		}
+		runTasks();
+		runScheduledTasks();
+		timer.advance(this);
+		stats.worked(System.nanoTime() - busySince);
+		if (isShuttingDown) {
+			terminateNow();
+		}
+	}
+
+	private void terminateNow() {
+		runTasks();
+		closeConnections();
+		runTasks();
+		try {
+			close();
+		} catch (IOException e) {
+			hookExceptionDuringWork(e);
+		}
+		isTerminated = true;
+		stop();
+		termination.complete(null);
+	}
+
+	/**
+	 * Waits until a channel is ready, a task was handed to the loop, the next
+	 * scheduled task is due or the timer has to advance. Depending on the
+	 * {@link WaitStrategy} the selector is polled for a while before the loop
+	 * blocks. Tasks only wake up the selector while the loop is blocked, so
+	 * handing a task to a polling loop costs no system call.
+	 */
+	private void select() throws IOException {
+		long start = System.nanoTime();
+		long timeoutNanos = timer.nanosUntilNextTick();
+		ScheduledTask next = scheduledTasks.peek();
+		if (next != null) {
+			long untilNext = Math.max(0, next.deadline - start);
+			timeoutNanos = timeoutNanos < 0 ? untilNext : Math.min(timeoutNanos, untilNext);
+		}
+		WaitStrategy strategy = waitStrategy;
+		for (long i = 0; i < strategy.getSpins(); i++) {
+			if (poll(strategy, start, timeoutNanos)) {
+				return;
+			}
+		}
+		for (long i = 0; i < strategy.getYields(); i++) {
+			if (poll(strategy, start, timeoutNanos)) {
+				return;
+			}
+			Thread.yield();
+		}
+		isSelecting = true;
+		try {
+			long remaining = timeoutNanos < 0 ? -1 : Math.max(0, timeoutNanos - (System.nanoTime() - start));
+			long timeout = TimeUnit.NANOSECONDS.toMillis(remaining + 999999);
+			if (!tasks.isEmpty() || isShuttingDown || strategy != waitStrategy || remaining == 0) {
+				selector.selectNow();
+			} else if (remaining < 0) {
+				selector.select();
+			} else {
+				selector.select(timeout);
+			}
+		} finally {
+			isSelecting = false;
+		}
+	}
+
+	/**
+	 * Polls the selector once and returns true if the loop has work to do.
+	 */
+	private boolean poll(WaitStrategy strategy, long start, long timeoutNanos) throws IOException {
+		return selector.selectNow() > 0 || !tasks.isEmpty() || isShuttingDown || strategy != waitStrategy
+				|| (timeoutNanos >= 0 && System.nanoTime() - start >= timeoutNanos);
+	}
+
+	private void runScheduledTasks() {
+		long now = System.nanoTime();
+		ScheduledTask next;
+		while ((next = scheduledTasks.peek()) != null && next.deadline - now <= 0) {
+			scheduledTasks.poll();
+			stats.taskRun();
+			try {
+				next.task.run();
+			} catch (Exception e) {
+				hookExceptionDuringWork(e);
+			}
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			stats.taskRun();
+			try {
+				task.run();
+			} catch (Exception e) {
+				hookExceptionDuringWork(e);
+			}
+		}
+	}
+
+	/**
+	 * Closes the connections driven by the loop once it terminates. Called on
+	 * the loop's thread after the pending tasks were run and before the
+	 * selector is closed. Tasks handed to the loop while closing the
+	 * connections are still run.
+	 */
+	protected void closeConnections() {
+	}
+
+	/**
+	 * Handles a key the selector reported as ready.
+	 * 
+	 * @param key The ready key.
+	 * @throws IOException
+	 */
+	protected abstract void processKey(SelectionKey key) throws IOException;
+
+	protected void hookExceptionDuringWork(Exception e) {
+	}
+
+	/**
+	 * Returns whether the loop was asked to terminate. A task handed to the loop
+	 * before this returns true is still run, a task handed to it afterwards may
+	 * not be.
+	 */
+	boolean isShuttingDown() {
+		return isShuttingDown;
+	}
+
+	/**
+	 * Returns whether the calling thread is the loop's thread.
+	 */
+	boolean isInEventLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	@Override
+	protected boolean isWorkAvailable() {
+		return !isTerminated;
+	}
+
+	@Override
+	protected Object getWork() {
+		return null;
+	}
+
+	@Override
+	protected Long getSuspendTime() {
+		return null;
+	}
+
+	/**
+	 * A task waiting for its deadline.
+	 */
+	private static class ScheduledTask implements Comparable<ScheduledTask> {
+
+		private final long deadline;
+		private final Runnable task;
+
+		ScheduledTask(long deadline, Runnable task) {
+			this.deadline = deadline;
+			this.task = task;
+		}
+
+		@Override
+		public int compareTo(ScheduledTask other) {
+			return Long.signum(deadline - other.deadline);
+		}
+	}
+}
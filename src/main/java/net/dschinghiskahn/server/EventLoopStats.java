@@ -0,0 +1,123 @@
+package net.dschinghiskahn.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the wakeups and the time split between waiting and working of a
+ * single thread of the {@link Server}.
+ */
+public class EventLoopStats {
+
+	private volatile String name;
+	private final AtomicLong wakeups;
+	private final AtomicLong selectedKeys;
+	private final AtomicLong tasks;
+	private final AtomicLong idleNanos;
+	private final AtomicLong busyNanos;
+
+	EventLoopStats(String name) {
+		this.name = name;
+		this.wakeups = new AtomicLong();
+		this.selectedKeys = new AtomicLong();
+		this.tasks = new AtomicLong();
+		this.idleNanos = new AtomicLong();
+		this.busyNanos = new AtomicLong();
+	}
+
+	void setName(String name) {
+		this.name = name;
+	}
+
+	void selected(int keys, long idleNanos) {
+		wakeups.incrementAndGet();
+		selectedKeys.addAndGet(keys);
+		this.idleNanos.addAndGet(idleNanos);
+	}
+
+	void taskRun() {
+		tasks.incrementAndGet();
+	}
+
+	void worked(long busyNanos) {
+		this.busyNanos.addAndGet(busyNanos);
+	}
+
+	/**
+	 * Returns the name of the thread. Until the thread is started this is the
+	 * name it was created with, without the counter suffix.
+	 * 
+	 * @return The name of the thread.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of times the thread returned from waiting on its
+	 * selector.
+	 * 
+	 * @return The number of selector wakeups.
+	 */
+	public long getWakeups() {
+		return wakeups.get();
+	}
+
+	/**
+	 * Returns the number of ready channels the thread handled. Compared to
+	 * {@link #getWakeups()} this shows how many wakeups were useful.
+	 * 
+	 * @return The number of handled ready channels.
+	 */
+	public long getSelectedKeys() {
+		return selectedKeys.get();
+	}
+
+	/**
+	 * Returns the number of tasks handed to the thread which were run.
+	 * 
+	 * @return The number of run tasks.
+	 */
+	public long getTasks() {
+		return tasks.get();
+	}
+
+	/**
+	 * Returns the time the thread spent waiting on its selector.
+	 * 
+	 * @return The idle time in nanoseconds.
+	 */
+	public long getIdleNanos() {
+		return idleNanos.get();
+	}
+
+	/**
+	 * Returns the time the thread spent handling channels and tasks.
+	 * 
+	 * @return The busy time in nanoseconds.
+	 */
+	public long getBusyNanos() {
+		return busyNanos.get();
+	}
+
+	/**
+	 * Returns the share of time the thread spent working since it was started.
+	 * 
+	 * @return The utilization between 0 and 1.
+	 */
+	public double getUtilization() {
+		long busy = busyNanos.get();
+		long total = busy + idleNanos.get();
+		return total == 0 ? 0 : (double) busy / total;
+	}
+
+	/**
+	 * Returns the {@link EventLoopStats} as string object.
+	 * 
+	 * @return The {@link EventLoopStats} as string object.
+	 */
+	@Override
+	public String toString() {
+		return "EventLoopStats [name=" + name + ", wakeups=" + wakeups + ", selectedKeys=" + selectedKeys + ", tasks="
+				+ tasks + ", utilization=" + getUtilization() + "]";
+	}
+}
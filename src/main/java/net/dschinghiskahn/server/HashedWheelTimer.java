@@ -0,0 +1,157 @@
+package net.dschinghiskahn.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timer for large numbers of coarse timeouts, e.g. one per connection.
+ * Timeouts are kept in a ring of buckets, one bucket per tick, so adding and
+ * cancelling a timeout is O(1) regardless of how many are pending. Timeouts
+ * expire up to one tick late.
+ * 
+ * The timer is not thread-safe. It is owned by a single {@link EventLoop},
+ * which advances it after each wakeup.
+ */
+class HashedWheelTimer {
+
+	private final long tickNanos;
+	private final Timeout[] wheel;
+	private final int mask;
+	private final long startTime;
+	private long currentTick;
+	private int size;
+
+	/**
+	 * Creates a new timer.
+	 * 
+	 * @param tickDuration  The duration of a tick.
+	 * @param unit          The unit of the tick duration.
+	 * @param ticksPerWheel The number of buckets, rounded up to a power of two.
+	 */
+	HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+		if (tickDuration <= 0 || ticksPerWheel <= 0) {
+			throw new IllegalArgumentException("The tick duration and ticks per wheel must be positive.");
+		}
+		this.tickNanos = unit.toNanos(tickDuration);
+		int buckets = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+		this.wheel = new Timeout[Math.max(1, buckets)];
+		this.mask = wheel.length - 1;
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * Runs the given task once the given delay expired.
+	 * 
+	 * @param task  The task to run.
+	 * @param delay The delay in nanoseconds.
+	 * @return The timeout, which can be cancelled.
+	 */
+	Timeout newTimeout(Runnable task, long delay) {
+		long deadlineTick = (System.nanoTime() - startTime + Math.max(0, delay) + tickNanos - 1) / tickNanos;
+		long ticks = Math.max(deadlineTick, currentTick + 1);
+		Timeout timeout = new Timeout(task);
+		timeout.remainingRounds = (ticks - currentTick - 1) / wheel.length;
+		timeout.bucket = (int) (ticks & mask);
+		timeout.next = wheel[timeout.bucket];
+		if (timeout.next != null) {
+			timeout.next.previous = timeout;
+		}
+		wheel[timeout.bucket] = timeout;
+		size++;
+		return timeout;
+	}
+
+	/**
+	 * Returns the number of pending timeouts.
+	 * 
+	 * @return The number of pending timeouts.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the time until the next tick is due, or -1 if no timeout is
+	 * pending and the owner may sleep indefinitely.
+	 * 
+	 * @return The time until the next tick in nanoseconds or -1.
+	 */
+	long nanosUntilNextTick() {
+		if (size == 0) {
+			return -1;
+		}
+		return Math.max(0, startTime + (currentTick + 1) * tickNanos - System.nanoTime());
+	}
+
+	/**
+	 * Runs the tasks of all timeouts which expired up to now.
+	 * 
+	 * @param exceptionHandler Receives the exceptions thrown by tasks.
+	 */
+	void advance(EventLoop exceptionHandler) {
+		long nowTick = (System.nanoTime() - startTime) / tickNanos;
+		while (currentTick < nowTick) {
+			currentTick++;
+			if (size == 0) {
+				currentTick = nowTick;
+				return;
+			}
+			Timeout timeout = wheel[(int) (currentTick & mask)];
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.remainingRounds <= 0) {
+					unlink(timeout);
+					try {
+						timeout.task.run();
+					} catch (Exception e) {
+						exceptionHandler.hookExceptionDuringWork(e);
+					}
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+	}
+
+	private void unlink(Timeout timeout) {
+		if (timeout.previous == null) {
+			wheel[timeout.bucket] = timeout.next;
+		} else {
+			timeout.previous.next = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.previous = timeout.previous;
+		}
+		timeout.previous = null;
+		timeout.next = null;
+		timeout.isDone = true;
+		size--;
+	}
+
+	/**
+	 * A pending task of the timer.
+	 */
+	class Timeout {
+
+		private final Runnable task;
+		private Timeout previous;
+		private Timeout next;
+		private long remainingRounds;
+		private int bucket;
+		private boolean isDone;
+
+		Timeout(Runnable task) {
+			this.task = task;
+		}
+
+		/**
+		 * Removes the timeout from the timer without running its task. Has no
+		 * effect if the task already ran.
+		 */
+		void cancel() {
+			if (!isDone) {
+				unlink(this);
+			}
+		}
+	}
+}
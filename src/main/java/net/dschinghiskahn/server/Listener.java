@@ -0,0 +1,237 @@
+package net.dschinghiskahn.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import net.dschinghiskahn.server.net.Endpoint;
+import net.dschinghiskahn.server.net.ListenerOptions;
+
+/**
+ * The non-blocking TCP and/or UDP socket of an {@link Endpoint}, bound to the
+ * same address.
+ */
+class Listener {
+
+	private final Endpoint endpoint;
+	private final ServerSocketChannel tcpChannel;
+	private final DatagramChannel udpChannel;
+	private final ListenerStats stats;
+	private UdpReplyQueue replyQueue;
+	private EventLoop tcpEventLoop;
+	private SelectionKey tcpKey;
+	private EventLoop udpEventLoop;
+	private SelectionKey udpKey;
+
+	/**
+	 * Opens and binds the sockets of the given endpoint with the endpoint's
+	 * {@link ListenerOptions}. Fails if the platform does not support one of
+	 * the options, including those applied to accepted connections later on.
+	 * 
+	 * @param endpoint  The endpoint to listen on.
+	 * @param port      The port to listen on, which differs from the endpoint's
+	 *                  port if further listeners bind the ephemeral port of the
+	 *                  first one.
+	 * @param reusePort Controls if SO_REUSEPORT is set so several listeners can
+	 *                  bind the same address.
+	 * @throws IOException
+	 */
+	Listener(Endpoint endpoint, int port, boolean reusePort) throws IOException {
+		InetSocketAddress address;
+		if (endpoint.getHost() == null) {
+			address = new InetSocketAddress(port);
+		} else {
+			address = new InetSocketAddress(endpoint.getHost(), port);
+		}
+
+		this.endpoint = endpoint;
+		ListenerOptions options = endpoint.getOptions();
+		ListenerOptions.Builder effective = options.toBuilder();
+		tcpChannel = endpoint.isTcp() ? ServerSocketChannel.open() : null;
+		DatagramChannel datagramChannel = null;
+		try {
+			if (tcpChannel != null) {
+				validateAcceptedOptions(options);
+				if (reusePort) {
+					enableReusePort(tcpChannel);
+				}
+				setOption(tcpChannel, StandardSocketOptions.SO_RCVBUF, options.getTcpReceiveBufferSize());
+				tcpChannel.bind(address, options.getBacklog());
+				tcpChannel.configureBlocking(false);
+				address = (InetSocketAddress) tcpChannel.getLocalAddress();
+				effective.tcpReceiveBufferSize(tcpChannel.getOption(StandardSocketOptions.SO_RCVBUF));
+			}
+			if (endpoint.isUdp()) {
+				datagramChannel = DatagramChannel.open();
+				if (reusePort) {
+					enableReusePort(datagramChannel);
+				}
+				setOption(datagramChannel, StandardSocketOptions.SO_RCVBUF, options.getUdpReceiveBufferSize());
+				setOption(datagramChannel, StandardSocketOptions.SO_SNDBUF, options.getUdpSendBufferSize());
+				setOption(datagramChannel, StandardSocketOptions.IP_TOS, options.getTrafficClass());
+				datagramChannel.bind(address);
+				datagramChannel.configureBlocking(false);
+				address = (InetSocketAddress) datagramChannel.getLocalAddress();
+				effective.udpReceiveBufferSize(datagramChannel.getOption(StandardSocketOptions.SO_RCVBUF));
+				effective.udpSendBufferSize(datagramChannel.getOption(StandardSocketOptions.SO_SNDBUF));
+			}
+		} catch (IOException e) {
+			if (datagramChannel != null) {
+				datagramChannel.close();
+			}
+			closeTcp();
+			throw e;
+		}
+		udpChannel = datagramChannel;
+		stats = new ListenerStats(address, endpoint, effective.build());
+	}
+
+	/**
+	 * Sets the given option unless the value is null, i.e. the default.
+	 */
+	private static <T> void setOption(NetworkChannel channel, SocketOption<T> option, T value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		if (!channel.supportedOptions().contains(option)) {
+			throw new IOException(option.name() + " is not supported by this platform.");
+		}
+		channel.setOption(option, value);
+	}
+
+	/**
+	 * Checks that the options applied to accepted connections are supported,
+	 * so a misconfiguration fails at startup instead of on every connection.
+	 */
+	private static void validateAcceptedOptions(ListenerOptions options) throws IOException {
+		SocketChannel channel = SocketChannel.open();
+		try {
+			configure(channel, options);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Applies the endpoint's options to an accepted connection.
+	 */
+	void configure(SocketChannel channel) throws IOException {
+		configure(channel, endpoint.getOptions());
+	}
+
+	private static void configure(SocketChannel channel, ListenerOptions options) throws IOException {
+		setOption(channel, StandardSocketOptions.TCP_NODELAY, options.getTcpNoDelay());
+		setOption(channel, StandardSocketOptions.SO_KEEPALIVE, options.getKeepAlive());
+		setOption(channel, StandardSocketOptions.SO_SNDBUF, options.getTcpSendBufferSize());
+		setOption(channel, StandardSocketOptions.IP_TOS, options.getTrafficClass());
+	}
+
+	/**
+	 * Sets SO_REUSEPORT, which is only known to the JDK from Java 9 on and is
+	 * therefore looked up reflectively.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void enableReusePort(NetworkChannel channel) throws IOException {
+		SocketOption<Boolean> option;
+		try {
+			option = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("SO_REUSEPORT is not supported by this Java runtime.", e);
+		}
+		if (!channel.supportedOptions().contains(option)) {
+			throw new IOException("SO_REUSEPORT is not supported by this platform.");
+		}
+		channel.setOption(option, Boolean.TRUE);
+	}
+
+	void registerTcp(EventLoop eventLoop) throws IOException {
+		if (tcpChannel != null) {
+			tcpKey = tcpChannel.register(eventLoop.getSelector(), SelectionKey.OP_ACCEPT, this);
+			tcpEventLoop = eventLoop;
+		}
+	}
+
+	void registerUdp(EventLoop eventLoop) throws IOException {
+		if (udpChannel == null) {
+			return;
+		}
+		udpKey = udpChannel.register(eventLoop.getSelector(), SelectionKey.OP_READ, this);
+		udpEventLoop = eventLoop;
+		replyQueue = new UdpReplyQueue(udpChannel, udpKey, eventLoop, stats);
+	}
+
+	/**
+	 * Stops or resumes accepting TCP connections and receiving UDP datagrams.
+	 * Pending connections and datagrams wait in the kernel meanwhile.
+	 * 
+	 * @param isTcpPaused Controls if TCP connections are accepted.
+	 * @param isUdpPaused Controls if UDP datagrams are received.
+	 */
+	void setPaused(boolean isTcpPaused, boolean isUdpPaused) {
+		if (tcpKey != null) {
+			tcpEventLoop.setInterest(tcpKey, SelectionKey.OP_ACCEPT, !isTcpPaused);
+		}
+		if (udpKey != null) {
+			udpEventLoop.setInterest(udpKey, SelectionKey.OP_READ, !isUdpPaused);
+		}
+	}
+
+	Endpoint getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * Returns the TCP socket or null if the endpoint accepts UDP only.
+	 */
+	ServerSocketChannel getTcpChannel() {
+		return tcpChannel;
+	}
+
+	/**
+	 * Returns the UDP socket or null if the endpoint accepts TCP only.
+	 */
+	DatagramChannel getUdpChannel() {
+		return udpChannel;
+	}
+
+	/**
+	 * Returns the queue of the datagrams sent from the UDP socket. Only
+	 * available once the socket was registered.
+	 */
+	UdpReplyQueue getReplyQueue() {
+		return replyQueue;
+	}
+
+	ListenerStats getStats() {
+		return stats;
+	}
+
+	int getPort() {
+		return stats.getAddress().getPort();
+	}
+
+	/**
+	 * Stops accepting TCP connections while UDP datagrams are still received.
+	 */
+	void closeTcp() throws IOException {
+		if (tcpChannel != null && tcpChannel.isOpen()) {
+			tcpChannel.close();
+		}
+	}
+
+	void close() throws IOException {
+		closeTcp();
+		if (udpChannel != null && udpChannel.isOpen()) {
+			udpChannel.close();
+		}
+		if (replyQueue != null) {
+			replyQueue.close();
+		}
+	}
+}
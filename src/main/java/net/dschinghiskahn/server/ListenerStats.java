@@ -0,0 +1,221 @@
+package net.dschinghiskahn.server;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.dschinghiskahn.server.net.Endpoint;
+import net.dschinghiskahn.server.net.ListenerOptions;
+
+/**
+ * Counts the connections and datagrams accepted by a single listening socket
+ * pair of the {@link Server}.
+ */
+public class ListenerStats {
+
+	private final InetSocketAddress address;
+	private final Endpoint endpoint;
+	private final ListenerOptions options;
+	private final AtomicLong tcpConnections;
+	private final AtomicLong tcpConnectionsRejected;
+	private final AtomicLong udpDatagrams;
+	private final AtomicLong udpBytes;
+	private final AtomicLong udpDatagramsRejected;
+	private final AtomicLong udpDatagramsSent;
+	private final AtomicLong udpBytesSent;
+	private final AtomicLong udpSendFailures;
+	private final AtomicLong tlsHandshakes;
+	private final AtomicLong tlsHandshakeFailures;
+
+	ListenerStats(InetSocketAddress address) {
+		this(address, null, ListenerOptions.DEFAULT);
+	}
+
+	ListenerStats(InetSocketAddress address, Endpoint endpoint, ListenerOptions options) {
+		this.address = address;
+		this.endpoint = endpoint;
+		this.options = options;
+		this.tcpConnections = new AtomicLong();
+		this.tcpConnectionsRejected = new AtomicLong();
+		this.udpDatagrams = new AtomicLong();
+		this.udpBytes = new AtomicLong();
+		this.udpDatagramsRejected = new AtomicLong();
+		this.udpDatagramsSent = new AtomicLong();
+		this.udpBytesSent = new AtomicLong();
+		this.udpSendFailures = new AtomicLong();
+		this.tlsHandshakes = new AtomicLong();
+		this.tlsHandshakeFailures = new AtomicLong();
+	}
+
+	void tcpConnectionAccepted() {
+		tcpConnections.incrementAndGet();
+	}
+
+	void tcpConnectionRejected() {
+		tcpConnectionsRejected.incrementAndGet();
+	}
+
+	void udpDatagramRejected() {
+		udpDatagramsRejected.incrementAndGet();
+	}
+
+	void udpDatagramReceived(int bytes) {
+		udpDatagrams.incrementAndGet();
+		udpBytes.addAndGet(bytes);
+	}
+
+	void udpDatagramSent(int bytes) {
+		udpDatagramsSent.incrementAndGet();
+		udpBytesSent.addAndGet(bytes);
+	}
+
+	void udpSendFailed() {
+		udpSendFailures.incrementAndGet();
+	}
+
+	void tlsHandshakeCompleted() {
+		tlsHandshakes.incrementAndGet();
+	}
+
+	void tlsHandshakeFailed() {
+		tlsHandshakeFailures.incrementAndGet();
+	}
+
+	/**
+	 * Returns the address the listener is bound to.
+	 * 
+	 * @return The address the listener is bound to.
+	 */
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Returns the endpoint the listener was created for.
+	 * 
+	 * @return The endpoint of the listener or null for a multicast group.
+	 */
+	public Endpoint getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * Returns the socket options in effect. Buffer sizes are read back from
+	 * the sockets, as the operating system may cap or, like Linux, double the
+	 * requested sizes. The other options are the configured ones.
+	 * 
+	 * @return The socket options in effect.
+	 */
+	public ListenerOptions getOptions() {
+		return options;
+	}
+
+	/**
+	 * Returns the number of TCP connections accepted so far.
+	 * 
+	 * @return The number of TCP connections accepted so far.
+	 */
+	public long getTcpConnections() {
+		return tcpConnections.get();
+	}
+
+	/**
+	 * Returns the number of UDP datagrams received so far.
+	 * 
+	 * @return The number of UDP datagrams received so far.
+	 */
+	public long getUdpDatagrams() {
+		return udpDatagrams.get();
+	}
+
+	/**
+	 * Returns the number of UDP payload bytes received so far.
+	 * 
+	 * @return The number of UDP payload bytes received so far.
+	 */
+	public long getUdpBytes() {
+		return udpBytes.get();
+	}
+
+	/**
+	 * Returns the number of TCP connections closed right after accepting them,
+	 * because their source exceeded its rate limit or connection limit.
+	 * 
+	 * @return The number of rejected TCP connections.
+	 */
+	public long getTcpConnectionsRejected() {
+		return tcpConnectionsRejected.get();
+	}
+
+	/**
+	 * Returns the number of UDP datagrams discarded because their source
+	 * exceeded its rate limit.
+	 * 
+	 * @return The number of rejected UDP datagrams.
+	 */
+	public long getUdpDatagramsRejected() {
+		return udpDatagramsRejected.get();
+	}
+
+	/**
+	 * Returns the number of UDP datagrams sent from the socket so far, e.g.
+	 * replies.
+	 * 
+	 * @return The number of UDP datagrams sent so far.
+	 */
+	public long getUdpDatagramsSent() {
+		return udpDatagramsSent.get();
+	}
+
+	/**
+	 * Returns the number of UDP payload bytes sent from the socket so far.
+	 * 
+	 * @return The number of UDP payload bytes sent so far.
+	 */
+	public long getUdpBytesSent() {
+		return udpBytesSent.get();
+	}
+
+	/**
+	 * Returns the number of UDP datagrams which were dropped because the socket
+	 * failed to send them, too many of them were waiting to be sent or the
+	 * socket was closed.
+	 * 
+	 * @return The number of UDP datagrams which failed to send.
+	 */
+	public long getUdpSendFailures() {
+		return udpSendFailures.get();
+	}
+
+	/**
+	 * Returns the number of TLS handshakes completed so far, including resumed
+	 * sessions.
+	 * 
+	 * @return The number of TLS handshakes completed so far.
+	 */
+	public long getTlsHandshakes() {
+		return tlsHandshakes.get();
+	}
+
+	/**
+	 * Returns the number of TLS handshakes which failed or timed out so far.
+	 * 
+	 * @return The number of failed TLS handshakes.
+	 */
+	public long getTlsHandshakeFailures() {
+		return tlsHandshakeFailures.get();
+	}
+
+	/**
+	 * Returns the {@link ListenerStats} as string object.
+	 * 
+	 * @return The {@link ListenerStats} as string object.
+	 */
+	@Override
+	public String toString() {
+		return "ListenerStats [address=" + address + ", options=" + options + ", tcpConnections=" + tcpConnections
+				+ ", tcpConnectionsRejected=" + tcpConnectionsRejected + ", udpDatagrams=" + udpDatagrams
+				+ ", udpBytes=" + udpBytes + ", udpDatagramsRejected=" + udpDatagramsRejected + ", udpDatagramsSent="
+				+ udpDatagramsSent + ", udpBytesSent=" + udpBytesSent + ", udpSendFailures=" + udpSendFailures
+				+ ", tlsHandshakes=" + tlsHandshakes + ", tlsHandshakeFailures=" + tlsHandshakeFailures + "]";
+	}
+}
@@ -0,0 +1,119 @@
+package net.dschinghiskahn.server;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A non-blocking UDP socket bound to the port of a multicast group and joined
+ * to the group on a single network interface. Java does not report the
+ * destination address of a received datagram, so every group gets its own
+ * socket to tell its datagrams apart.
+ */
+class MulticastGroup {
+
+	private final InetSocketAddress group;
+	private final DatagramChannel channel;
+	private final List<MembershipKey> memberships;
+	private final ListenerStats stats;
+	private UdpReplyQueue replyQueue;
+	private EventLoop eventLoop;
+	private SelectionKey key;
+
+	/**
+	 * Opens a socket and joins the given group.
+	 * 
+	 * @param group            The group address and port.
+	 * @param networkInterface The interface to join the group on.
+	 * @param sources          The sources to receive from (source-specific
+	 *                         multicast) or none to receive from any source.
+	 * @throws IOException
+	 */
+	MulticastGroup(InetSocketAddress group, NetworkInterface networkInterface, InetAddress... sources)
+			throws IOException {
+		if (!group.getAddress().isMulticastAddress()) {
+			throw new IllegalArgumentException("Not a multicast address: " + group);
+		}
+		this.group = group;
+		this.memberships = new ArrayList<MembershipKey>();
+		channel = DatagramChannel.open(group.getAddress() instanceof Inet6Address ? StandardProtocolFamily.INET6
+				: StandardProtocolFamily.INET);
+		try {
+			channel.setOption(StandardSocketOptions.SO_REUSEADDR, Boolean.TRUE);
+			channel.bind(new InetSocketAddress(group.getPort()));
+			channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+			if (sources.length == 0) {
+				memberships.add(channel.join(group.getAddress(), networkInterface));
+			} else {
+				for (InetAddress source : sources) {
+					memberships.add(channel.join(group.getAddress(), networkInterface, source));
+				}
+			}
+			channel.configureBlocking(false);
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+		stats = new ListenerStats(group);
+	}
+
+	void register(EventLoop eventLoop) throws IOException {
+		key = channel.register(eventLoop.getSelector(), SelectionKey.OP_READ, this);
+		this.eventLoop = eventLoop;
+		replyQueue = new UdpReplyQueue(channel, key, eventLoop, stats);
+	}
+
+	/**
+	 * Stops or resumes receiving datagrams. Pending datagrams wait in the
+	 * kernel meanwhile.
+	 * 
+	 * @param isPaused Controls if datagrams are received.
+	 */
+	void setPaused(boolean isPaused) {
+		if (key != null) {
+			eventLoop.setInterest(key, SelectionKey.OP_READ, !isPaused);
+		}
+	}
+
+	InetSocketAddress getGroup() {
+		return group;
+	}
+
+	DatagramChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Returns the queue of the datagrams sent from the group's socket. Replies
+	 * are sent to the unicast address of the sender. Only available once the
+	 * socket was registered.
+	 */
+	UdpReplyQueue getReplyQueue() {
+		return replyQueue;
+	}
+
+	ListenerStats getStats() {
+		return stats;
+	}
+
+	void close() throws IOException {
+		for (MembershipKey membership : memberships) {
+			membership.drop();
+		}
+		if (channel.isOpen()) {
+			channel.close();
+		}
+		if (replyQueue != null) {
+			replyQueue.close();
+		}
+	}
+}
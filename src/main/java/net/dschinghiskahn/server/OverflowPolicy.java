@@ -0,0 +1,29 @@
+package net.dschinghiskahn.server;
+
+/**
+ * Controls what the {@link Server} does with a new connection or datagram
+ * while its connection queue is full.
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * The server stops accepting connections and receiving datagrams until the
+	 * queue has room again, without stalling its event loops. Pending
+	 * connections and datagrams pile up in the kernel until it gives up on
+	 * them.
+	 */
+	BLOCK,
+
+	/**
+	 * The new connection is closed or the new datagram is dropped.
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * The oldest queued datagram is dropped to make room for a new datagram.
+	 * Accepted TCP connections are never dropped to make room, so a new
+	 * connection is closed, as is a new datagram if no queued datagram is left
+	 * to drop.
+	 */
+	DROP_OLDEST
+}
@@ -1,21 +1,56 @@
 package net.dschinghiskahn.server;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
 
 import net.dschinghiskahn.objectdecoupler.IObjectReceiver;
-import net.dschinghiskahn.objectdecoupler.ObjectDecoupler;
+import net.dschinghiskahn.server.net.BufferPool;
+import net.dschinghiskahn.server.net.Endpoint;
+import net.dschinghiskahn.server.net.IEventLoop;
 import net.dschinghiskahn.server.net.INetworkData;
+import net.dschinghiskahn.server.net.ISelectionHandler;
+import net.dschinghiskahn.server.net.IUdpSessionHandler;
+import net.dschinghiskahn.server.net.NetworkDataFactory;
 import net.dschinghiskahn.server.net.TcpNetworkData;
+import net.dschinghiskahn.server.net.TlsChannel;
 import net.dschinghiskahn.server.net.UdpNetworkData;
+import net.dschinghiskahn.server.net.UdpNetworkDataBatch;
+import net.dschinghiskahn.server.net.UdpSession;
 import net.dschinghiskahn.worker.AbstractWorker;
 
 /**
@@ -25,12 +60,32 @@ import net.dschinghiskahn.worker.AbstractWorker;
 public class Server {
 
 	public static final String CONNECTION_ACCEPT = "CONNECTION_ACCEPTED";
-	private final ObjectDecoupler<INetworkData> connectionQueue;
-	private final ServerSocketChannel tcpChannel;
+	private static final Method SET_APPLICATION_PROTOCOLS = findSetApplicationProtocols();
+	private final ConnectionQueue connectionQueue;
+	private final List<Listener> listeners;
+	private final List<MulticastGroup> multicastGroups;
 	private final List<WorkerThread> threads;
-	private final DatagramChannel udpChannel;
-	private final Selector socketSelector;
-	private boolean isServerRunning;
+	private final AcceptorThread acceptor;
+	private final BufferPool bufferPool;
+	private final ServerMetrics metrics;
+	private final SourceLimiter sourceLimiter;
+	private ObjectName metricsName;
+	private volatile int udpBatchSize;
+	private volatile int acceptBatchSize;
+	private volatile boolean isUdpBufferPooling;
+	private final ConcurrentMap<DatagramChannel, ConcurrentMap<InetSocketAddress, UdpSession>> udpSessions;
+	private final ConcurrentMap<TcpNetworkData, ConnectionTracker> connections;
+	private volatile long readTimeout;
+	private volatile long writeTimeout;
+	private volatile long idleTimeout;
+	private volatile SSLContext sslContext;
+	private volatile String[] applicationProtocols;
+	private volatile long tlsHandshakeTimeout;
+	private volatile Executor tlsTaskExecutor;
+	private volatile IUdpSessionHandler udpSessionHandler;
+	private volatile long udpSessionIdleTimeout;
+	private volatile boolean isServerRunning;
+	private CompletableFuture<Void> shutdown;
 
 	/**
 	 * Creates a new Server listening on the given port.
@@ -78,155 +133,1634 @@ public class Server {
 	 * @throws IOException
 	 */
 	public Server(String url, int port, int numThreads, boolean isDaemon) throws IOException {
-		connectionQueue = new ObjectDecoupler<INetworkData>();
+		this(url, port, numThreads, isDaemon, BufferPool.DEFAULT_MAX_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a new Server listening on the given port.
+	 * 
+	 * @param url             The interface/ip to listen on (null refers to the
+	 *                        wildcard address).
+	 * @param port            The port to listen on.
+	 * @param numThreads      Number of worker threads to start for connection
+	 *                        handling.
+	 * @param isDaemon        Controls if the threads are started in daemon mode.
+	 * @param maxDatagramSize The maximum size of a received UDP datagram, larger
+	 *                        datagrams are truncated.
+	 * @throws IOException
+	 */
+	public Server(String url, int port, int numThreads, boolean isDaemon, int maxDatagramSize) throws IOException {
+		this(url, port, numThreads, isDaemon, maxDatagramSize, false);
+	}
+
+	/**
+	 * Creates a new Server listening on the given port.
+	 * 
+	 * @param url             The interface/ip to listen on (null refers to the
+	 *                        wildcard address).
+	 * @param port            The port to listen on.
+	 * @param numThreads      Number of worker threads to start for connection
+	 *                        handling.
+	 * @param isDaemon        Controls if the threads are started in daemon mode.
+	 * @param maxDatagramSize The maximum size of a received UDP datagram, larger
+	 *                        datagrams are truncated.
+	 * @param reusePort       Controls if every worker thread binds its own TCP and
+	 *                        UDP socket using SO_REUSEPORT and selects on its own
+	 *                        selector, so the kernel balances incoming traffic
+	 *                        across the workers. Requires Java 9 or newer and
+	 *                        platform support.
+	 * @throws IOException
+	 */
+	public Server(String url, int port, int numThreads, boolean isDaemon, int maxDatagramSize, boolean reusePort)
+			throws IOException {
+		this(Collections.singletonList(Endpoint.tcpAndUdp(url, port)), numThreads, isDaemon, maxDatagramSize,
+				reusePort);
+	}
+
+	/**
+	 * Creates a new Server listening on all of the given endpoints with a
+	 * shared set of threads.
+	 * 
+	 * @param endpoints  The endpoints to listen on.
+	 * @param numThreads Number of worker threads to start for connection handling.
+	 * @throws IOException
+	 */
+	public Server(List<Endpoint> endpoints, int numThreads) throws IOException {
+		this(endpoints, numThreads, false, BufferPool.DEFAULT_MAX_BUFFER_SIZE, false);
+	}
+
+	/**
+	 * Creates a new Server listening on all of the given endpoints with a
+	 * shared set of threads. The UDP sockets are spread round-robin across the
+	 * worker threads, while a single acceptor thread accepts the TCP
+	 * connections of all endpoints and hands them round-robin to the workers.
+	 * Every {@link INetworkData} refers to the {@link Endpoint} it arrived on.
+	 * 
+	 * @param endpoints       The endpoints to listen on.
+	 * @param numThreads      Number of worker threads to start for connection
+	 *                        handling.
+	 * @param isDaemon        Controls if the threads are started in daemon mode.
+	 * @param maxDatagramSize The maximum size of a received UDP datagram, larger
+	 *                        datagrams are truncated.
+	 * @param reusePort       Controls if every worker thread binds its own
+	 *                        sockets of every endpoint using SO_REUSEPORT and
+	 *                        selects on its own selector, so the kernel balances
+	 *                        incoming traffic across the workers. Requires Java 9
+	 *                        or newer and platform support.
+	 * @throws IOException
+	 */
+	public Server(List<Endpoint> endpoints, int numThreads, boolean isDaemon, int maxDatagramSize, boolean reusePort)
+			throws IOException {
+		bufferPool = new BufferPool(maxDatagramSize);
+		udpBatchSize = 1;
+		acceptBatchSize = 1;
+		tlsHandshakeTimeout = TimeUnit.SECONDS.toNanos(10);
+		tlsTaskExecutor = ForkJoinPool.commonPool();
+		sourceLimiter = new SourceLimiter();
+		connectionQueue = new ConnectionQueue() {
+
+			@Override
+			protected void hookAboveHighWaterMark(int depth) {
+				hookConnectionQueueAboveHighWaterMark(depth);
+			}
+
+			@Override
+			protected void hookBelowLowWaterMark(int depth) {
+				hookConnectionQueueBelowLowWaterMark(depth);
+			}
+
+			@Override
+			protected void hookDropped(INetworkData networkData) {
+				hookNetworkDataDropped(networkData);
+			}
+
+			@Override
+			protected void hookPause() {
+				setPaused(true);
+			}
+
+			@Override
+			protected void hookResume() {
+				setPaused(false);
+			}
+		};
+		listeners = new ArrayList<Listener>();
+		multicastGroups = new CopyOnWriteArrayList<MulticastGroup>();
+		udpSessions = new ConcurrentHashMap<DatagramChannel, ConcurrentMap<InetSocketAddress, UdpSession>>();
+		connections = new ConcurrentHashMap<TcpNetworkData, ConnectionTracker>();
 		threads = new ArrayList<Server.WorkerThread>();
-		tcpChannel = ServerSocketChannel.open();
-		if (url == null) {
-			tcpChannel.socket().bind(new InetSocketAddress(port));
-		} else {
-			tcpChannel.socket().bind(new InetSocketAddress(url, port));
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("At least one worker thread is required: " + numThreads);
 		}
-		tcpChannel.configureBlocking(false);
-
-		udpChannel = DatagramChannel.open();
-		if (url == null) {
-			udpChannel.socket().bind(new InetSocketAddress(port));
-		} else {
-			udpChannel.socket().bind(new InetSocketAddress(url, port));
+		if (endpoints.isEmpty()) {
+			throw new IllegalArgumentException("At least one endpoint is required.");
 		}
-		udpChannel.configureBlocking(false);
 
-		socketSelector = Selector.open();
-		tcpChannel.register(socketSelector, SelectionKey.OP_ACCEPT);
-		udpChannel.register(socketSelector, SelectionKey.OP_READ);
+		try {
+			for (int i = 0; i < numThreads; i++) {
+				threads.add(new WorkerThread(isDaemon)); // NOPMD
+			}
+			boolean isTcp = false;
+			for (int i = 0; i < endpoints.size(); i++) {
+				Endpoint endpoint = endpoints.get(i);
+				isTcp |= endpoint.isTcp();
+				int port = endpoint.getPort();
+				for (int j = 0; j < (reusePort ? numThreads : 1); j++) {
+					Listener listener = new Listener(endpoint, port, reusePort); // NOPMD
+					listeners.add(listener);
+					port = listener.getPort();
+					WorkerThread thread = threads.get(reusePort ? j : i % numThreads);
+					listener.registerUdp(thread);
+					if (reusePort) {
+						listener.registerTcp(thread);
+					}
+				}
+			}
+			if (reusePort || !isTcp) {
+				acceptor = null;
+			} else {
+				acceptor = new AcceptorThread(isDaemon);
+				for (Listener listener : listeners) {
+					listener.registerTcp(acceptor);
+				}
+			}
+		} catch (IOException e) {
+			closeChannels();
+			throw e;
+		}
+		metrics = new ServerMetrics(connectionQueue, listeners, multicastGroups, getEventLoops());
+		int boundPort = listeners.get(0).getPort();
+		for (int i = 0; i < threads.size(); i++) {
+			threads.get(i).setThreadName("ServerWorker-" + boundPort + "-" + i);
+		}
+		if (acceptor != null) {
+			acceptor.setThreadName("ServerAcceptor-" + boundPort);
+		}
 
-		WorkerThread thread;
-		for (int i = 0; i < numThreads; i++) {
-			thread = new WorkerThread(isDaemon); // NOPMD
+		isServerRunning = true;
+		for (WorkerThread thread : threads) {
 			thread.start();
-			threads.add(thread);
 		}
-		isServerRunning = true;
-		hookServerStarted(url, port, numThreads, isDaemon);
+		if (acceptor != null) {
+			acceptor.start();
+		}
+		hookServerStarted(endpoints.get(0).getHost(), endpoints.get(0).getPort(), numThreads, isDaemon);
 	}
 
 	protected void hookServerStarted(String url, int port, int numThreads, boolean isDaemon) {
 	}
 
 	/**
-	 * Shuts down the server. It may take some time until all worker threads are
-	 * closed.
+	 * Shuts down the server and waits until all worker threads are terminated
+	 * and all listening sockets are closed. If called on a worker thread, e.g.
+	 * from a hook, the server is shut down without waiting.
 	 * 
 	 * @throws IOException
 	 */
 	public void shutdown() throws IOException {
-		isServerRunning = false;
+		CompletableFuture<Void> future = shutdownAsync();
+		for (EventLoop eventLoop : getEventLoops()) {
+			if (eventLoop.isInEventLoop()) {
+				return;
+			}
+		}
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Shutting down the server failed.", e.getCause());
+		}
+	}
 
-		for (int i = 0; i < threads.size(); i++) {
+	/**
+	 * Starts shutting down the server without waiting. Every worker thread is
+	 * woken up, runs the tasks handed to it so far, e.g. pending flushes,
+	 * closes its TCP connections, including those still in the TLS handshake,
+	 * and terminates. Once all of them terminated the listening sockets are
+	 * closed.
+	 * Calling this method again returns the same future.
+	 * 
+	 * @return A future completed once the server is shut down.
+	 */
+	public synchronized CompletableFuture<Void> shutdownAsync() {
+		if (shutdown == null) {
+			isServerRunning = false;
+			List<EventLoop> eventLoops = getEventLoops();
+			CompletableFuture<?>[] terminations = new CompletableFuture<?>[eventLoops.size()];
+			for (int i = 0; i < terminations.length; i++) {
+				terminations[i] = eventLoops.get(i).terminate();
+			}
+			shutdown = CompletableFuture.allOf(terminations).thenRun(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						closeChannels();
+					} catch (IOException e) {
+						throw new CompletionException(e);
+					} finally {
+						connectionQueue.stop();
+						unregisterMetricsMBean();
+					}
+					hookServerStopped();
+				}
+			});
+		}
+		return shutdown;
+	}
+
+	/**
+	 * Shuts down the server gracefully. New TCP connections are refused at
+	 * once, open connections get the given time to finish and are closed
+	 * afterwards, then the server is shut down like {@link #shutdown()}.
+	 * 
+	 * @param drainTimeout The maximum time to wait for open connections to be
+	 *                     closed.
+	 * @param unit         The unit of the drain timeout.
+	 * @throws IOException
+	 */
+	public void shutdown(long drainTimeout, TimeUnit unit) throws IOException {
+		for (Listener listener : listeners) {
+			listener.closeTcp();
+		}
+		long deadline = System.nanoTime() + unit.toNanos(drainTimeout);
+		synchronized (connections) {
+			long remaining;
+			while (!connections.isEmpty() && (remaining = deadline - System.nanoTime()) > 0) {
+				try {
+					TimeUnit.NANOSECONDS.timedWait(connections, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		for (TcpNetworkData connection : connections.keySet()) {
 			try {
-				Thread.sleep(10);
-			} catch (InterruptedException e) {
-				// Intentionally left empty
+				connection.close();
+			} catch (IOException e) {
+				hookExceptionDuringWork(e);
 			}
-			socketSelector.wakeup();
 		}
+		shutdown();
+	}
 
-		for (WorkerThread workerThread : threads) {
-			workerThread.stop();
+	protected void hookServerStopped() {
+	}
+
+	/**
+	 * Returns the worker threads followed by the acceptor, if there is one.
+	 */
+	List<EventLoop> getEventLoops() {
+		List<EventLoop> eventLoops = new ArrayList<EventLoop>(threads);
+		if (acceptor != null) {
+			eventLoops.add(acceptor);
 		}
+		return eventLoops;
+	}
 
-		if (socketSelector.isOpen()) {
-			socketSelector.close();
+	private void closeChannels() throws IOException {
+		for (EventLoop eventLoop : getEventLoops()) {
+			eventLoop.close();
 		}
-		if (tcpChannel.isOpen()) {
-			tcpChannel.close();
+		for (Listener listener : listeners) {
+			listener.close();
 		}
-		if (udpChannel.isOpen()) {
-			udpChannel.close();
+		for (MulticastGroup multicastGroup : multicastGroups) {
+			multicastGroup.close();
 		}
-
-		connectionQueue.stop();
-		hookServerStopped();
 	}
 
-	protected void hookServerStopped() {
+	/**
+	 * Stops or resumes accepting connections and receiving datagrams while the
+	 * connection queue is full. Datagrams handed to UDP sessions bypass the
+	 * queue, so they are still received.
+	 */
+	private void setPaused(boolean isPaused) {
+		boolean isUdpPaused = isPaused && udpSessionHandler == null;
+		for (Listener listener : listeners) {
+			listener.setPaused(isPaused, isUdpPaused);
+		}
+		for (MulticastGroup multicastGroup : multicastGroups) {
+			multicastGroup.setPaused(isUdpPaused);
+		}
 	}
 
 	/**
-	 * A worker object to accept incoming connections.
+	 * Returns the statistics of every listening socket pair. There is one entry
+	 * per endpoint, in the order the endpoints were given, or one entry per
+	 * endpoint and worker thread if the server was created with SO_REUSEPORT.
+	 * {@link ListenerStats#getEndpoint()} tells the entries apart.
+	 * 
+	 * @return The statistics of every listening socket pair.
 	 */
-	private class WorkerThread extends AbstractWorker<Object> {
+	public List<ListenerStats> getListenerStats() {
+		List<ListenerStats> stats = new ArrayList<ListenerStats>(listeners.size());
+		for (Listener listener : listeners) {
+			stats.add(listener.getStats());
+		}
+		return Collections.unmodifiableList(stats);
+	}
 
-		/**
-		 * Creates a new worker accepting connections.
-		 */
-		WorkerThread(boolean isDaemon) {
-			super("ServerWorker", isDaemon);
+	/**
+	 * Joins the given multicast group on the given network interface. The group
+	 * gets its own UDP socket bound to the port of the group, which is handled by
+	 * one of the worker threads like the regular UDP socket, including buffer
+	 * pooling and batching. Received datagrams are delivered as
+	 * {@link UdpNetworkData} whose receiver is the group address.
+	 * 
+	 * Note that on Linux a socket bound to the wildcard address also receives
+	 * datagrams of groups joined by other sockets on the same port, so groups
+	 * sharing a port should use distinct ports where possible.
+	 * 
+	 * @param group            The group address and port.
+	 * @param networkInterface The interface to join the group on.
+	 * @param sources          The sources to receive from (source-specific
+	 *                         multicast) or none to receive from any source.
+	 * @return The statistics of the group's socket.
+	 * @throws IOException
+	 * @throws IllegalStateException If the server is shut down.
+	 */
+	public ListenerStats joinMulticastGroup(InetSocketAddress group, NetworkInterface networkInterface,
+			InetAddress... sources) throws IOException {
+		final MulticastGroup multicastGroup = new MulticastGroup(group, networkInterface, sources);
+		final WorkerThread thread;
+		synchronized (this) {
+			// Checked under the lock of shutdownAsync(), so a group added here
+			// is closed with the other channels once the threads terminated.
+			if (!isServerRunning) {
+				closeQuietly(multicastGroup);
+				throw new IllegalStateException("The server is shut down.");
+			}
+			thread = threads.get(multicastGroups.size() % threads.size());
+			multicastGroups.add(multicastGroup);
 		}
+		thread.execute(new Runnable() {
 
-		@Override
-		protected void doWork(Object item) {
-			try {
-				socketSelector.select();
-				for (SelectionKey key : socketSelector.selectedKeys()) {
-					if (key.isAcceptable() && key.channel() == tcpChannel) {
-						acceptTcpConnection();
-					} else if (key.isReadable() && key.channel() == udpChannel && key.channel().isOpen()) {
-						acceptUdpConnection();
-					}
+			@Override
+			public void run() {
+				try {
+					multicastGroup.register(thread);
+				} catch (IOException e) {
+					multicastGroups.remove(multicastGroup);
+					closeQuietly(multicastGroup);
+					hookExceptionDuringWork(e);
 				}
-			} catch (Exception e) {
-				hookExceptionDuringWork(e);
+			}
+		});
+		return multicastGroup.getStats();
+	}
+
+	/**
+	 * Leaves all memberships of the given multicast group and closes its socket.
+	 * 
+	 * @param group The group address and port passed to
+	 *              {@link #joinMulticastGroup(InetSocketAddress, NetworkInterface, InetAddress...)}.
+	 * @return True if the group was joined before.
+	 * @throws IOException
+	 */
+	public boolean leaveMulticastGroup(InetSocketAddress group) throws IOException {
+		for (MulticastGroup multicastGroup : multicastGroups) {
+			if (multicastGroup.getGroup().equals(group) && multicastGroups.remove(multicastGroup)) {
+				multicastGroup.close();
+				closeUdpSessions(udpSessions.remove(multicastGroup.getChannel()));
+				return true;
 			}
 		}
+		return false;
+	}
 
-		protected void hookExceptionDuringWork(Exception e) {
+	/**
+	 * Returns the statistics of every joined multicast group.
+	 * 
+	 * @return The statistics of every joined multicast group.
+	 */
+	public List<ListenerStats> getMulticastGroupStats() {
+		List<ListenerStats> stats = new ArrayList<ListenerStats>(multicastGroups.size());
+		for (MulticastGroup multicastGroup : multicastGroups) {
+			stats.add(multicastGroup.getStats());
 		}
+		return Collections.unmodifiableList(stats);
+	}
 
-		private void acceptUdpConnection() throws IOException {
-			ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
-			synchronized (Server.class) {
-				udpChannel.receive(buffer);
-			}
-			if (buffer.flip().hasRemaining()) {
-				UdpNetworkData networkData = new UdpNetworkData(buffer,
-						(InetSocketAddress) udpChannel.getRemoteAddress(),
-						(InetSocketAddress) udpChannel.getLocalAddress());
-				connectionQueue.add(networkData);
-				hookPostUdpConnectionAccepted(networkData);
-			}
+	private void closeQuietly(MulticastGroup multicastGroup) {
+		try {
+			multicastGroup.close();
+		} catch (IOException e) {
+			hookExceptionDuringWork(e);
+		}
+	}
+
+	/**
+	 * Returns the open TCP connections accepted by the server. Connections are
+	 * removed once they are closed through the {@link TcpNetworkData}, its
+	 * streams or its event loop, or once a timeout detects they were closed.
+	 * 
+	 * @return A live view of the open TCP connections.
+	 */
+	public Collection<TcpNetworkData> getConnections() {
+		return Collections.unmodifiableSet(connections.keySet());
+	}
+
+	/**
+	 * Sets the timeouts after which a TCP connection is closed. The timeouts
+	 * are checked by a hashed wheel timer on the connection's worker thread,
+	 * which costs O(1) per connection and fires up to 100 milliseconds late.
+	 * {@link #hookConnectionTimedOut(TcpNetworkData, ConnectionTimeout)} is
+	 * called before a connection is closed. The timeouts apply to open
+	 * connections as well.
+	 * 
+	 * @param readTimeout  The maximum time without reading data, 0 to disable.
+	 * @param writeTimeout The maximum time without writing data, 0 to disable.
+	 * @param idleTimeout  The maximum time without reading or writing data, 0
+	 *                     to disable.
+	 * @param unit         The unit of the timeouts.
+	 */
+	public void setConnectionTimeouts(long readTimeout, long writeTimeout, long idleTimeout, TimeUnit unit) {
+		if (readTimeout < 0 || writeTimeout < 0 || idleTimeout < 0) {
+			throw new IllegalArgumentException("The timeouts must not be negative.");
 		}
+		this.readTimeout = unit.toNanos(readTimeout);
+		this.writeTimeout = unit.toNanos(writeTimeout);
+		this.idleTimeout = unit.toNanos(idleTimeout);
+		for (ConnectionTracker tracker : connections.values()) {
+			tracker.start();
+		}
+	}
+
+	protected void hookConnectionTimedOut(TcpNetworkData connection, ConnectionTimeout timeout) {
+	}
 
-		protected void hookPostUdpConnectionAccepted(UdpNetworkData networkData) {
+	/**
+	 * Terminates TLS on the TCP listener. Every connection accepted from now on
+	 * performs the TLS handshake on its worker thread without blocking it, and
+	 * is only handed to the receivers once the handshake completed. The streams
+	 * and the non-blocking mode of the {@link TcpNetworkData} then carry the
+	 * decrypted data. The network and application buffers of the connections
+	 * are leased from the {@link BufferPool} of the server.
+	 * 
+	 * Sessions are cached and resumed by the server session context of the given
+	 * {@link SSLContext}, see {@link #setTlsSessionCache(int, long, TimeUnit)}.
+	 * {@link #hookConfigureSslEngine(SSLEngine)} is called for every connection,
+	 * e.g. to require client authentication or to select the application
+	 * protocol with a custom selector. Setting null accepts plaintext
+	 * connections again.
+	 * 
+	 * @param sslContext           The initialized {@link SSLContext} or null.
+	 * @param applicationProtocols The application protocols offered through
+	 *                             ALPN in order of preference, e.g. "h2" and
+	 *                             "http/1.1", or none to disable ALPN.
+	 * @throws UnsupportedOperationException Thrown if application protocols are
+	 *                                       given but the Java runtime does not
+	 *                                       support ALPN.
+	 */
+	public void setSslContext(SSLContext sslContext, String... applicationProtocols) {
+		if (applicationProtocols.length > 0 && SET_APPLICATION_PROTOCOLS == null) {
+			throw new UnsupportedOperationException("ALPN is not supported by this Java runtime.");
 		}
+		this.applicationProtocols = applicationProtocols.clone();
+		this.sslContext = sslContext;
+	}
 
-		private void acceptTcpConnection() throws IOException {
-			SocketChannel channel = tcpChannel.accept();
-			if (channel != null) {
-				TcpNetworkData networkData = new TcpNetworkData(channel);
-				connectionQueue.add(networkData);
-				hookPostTcpConnectionAccepted(networkData);
-			}
+	/**
+	 * Sets the size and the timeout of the TLS session cache. Clients resuming a
+	 * cached session skip the expensive key exchange of a full handshake.
+	 * 
+	 * @param size    The maximum number of cached sessions, 0 for no limit.
+	 * @param timeout The time a session may be resumed for, 0 for no limit.
+	 * @param unit    The unit of the timeout.
+	 */
+	public void setTlsSessionCache(int size, long timeout, TimeUnit unit) {
+		SSLContext context = sslContext;
+		if (context == null) {
+			throw new IllegalStateException("No SSL context is set.");
+		}
+		if (size < 0 || timeout < 0) {
+			throw new IllegalArgumentException("The size and timeout must not be negative.");
 		}
+		context.getServerSessionContext().setSessionCacheSize(size);
+		context.getServerSessionContext().setSessionTimeout((int) Math.min(Integer.MAX_VALUE, unit.toSeconds(timeout)));
+	}
 
-		protected void hookPostTcpConnectionAccepted(TcpNetworkData networkData) {
+	/**
+	 * Sets the time a TLS handshake may take before the connection is closed.
+	 * The default is 10 seconds.
+	 * 
+	 * @param timeout The maximum duration of a handshake.
+	 * @param unit    The unit of the timeout.
+	 */
+	public void setTlsHandshakeTimeout(long timeout, TimeUnit unit) {
+		if (timeout <= 0) {
+			throw new IllegalArgumentException("The handshake timeout must be positive: " + timeout);
 		}
+		this.tlsHandshakeTimeout = unit.toNanos(timeout);
+	}
 
-		@Override
-		protected Object getWork() {
+	/**
+	 * Sets the executor running the delegated tasks of TLS handshakes, e.g. the
+	 * key exchange or the validation of client certificates. These tasks can
+	 * take milliseconds, so running them on a worker thread would stall all
+	 * connections driven by it. The handshake continues on the worker thread
+	 * once the tasks are done. The default is the
+	 * {@link ForkJoinPool#commonPool()}, setting null runs the tasks on the
+	 * worker thread. The executor is not shut down by the {@link Server}.
+	 * 
+	 * @param tlsTaskExecutor The executor running the delegated tasks or null.
+	 */
+	public void setTlsTaskExecutor(Executor tlsTaskExecutor) {
+		this.tlsTaskExecutor = tlsTaskExecutor;
+	}
+
+	protected void hookConfigureSslEngine(SSLEngine engine) {
+	}
+
+	/**
+	 * Creates the server mode {@link SSLEngine} of a new connection. The peer's
+	 * address is passed as hint so the engine can be matched with a cached
+	 * session.
+	 */
+	private SSLEngine createSslEngine(SSLContext context, SocketChannel channel) throws IOException {
+		InetSocketAddress peer = (InetSocketAddress) channel.getRemoteAddress();
+		SSLEngine engine = context.createSSLEngine(peer.getHostString(), peer.getPort());
+		engine.setUseClientMode(false);
+		String[] protocols = applicationProtocols;
+		if (protocols.length > 0) {
+			SSLParameters parameters = engine.getSSLParameters();
+			try {
+				SET_APPLICATION_PROTOCOLS.invoke(parameters, (Object) protocols);
+			} catch (ReflectiveOperationException e) {
+				throw new SSLException("Setting the application protocols failed.", e);
+			}
+			engine.setSSLParameters(parameters);
+		}
+		hookConfigureSslEngine(engine);
+		return engine;
+	}
+
+	/**
+	 * Looks up SSLParameters.setApplicationProtocols, which is only known to the
+	 * JDK from Java 9 on.
+	 */
+	private static Method findSetApplicationProtocols() {
+		try {
+			return SSLParameters.class.getMethod("setApplicationProtocols", String[].class);
+		} catch (NoSuchMethodException e) {
 			return null;
 		}
+	}
 
-		@Override
-		protected boolean isWorkAvailable() {
-			return isServerRunning;
+	/**
+	 * Sets how the worker threads wait for ready channels and tasks. Polling
+	 * strategies cut the wakeup latency to a few microseconds but keep a core
+	 * busy while polling, so they are best combined with as many worker threads
+	 * as there are isolated cores. The threads are named
+	 * <code>ServerWorker-&lt;port&gt;-&lt;index&gt;</code>, so they can be
+	 * pinned to those cores with tools like <code>taskset</code>. The
+	 * utilization reported by {@link ServerMetrics} counts polling as idle time.
+	 * 
+	 * @param waitStrategy The {@link WaitStrategy} of the worker threads.
+	 */
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		setWaitStrategy(waitStrategy, WaitStrategy.BLOCKING);
+	}
+
+	/**
+	 * Sets how the worker threads and the acceptor thread wait for ready
+	 * channels and tasks. The acceptor thread only exists if the server was
+	 * created without SO_REUSEPORT and is named
+	 * <code>ServerAcceptor-&lt;port&gt;</code>.
+	 * 
+	 * @param waitStrategy         The {@link WaitStrategy} of the worker
+	 *                             threads.
+	 * @param acceptorWaitStrategy The {@link WaitStrategy} of the acceptor
+	 *                             thread.
+	 * @see #setWaitStrategy(WaitStrategy)
+	 */
+	public void setWaitStrategy(WaitStrategy waitStrategy, WaitStrategy acceptorWaitStrategy) {
+		if (waitStrategy == null || acceptorWaitStrategy == null) {
+			throw new IllegalArgumentException("The wait strategy must not be null.");
 		}
+		for (WorkerThread thread : threads) {
+			thread.setWaitStrategy(waitStrategy);
+		}
+		if (acceptor != null) {
+			acceptor.setWaitStrategy(acceptorWaitStrategy);
+		}
+	}
 
-		@Override
-		protected Long getSuspendTime() {
-			return null;
+	/**
+	 * Returns the metrics of the server: accepted connections and datagrams,
+	 * connection queue depth, queue wait and receiver latencies as well as the
+	 * utilization of every thread.
+	 * 
+	 * @return The {@link ServerMetrics} of the server.
+	 */
+	public ServerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Registers the {@link ServerMetrics} with the platform MBean server, so they
+	 * can be read with JMX tools like JConsole. The MBean is unregistered when the
+	 * server is shut down.
+	 * 
+	 * @return The name the metrics were registered with.
+	 * @throws JMException Thrown if the MBean could not be registered, e.g.
+	 *                     because another server on the same address already
+	 *                     registered its metrics.
+	 */
+	public synchronized ObjectName registerMetricsMBean() throws JMException {
+		if (metricsName == null) {
+			ObjectName name = new ObjectName("net.dschinghiskahn.server:type=Server,address="
+					+ ObjectName.quote(String.valueOf(listeners.get(0).getStats().getAddress())));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+			metricsName = name;
+		}
+		return metricsName;
+	}
+
+	private synchronized void unregisterMetricsMBean() {
+		if (metricsName != null) {
+			MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			try {
+				if (mBeanServer.isRegistered(metricsName)) {
+					mBeanServer.unregisterMBean(metricsName);
+				}
+			} catch (JMException e) {
+				hookExceptionDuringWork(e);
+			}
+			metricsName = null;
+		}
+	}
+
+	/**
+	 * Returns the {@link BufferPool} the data of received UDP datagrams is leased
+	 * from if UDP buffer pooling is enabled. Its counters show whether the
+	 * receive path allocates off-heap memory in steady state. The heap is not
+	 * spared entirely: every datagram still creates a {@link UdpNetworkData} and
+	 * the address of its sender, which {@link DatagramChannel#receive(ByteBuffer)}
+	 * allocates.
+	 * 
+	 * @return The {@link BufferPool} used for UDP datagrams.
+	 */
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Limits the rate at which TCP connections of a single source are accepted.
+	 * Connections above the limit are reset right after accepting them, before
+	 * any {@link TcpNetworkData} is created or a TLS handshake is started. The
+	 * limit is a token bucket per source, holding up to the given burst of
+	 * connections and refilling at the given rate. A source is an IP address
+	 * masked to the lengths set with {@link #setSourcePrefixLengths(int, int)}.
+	 * A rate of 0 disables the limit, which is the default.
+	 * 
+	 * @param rate  The number of connections per time unit or 0.
+	 * @param burst The number of connections a source may open at once.
+	 * @param unit  The time unit of the rate.
+	 * @see ListenerStats#getTcpConnectionsRejected()
+	 */
+	public void setTcpSourceRateLimit(long rate, long burst, TimeUnit unit) {
+		sourceLimiter.setTcpRateLimit(rate, burst, unit);
+	}
+
+	/**
+	 * Limits the rate at which UDP datagrams of a single source are accepted.
+	 * Datagrams above the limit are discarded straight from the receive buffer,
+	 * before anything is leased from the {@link BufferPool} or queued. The limit
+	 * is a token bucket per source as described at
+	 * {@link #setTcpSourceRateLimit(long, long, TimeUnit)}. A rate of 0 disables
+	 * the limit, which is the default.
+	 * 
+	 * @param rate  The number of datagrams per time unit or 0.
+	 * @param burst The number of datagrams a source may send at once.
+	 * @param unit  The time unit of the rate.
+	 * @see ListenerStats#getUdpDatagramsRejected()
+	 */
+	public void setUdpSourceRateLimit(long rate, long burst, TimeUnit unit) {
+		sourceLimiter.setUdpRateLimit(rate, burst, unit);
+	}
+
+	/**
+	 * Limits the number of concurrently open TCP connections of a single
+	 * source. Connections above the limit are reset right after accepting them.
+	 * A connection counts as open until it is closed, including its TLS
+	 * handshake and the time it waits in the connection queue. The limit only
+	 * counts connections accepted while it is set. 0 disables the limit, which
+	 * is the default.
+	 * 
+	 * @param maxConnections The maximum number of open connections per source or
+	 *                       0.
+	 */
+	public void setMaxConnectionsPerSource(int maxConnections) {
+		sourceLimiter.setMaxConnections(maxConnections);
+	}
+
+	/**
+	 * Sets how many leading bits of the sender's address identify a source for
+	 * the rate and connection limits, e.g. 24 to limit each IPv4 /24 subnet as a
+	 * whole. The default is 32 for IPv4, i.e. every address on its own, and 64
+	 * for IPv6, as a single IPv6 host usually controls a whole /64. Changing the
+	 * lengths forgets the state of all sources.
+	 * 
+	 * @param ipv4PrefixLength The prefix length for IPv4 addresses (0 - 32).
+	 * @param ipv6PrefixLength The prefix length for IPv6 addresses (0 - 128).
+	 */
+	public void setSourcePrefixLengths(int ipv4PrefixLength, int ipv6PrefixLength) {
+		sourceLimiter.setPrefixLengths(ipv4PrefixLength, ipv6PrefixLength);
+	}
+
+	/**
+	 * Controls if the data of received UDP datagrams is leased from the
+	 * {@link BufferPool} of the server instead of being copied to a new heap
+	 * buffer. Pooling saves an allocation per datagram, but every receiver must
+	 * call {@link UdpNetworkData#release()} or
+	 * {@link UdpNetworkDataBatch#release()} once it is done with the data: the
+	 * pool tracks its leases, so a buffer that is never released stays reachable
+	 * and the pool allocates new off-heap slabs instead. Disabled by default.
+	 * 
+	 * @param isUdpBufferPooling True to lease UDP data from the pool.
+	 */
+	public void setUdpBufferPooling(boolean isUdpBufferPooling) {
+		this.isUdpBufferPooling = isUdpBufferPooling;
+	}
+
+	/**
+	 * Returns if the data of received UDP datagrams is leased from the
+	 * {@link BufferPool} of the server.
+	 * 
+	 * @return True if UDP data is leased from the pool.
+	 */
+	public boolean isUdpBufferPooling() {
+		return isUdpBufferPooling;
+	}
+
+	/**
+	 * Sets the maximum number of UDP datagrams drained from the socket per
+	 * wakeup. With a batch size greater than one all datagrams received during a
+	 * wakeup are delivered as a single {@link UdpNetworkDataBatch} instead of
+	 * individual {@link UdpNetworkData} objects.
+	 * 
+	 * @param udpBatchSize The maximum number of datagrams per batch.
+	 */
+	public void setUdpBatchSize(int udpBatchSize) {
+		if (udpBatchSize < 1) {
+			throw new IllegalArgumentException("The UDP batch size must be at least 1: " + udpBatchSize);
 		}
+		this.udpBatchSize = udpBatchSize;
+	}
+
+	/**
+	 * Returns the maximum number of UDP datagrams drained from the socket per
+	 * wakeup.
+	 * 
+	 * @return The maximum number of datagrams per batch.
+	 */
+	public int getUdpBatchSize() {
+		return udpBatchSize;
+	}
 
+	/**
+	 * Sets the maximum number of pending TCP connections accepted from a
+	 * listening socket per wakeup. Draining the accept queue in a loop saves a
+	 * selector cycle per connection during connect storms, e.g. when thousands
+	 * of clients reconnect after a failover. The connections accepted by the
+	 * acceptor thread during a wakeup are handed to each worker thread with a
+	 * single task. The default of 1 accepts one connection per wakeup.
+	 * 
+	 * @param acceptBatchSize The maximum number of connections per wakeup.
+	 */
+	public void setAcceptBatchSize(int acceptBatchSize) {
+		if (acceptBatchSize < 1) {
+			throw new IllegalArgumentException("The accept batch size must be at least 1: " + acceptBatchSize);
+		}
+		this.acceptBatchSize = acceptBatchSize;
+	}
+
+	/**
+	 * Returns the maximum number of pending TCP connections accepted from a
+	 * listening socket per wakeup.
+	 * 
+	 * @return The maximum number of connections per wakeup.
+	 */
+	public int getAcceptBatchSize() {
+		return acceptBatchSize;
+	}
+
+	/**
+	 * Groups incoming UDP datagrams into {@link UdpSession}s per peer address
+	 * and socket and hands them to the given handler instead of dispatching them
+	 * as {@link UdpNetworkData} to the receivers. The handler runs on the worker
+	 * thread owning the socket, so each session's datagrams arrive in order
+	 * without any locking. A peer sending to several sockets of the server,
+	 * e.g. to two endpoints, gets a separate session for each of them.
+	 * Sessions idle for longer than the idle timeout are closed. Setting null
+	 * restores the default dispatch and closes all sessions.
+	 * 
+	 * @param udpSessionHandler The handler receiving the datagrams of each peer
+	 *                          or null.
+	 * @param idleTimeout       The time after which an idle session is closed.
+	 * @param unit              The unit of the idle timeout.
+	 */
+	public void setUdpSessionHandler(IUdpSessionHandler udpSessionHandler, long idleTimeout, TimeUnit unit) {
+		if (idleTimeout <= 0) {
+			throw new IllegalArgumentException("The idle timeout must be positive: " + idleTimeout);
+		}
+		boolean isEnabled = this.udpSessionHandler != null;
+		this.udpSessionIdleTimeout = unit.toNanos(idleTimeout);
+		this.udpSessionHandler = udpSessionHandler;
+		if (udpSessionHandler == null) {
+			for (ConcurrentMap<InetSocketAddress, UdpSession> sessions : udpSessions.values()) {
+				closeUdpSessions(sessions);
+			}
+		} else if (!isEnabled) {
+			for (WorkerThread thread : threads) {
+				thread.startSessionSweep();
+			}
+		}
+	}
+
+	/**
+	 * Returns the open UDP sessions of all sockets.
+	 * 
+	 * @return A snapshot of the open UDP sessions.
+	 */
+	public Collection<UdpSession> getUdpSessions() {
+		List<UdpSession> sessions = new ArrayList<UdpSession>();
+		for (ConcurrentMap<InetSocketAddress, UdpSession> socketSessions : udpSessions.values()) {
+			sessions.addAll(socketSessions.values());
+		}
+		return Collections.unmodifiableList(sessions);
+	}
+
+	private void closeUdpSessions(ConcurrentMap<InetSocketAddress, UdpSession> sessions) {
+		if (sessions != null) {
+			for (UdpSession session : sessions.values()) {
+				session.close();
+			}
+		}
+	}
+
+	/**
+	 * Sets the {@link Executor} incoming {@link INetworkData} objects are
+	 * dispatched with. Every connection and datagram becomes a separate task
+	 * calling all registered receivers, so receivers may block, e.g. on the
+	 * streams of a {@link TcpNetworkData}, without stalling other connections.
+	 * Setting null restores the default, which delivers all objects one after
+	 * the other on a single thread. The executor is not shut down by the
+	 * {@link Server}.
+	 * 
+	 * @param dispatchExecutor The {@link Executor} to dispatch with or null.
+	 * @see #newVirtualThreadPerTaskExecutor()
+	 */
+	public void setDispatchExecutor(Executor dispatchExecutor) {
+		connectionQueue.setExecutor(dispatchExecutor, 0);
+	}
+
+	/**
+	 * Sets the {@link Executor} incoming {@link INetworkData} objects are
+	 * dispatched with, striped across the given number of lanes. Objects are
+	 * assigned to a lane by the hash of their sender and every lane delivers its
+	 * objects one after the other, so objects of the same sender keep their order
+	 * while a slow receiver only stalls the senders sharing its lane. UDP
+	 * batches are split by lane. A lane occupies at most one thread of the
+	 * executor at a time, e.g. a fixed thread pool with as many threads as lanes
+	 * gives every lane its own thread while a {@link java.util.concurrent.ForkJoinPool}
+	 * shares its threads between all lanes. The executor is not shut down by the
+	 * {@link Server}.
+	 * 
+	 * Objects already waiting in a lane are delivered by that lane even if the
+	 * executor or the number of lanes is changed.
+	 * 
+	 * @param dispatchExecutor The {@link Executor} to dispatch with or null.
+	 * @param lanes            The number of lanes or 0 to dispatch every object
+	 *                         as a separate task.
+	 * @see ServerMetrics#getDispatchLaneStats()
+	 */
+	public void setDispatchExecutor(Executor dispatchExecutor, int lanes) {
+		connectionQueue.setExecutor(dispatchExecutor, lanes);
+	}
+
+	/**
+	 * Creates an {@link ExecutorService} starting a new virtual thread for every
+	 * task. Combined with {@link #setDispatchExecutor(Executor)} this lets tens of
+	 * thousands of receivers block concurrently without the memory cost of
+	 * platform threads.
+	 * 
+	 * @return A new virtual thread per task {@link ExecutorService}.
+	 * @throws UnsupportedOperationException Thrown if the Java runtime does not
+	 *                                       support virtual threads (Java 21 or
+	 *                                       newer is required).
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Virtual threads are not supported by this Java runtime.", e);
+		}
+	}
+
+	/**
+	 * Limits the number of {@link INetworkData} objects which are queued or
+	 * being delivered to the receivers. Once the limit is reached the given
+	 * {@link OverflowPolicy} decides what happens with new connections and
+	 * datagrams. The queue is unbounded by default.
+	 * 
+	 * {@link OverflowPolicy#BLOCK} stops accepting connections and receiving
+	 * datagrams once the queue is full and resumes when it drained to the low
+	 * water mark, see {@link #setConnectionQueueWaterMarks(int, int)}, or below
+	 * the capacity if no low water mark was set. Objects already accepted or
+	 * received in the meantime are still queued, so the capacity can be exceeded
+	 * by a few objects. Dropped objects are passed to
+	 * {@link #hookNetworkDataDropped(INetworkData)} after TCP connections were
+	 * closed and UDP buffers were released.
+	 * 
+	 * @param capacity       The maximum number of queued objects.
+	 * @param overflowPolicy What to do with new objects while the queue is full.
+	 */
+	public void setConnectionQueueCapacity(int capacity, OverflowPolicy overflowPolicy) {
+		connectionQueue.setCapacity(capacity, overflowPolicy);
+	}
+
+	/**
+	 * Sets the queue depths at which
+	 * {@link #hookConnectionQueueAboveHighWaterMark(int)} and
+	 * {@link #hookConnectionQueueBelowLowWaterMark(int)} are called, so load can
+	 * be shed before the capacity is exhausted.
+	 * 
+	 * @param lowWaterMark  The depth at which the queue is considered drained
+	 *                      again.
+	 * @param highWaterMark The depth at which the queue is considered congested.
+	 */
+	public void setConnectionQueueWaterMarks(int lowWaterMark, int highWaterMark) {
+		connectionQueue.setWaterMarks(lowWaterMark, highWaterMark);
+	}
+
+	/**
+	 * Returns the number of {@link INetworkData} objects which are queued or
+	 * being delivered to the receivers.
+	 * 
+	 * @return The current depth of the connection queue.
+	 */
+	public int getConnectionQueueDepth() {
+		return connectionQueue.getDepth();
+	}
+
+	protected void hookConnectionQueueAboveHighWaterMark(int depth) {
+	}
+
+	protected void hookConnectionQueueBelowLowWaterMark(int depth) {
+	}
+
+	protected void hookNetworkDataDropped(INetworkData networkData) {
+	}
+
+	protected void hookPostUdpConnectionAccepted(UdpNetworkData networkData) {
+	}
+
+	protected void hookPostTcpConnectionAccepted(TcpNetworkData networkData) {
+	}
+
+	protected void hookExceptionDuringWork(Exception e) {
+	}
+
+	/**
+	 * A worker object accepting TCP connections of the shared listeners and
+	 * handing them round-robin to the {@link WorkerThread}s.
+	 */
+	private class AcceptorThread extends EventLoop {
+
+		private final List<List<SocketChannel>> batches;
+		private int nextThread;
+
+		/**
+		 * Creates a new worker accepting connections.
+		 */
+		AcceptorThread(boolean isDaemon) throws IOException {
+			super("ServerAcceptor", isDaemon);
+			batches = new ArrayList<List<SocketChannel>>();
+			for (int i = 0; i < threads.size(); i++) {
+				batches.add(new ArrayList<SocketChannel>()); // NOPMD
+			}
+		}
+
+		/**
+		 * Drains up to a batch of pending connections and hands each worker its
+		 * share with a single task.
+		 */
+		@Override
+		protected void processKey(SelectionKey key) throws IOException {
+			if (!key.isAcceptable()) {
+				return;
+			}
+			Listener listener = (Listener) key.attachment();
+			try {
+				for (int count = acceptBatchSize; count > 0; count--) {
+					SocketChannel channel = listener.getTcpChannel().accept();
+					if (channel == null) {
+						break;
+					}
+					if (admitTcpConnection(listener, channel)) {
+						batches.get(nextThread).add(channel);
+						nextThread = (nextThread + 1) % threads.size();
+					}
+				}
+			} finally {
+				for (int i = 0; i < batches.size(); i++) {
+					if (!batches.get(i).isEmpty()) {
+						handOff(threads.get(i), listener, batches.set(i, new ArrayList<SocketChannel>())); // NOPMD
+					}
+				}
+			}
+		}
+
+		/**
+		 * Hands the channels to the given worker. If the worker is shutting
+		 * down it may never run the task, so whoever claims the channels first,
+		 * the task or this thread, accepts or closes them.
+		 */
+		private void handOff(final WorkerThread thread, final Listener listener, final List<SocketChannel> channels) {
+			final AtomicBoolean isClaimed = new AtomicBoolean();
+			thread.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					if (isClaimed.compareAndSet(false, true)) {
+						for (SocketChannel channel : channels) {
+							thread.acceptTcpConnection(listener, channel);
+						}
+					}
+				}
+			});
+			if (thread.isShuttingDown() && isClaimed.compareAndSet(false, true)) {
+				for (SocketChannel channel : channels) {
+					sourceLimiter.release(channel.socket().getInetAddress());
+					closeQuietly(channel);
+				}
+			}
+		}
+
+		@Override
+		protected void hookExceptionDuringWork(Exception e) {
+			Server.this.hookExceptionDuringWork(e);
+		}
+
+	}
+
+	/**
+	 * A worker object handling the I/O of its share of the connections. TCP
+	 * connections switched to non-blocking mode are driven by the worker that
+	 * accepted them.
+	 */
+	private class WorkerThread extends EventLoop implements IEventLoop {
+
+		private final ByteBuffer receiveBuffer;
+		private UdpNetworkData[] udpBatch;
+		private boolean isSessionSweepScheduled;
+
+		/**
+		 * Creates a new worker handling connections.
+		 */
+		WorkerThread(boolean isDaemon) throws IOException {
+			super("ServerWorker", isDaemon);
+			receiveBuffer = ByteBuffer.allocateDirect(bufferPool.getMaxBufferSize());
+			udpBatch = new UdpNetworkData[udpBatchSize];
+		}
+
+		@Override
+		public ByteBuffer getReceiveBuffer() {
+			return receiveBuffer;
+		}
+
+		@Override
+		protected void processKey(SelectionKey key) throws IOException {
+			if (key.attachment() instanceof ISelectionHandler) {
+				((ISelectionHandler) key.attachment()).handleSelection(key);
+				return;
+			}
+			if (key.attachment() instanceof MulticastGroup) {
+				MulticastGroup multicastGroup = (MulticastGroup) key.attachment();
+				if (key.isReadable()) {
+					acceptUdpConnection(multicastGroup.getChannel(), multicastGroup.getGroup(), multicastGroup.getStats(),
+							multicastGroup.getReplyQueue(), null);
+				}
+				if (key.isValid() && key.isWritable()) {
+					multicastGroup.getReplyQueue().flush();
+				}
+				return;
+			}
+			Listener listener = (Listener) key.attachment();
+			if (key.isAcceptable()) {
+				for (int count = acceptBatchSize; count > 0; count--) {
+					SocketChannel channel = listener.getTcpChannel().accept();
+					if (channel == null) {
+						break;
+					}
+					if (admitTcpConnection(listener, channel)) {
+						acceptTcpConnection(listener, channel);
+					}
+				}
+				return;
+			}
+			if (key.isReadable()) {
+				acceptUdpConnection(listener.getUdpChannel(), listener.getStats().getAddress(), listener.getStats(),
+						listener.getReplyQueue(), listener.getEndpoint());
+			}
+			if (key.isValid() && key.isWritable()) {
+				listener.getReplyQueue().flush();
+			}
+		}
+
+		/**
+		 * Receives the pending datagrams of the given channel. Each UDP channel is
+		 * registered with exactly one worker, so no locking is required.
+		 */
+		private void acceptUdpConnection(DatagramChannel udpChannel, InetSocketAddress receiver, ListenerStats stats,
+				UdpReplyQueue replyQueue, Endpoint endpoint) throws IOException {
+			IUdpSessionHandler sessionHandler = udpSessionHandler;
+			if (sessionHandler != null) {
+				receiveUdpSessions(udpChannel, stats, sessionHandler);
+				return;
+			}
+			int batchSize = udpBatchSize;
+			boolean isPooling = isUdpBufferPooling;
+			if (udpBatch.length != batchSize) {
+				udpBatch = new UdpNetworkData[batchSize];
+			}
+			int count = 0;
+			for (int received = 0; received < batchSize; received++) {
+				receiveBuffer.clear();
+				InetSocketAddress sender = (InetSocketAddress) udpChannel.receive(receiveBuffer);
+				if (sender == null) {
+					break;
+				}
+				if (!sourceLimiter.tryAcquireDatagram(sender.getAddress())) {
+					stats.udpDatagramRejected();
+				} else if (receiveBuffer.flip().hasRemaining()) {
+					BufferPool pool = isPooling ? bufferPool : null;
+					ByteBuffer data = isPooling ? bufferPool.lease(receiveBuffer.remaining())
+							: ByteBuffer.allocate(receiveBuffer.remaining());
+					data.put(receiveBuffer);
+					data.flip();
+					udpBatch[count++] = NetworkDataFactory.newUdpNetworkData(data, sender, receiver, pool, replyQueue,
+							endpoint);
+					stats.udpDatagramReceived(data.remaining());
+				}
+			}
+			if (count == 0) {
+				return;
+			}
+			if (batchSize == 1) {
+				connectionQueue.add(udpBatch[0]);
+			} else {
+				connectionQueue.add(new UdpNetworkDataBatch(udpBatch, count));
+			}
+			for (int i = 0; i < count; i++) {
+				hookPostUdpConnectionAccepted(udpBatch[i]);
+				udpBatch[i] = null;
+			}
+		}
+
+		/**
+		 * Hands the pending datagrams of the given channel to the sessions of
+		 * their senders. The datagrams are passed straight from the receive
+		 * buffer, so nothing is leased from the pool. Every channel has its own
+		 * session table and is owned by exactly one worker, so a session is
+		 * never used by two workers at once.
+		 */
+		private void receiveUdpSessions(DatagramChannel udpChannel, ListenerStats stats,
+				IUdpSessionHandler sessionHandler) throws IOException {
+			for (int count = udpBatchSize; count > 0; count--) {
+				receiveBuffer.clear();
+				InetSocketAddress sender = (InetSocketAddress) udpChannel.receive(receiveBuffer);
+				if (sender == null) {
+					break;
+				}
+				if (!sourceLimiter.tryAcquireDatagram(sender.getAddress())) {
+					stats.udpDatagramRejected();
+					continue;
+				}
+				receiveBuffer.flip();
+				stats.udpDatagramReceived(receiveBuffer.remaining());
+				ConcurrentMap<InetSocketAddress, UdpSession> sessions = udpSessions.get(udpChannel);
+				if (sessions == null) {
+					sessions = new ConcurrentHashMap<InetSocketAddress, UdpSession>(); // NOPMD
+					udpSessions.put(udpChannel, sessions);
+				}
+				UdpSession session = sessions.get(sender);
+				if (session == null) {
+					session = new UdpSession(sender, udpChannel, this, sessionHandler, sessions); // NOPMD
+					sessions.put(sender, session);
+					sessionHandler.sessionOpened(session);
+				} else {
+					session.touch(udpChannel);
+				}
+				try {
+					sessionHandler.receiveData(session, receiveBuffer);
+				} catch (RuntimeException e) {
+					hookExceptionDuringWork(e);
+				}
+			}
+		}
+
+		private void startSessionSweep() {
+			execute(new Runnable() {
+
+				@Override
+				public void run() {
+					if (!isSessionSweepScheduled) {
+						isSessionSweepScheduled = true;
+						scheduleSessionSweep();
+					}
+				}
+			});
+		}
+
+		/**
+		 * Closes the idle sessions owned by this worker and reschedules itself
+		 * for as long as sessions are enabled.
+		 */
+		private void scheduleSessionSweep() {
+			final long idleTimeout = udpSessionIdleTimeout;
+			schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					if (udpSessionHandler == null) {
+						isSessionSweepScheduled = false;
+						return;
+					}
+					long now = System.nanoTime();
+					for (ConcurrentMap<InetSocketAddress, UdpSession> sessions : udpSessions.values()) {
+						for (UdpSession session : sessions.values()) {
+							if (session.getEventLoop() == WorkerThread.this) {
+								session.closeIfIdle(udpSessionIdleTimeout, now);
+							}
+						}
+					}
+					scheduleSessionSweep();
+				}
+			}, Math.max(idleTimeout / 2, TimeUnit.MILLISECONDS.toNanos(1)), TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * Closes the connections accepted by this worker and aborts the TLS
+		 * handshakes still in progress, so their peers see the connection
+		 * closed instead of a socket left open until the process exits.
+		 */
+		@Override
+		protected void closeConnections() {
+			for (Map.Entry<TcpNetworkData, ConnectionTracker> entry : connections.entrySet()) {
+				if (entry.getValue().thread == this) {
+					try {
+						entry.getKey().close();
+					} catch (IOException e) {
+						hookExceptionDuringWork(e);
+					}
+				}
+			}
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof TlsHandshake) {
+					((TlsHandshake) key.attachment()).abort();
+				}
+			}
+		}
+
+		private void acceptTcpConnection(Listener listener, SocketChannel channel) {
+			listener.getStats().tcpConnectionAccepted();
+			try {
+				listener.configure(channel);
+			} catch (IOException e) {
+				sourceLimiter.release(channel.socket().getInetAddress());
+				closeQuietly(channel);
+				hookExceptionDuringWork(e);
+				return;
+			}
+			SSLContext context = sslContext;
+			if (context == null) {
+				registerTcpConnection(channel, null, listener.getEndpoint());
+				return;
+			}
+			TlsChannel tls = null;
+			try {
+				tls = new TlsChannel(channel, createSslEngine(context, channel), bufferPool);
+				new TlsHandshake(this, listener, channel, tls).start(); // NOPMD
+			} catch (IOException | RuntimeException e) {
+				listener.getStats().tlsHandshakeFailed();
+				sourceLimiter.release(channel.socket().getInetAddress());
+				closeQuietly(tls == null ? channel : tls);
+				hookExceptionDuringWork(e);
+			}
+		}
+
+		/**
+		 * Hands an accepted connection, after its TLS handshake if any, to the
+		 * connection registry and the receivers.
+		 */
+		private void registerTcpConnection(SocketChannel channel, TlsChannel tls, Endpoint endpoint) {
+			if (isShuttingDown()) {
+				sourceLimiter.release(channel.socket().getInetAddress());
+				closeQuietly(tls == null ? channel : tls);
+				return;
+			}
+			try {
+				final ConnectionTracker tracker = new ConnectionTracker(this);
+				TcpNetworkData networkData = NetworkDataFactory.newTcpNetworkData(channel, tls, this, new Runnable() {
+
+					@Override
+					public void run() {
+						tracker.closed();
+					}
+				}, endpoint);
+				tracker.connection = networkData;
+				connections.put(networkData, tracker);
+				tracker.arm();
+				connectionQueue.add(networkData);
+				hookPostTcpConnectionAccepted(networkData);
+			} catch (IOException e) {
+				sourceLimiter.release(channel.socket().getInetAddress());
+				hookExceptionDuringWork(e);
+			}
+		}
+
+		@Override
+		protected void hookExceptionDuringWork(Exception e) {
+			Server.this.hookExceptionDuringWork(e);
+		}
+
+
+	}
+
+	/**
+	 * Checks a freshly accepted connection against the limits of its source and
+	 * resets it if they are exceeded.
+	 */
+	private boolean admitTcpConnection(Listener listener, SocketChannel channel) {
+		if (sourceLimiter.tryAcquireConnection(channel.socket().getInetAddress())) {
+			return true;
+		}
+		listener.getStats().tcpConnectionRejected();
+		try {
+			channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+		} catch (IOException e) {
+			hookExceptionDuringWork(e);
+		}
+		closeQuietly(channel);
+		return false;
+	}
+
+	private void closeQuietly(Channel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			hookExceptionDuringWork(e);
+		}
+	}
+
+	/**
+	 * Drives the TLS handshake of an accepted connection on the selector of its
+	 * worker thread. The channel is non-blocking during the handshake and is
+	 * switched back to blocking mode before the connection is handed to the
+	 * receivers, which decide on the mode themselves.
+	 */
+	private class TlsHandshake implements ISelectionHandler, Runnable {
+
+		private final WorkerThread thread;
+		private final Listener listener;
+		private final SocketChannel channel;
+		private final TlsChannel tls;
+		private final Runnable tasksDone;
+		private SelectionKey key;
+		private HashedWheelTimer.Timeout timeout;
+		private boolean isDone;
+
+		TlsHandshake(final WorkerThread thread, Listener listener, SocketChannel channel, TlsChannel tls) {
+			this.thread = thread;
+			this.listener = listener;
+			this.channel = channel;
+			this.tls = tls;
+			this.tasksDone = new Runnable() {
+
+				@Override
+				public void run() {
+					thread.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							if (!isDone) {
+								proceed();
+							}
+						}
+					});
+				}
+			};
+		}
+
+		/**
+		 * Registers the channel and sends or waits for the first handshake
+		 * message. Must be called on the worker thread.
+		 */
+		void start() throws IOException {
+			channel.configureBlocking(false);
+			key = channel.register(thread.selector, 0, this);
+			timeout = thread.timer.newTimeout(this, tlsHandshakeTimeout);
+			proceed();
+		}
+
+		@Override
+		public void handleSelection(SelectionKey key) {
+			proceed();
+		}
+
+		private void proceed() {
+			try {
+				int ops = tls.handshake(tlsTaskExecutor, tasksDone);
+				if (ops == TlsChannel.TASKS_PENDING) {
+					key.interestOps(0);
+					return;
+				} else if (ops != 0) {
+					key.interestOps(ops);
+					return;
+				}
+				isDone = true;
+				timeout.cancel();
+				thread.deregister(key, new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							channel.configureBlocking(true);
+						} catch (IOException e) {
+							failed(e);
+							return;
+						}
+						listener.getStats().tlsHandshakeCompleted();
+						thread.registerTcpConnection(channel, tls, listener.getEndpoint());
+					}
+				});
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		/**
+		 * Closes the connection once the handshake timeout expired.
+		 */
+		@Override
+		public void run() {
+			if (!isDone) {
+				failed(new SSLException("The TLS handshake timed out."));
+			}
+		}
+
+		/**
+		 * Closes the connection of a handshake still in progress because the
+		 * server shuts down. Must be called on the worker thread.
+		 */
+		void abort() {
+			if (!isDone) {
+				close();
+			}
+		}
+
+		private void failed(IOException e) {
+			close();
+			listener.getStats().tlsHandshakeFailed();
+			hookExceptionDuringWork(e);
+		}
+
+		private void close() {
+			isDone = true;
+			if (key != null) {
+				key.cancel();
+			}
+			if (timeout != null) {
+				timeout.cancel();
+			}
+			sourceLimiter.release(channel.socket().getInetAddress());
+			closeQuietly(tls);
+		}
+	}
+
+	/**
+	 * Tracks an open TCP connection and enforces the connection timeouts with a
+	 * single timer entry, which is re-armed for the earliest remaining deadline
+	 * instead of being rescheduled on every read or write.
+	 */
+	private class ConnectionTracker implements Runnable {
+
+		private final WorkerThread thread;
+		private TcpNetworkData connection;
+		private HashedWheelTimer.Timeout timeout;
+
+		ConnectionTracker(WorkerThread thread) {
+			this.thread = thread;
+		}
+
+		/**
+		 * Arms the timer from any thread.
+		 */
+		void start() {
+			thread.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					arm();
+				}
+			});
+		}
+
+		/**
+		 * Arms the timer unless it is armed already or no timeout is set. Must
+		 * be called on the worker thread.
+		 */
+		void arm() {
+			if (timeout != null || !connection.isOpen()) {
+				return;
+			}
+			long now = System.nanoTime();
+			long delay = Long.MAX_VALUE;
+			delay = nextDelay(delay, readTimeout, connection.getLastReadTime(), now);
+			delay = nextDelay(delay, writeTimeout, connection.getLastWriteTime(), now);
+			delay = nextDelay(delay, idleTimeout,
+					Math.max(connection.getLastReadTime(), connection.getLastWriteTime()), now);
+			if (delay != Long.MAX_VALUE) {
+				timeout = thread.timer.newTimeout(this, delay);
+			}
+		}
+
+		private long nextDelay(long delay, long timeout, long lastActivity, long now) {
+			if (timeout == 0) {
+				return delay;
+			}
+			return Math.min(delay, Math.max(0, lastActivity + timeout - now));
+		}
+
+		@Override
+		public void run() {
+			timeout = null;
+			if (!connection.isOpen()) {
+				closed();
+				return;
+			}
+			long now = System.nanoTime();
+			long lastRead = connection.getLastReadTime();
+			long lastWrite = connection.getLastWriteTime();
+			if (isExpired(readTimeout, lastRead, now)) {
+				timedOut(ConnectionTimeout.READ);
+			} else if (isExpired(writeTimeout, lastWrite, now)) {
+				timedOut(ConnectionTimeout.WRITE);
+			} else if (isExpired(idleTimeout, Math.max(lastRead, lastWrite), now)) {
+				timedOut(ConnectionTimeout.IDLE);
+			} else {
+				arm();
+			}
+		}
+
+		private boolean isExpired(long timeout, long lastActivity, long now) {
+			return timeout > 0 && now - lastActivity >= timeout;
+		}
+
+		private void timedOut(ConnectionTimeout type) {
+			hookConnectionTimedOut(connection, type);
+			try {
+				connection.close();
+			} catch (IOException e) {
+				hookExceptionDuringWork(e);
+			}
+			closed();
+		}
+
+		/**
+		 * Removes the connection from the registry. May be called from any
+		 * thread and more than once.
+		 */
+		void closed() {
+			if (connections.remove(connection) == null) {
+				return;
+			}
+			sourceLimiter.release(connection.getSender().getAddress());
+			synchronized (connections) {
+				if (connections.isEmpty()) {
+					connections.notifyAll();
+				}
+			}
+			thread.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					if (timeout != null) {
+						timeout.cancel();
+						timeout = null;
+					}
+				}
+			});
+		}
 	}
 
 	/**
@@ -236,17 +1770,18 @@ public class Server {
 	 * @param receiver The receiver to register with the {@link Server}.
 	 */
 	public void registerSocketReceiver(IObjectReceiver<INetworkData> receiver) {
-		connectionQueue.registerObjectReceiver(receiver);
+		connectionQueue.registerReceiver(receiver);
 	}
 
 	/**
 	 * Unregisters an {@link IObjectReceiver}. The receiver will no longer receive
 	 * {@link INetworkData} objects. If no receiver is registered connections will
-	 * be accepted and "cached" until a receiver is registered.
+	 * be accepted and "cached" until a receiver is registered, up to the
+	 * capacity set with {@link #setConnectionQueueCapacity(int, OverflowPolicy)}.
 	 * 
 	 * @param receiver The receiver to unregister.
 	 */
 	public void unregisterSocketReceiver(IObjectReceiver<INetworkData> receiver) {
-		connectionQueue.unregisterObjectReceiver(receiver);
+		connectionQueue.unregisterReceiver(receiver);
 	}
 }
@@ -0,0 +1,273 @@
+package net.dschinghiskahn.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the counters of a {@link Server}: accepted connections, received
+ * datagrams, the state of the connection queue, the latency of the receivers
+ * and the utilization of every thread. Counters are updated without locks on
+ * the I/O path; reading them is cheap enough to poll, e.g. through JMX.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+	private static final long RATE_INTERVAL = 1000000000L;
+
+	private final ConnectionQueue connectionQueue;
+	private final List<Listener> listeners;
+	private final List<MulticastGroup> multicastGroups;
+	private final List<EventLoopStats> eventLoopStats;
+	private final Rate tcpConnectionRate;
+	private final Rate udpDatagramRate;
+	private final Rate udpByteRate;
+
+	ServerMetrics(ConnectionQueue connectionQueue, List<Listener> listeners, List<MulticastGroup> multicastGroups,
+			List<? extends EventLoop> eventLoops) {
+		this.connectionQueue = connectionQueue;
+		this.listeners = listeners;
+		this.multicastGroups = multicastGroups;
+		List<EventLoopStats> stats = new ArrayList<EventLoopStats>(eventLoops.size());
+		for (EventLoop eventLoop : eventLoops) {
+			stats.add(eventLoop.getStats());
+		}
+		this.eventLoopStats = Collections.unmodifiableList(stats);
+		this.tcpConnectionRate = new Rate();
+		this.udpDatagramRate = new Rate();
+		this.udpByteRate = new Rate();
+	}
+
+	@Override
+	public long getTcpConnections() {
+		long count = 0;
+		for (Listener listener : listeners) {
+			count += listener.getStats().getTcpConnections();
+		}
+		return count;
+	}
+
+	@Override
+	public double getTcpConnectionsPerSecond() {
+		return tcpConnectionRate.update(getTcpConnections());
+	}
+
+	@Override
+	public long getUdpDatagrams() {
+		long count = 0;
+		for (Listener listener : listeners) {
+			count += listener.getStats().getUdpDatagrams();
+		}
+		for (MulticastGroup multicastGroup : multicastGroups) {
+			count += multicastGroup.getStats().getUdpDatagrams();
+		}
+		return count;
+	}
+
+	@Override
+	public double getUdpDatagramsPerSecond() {
+		return udpDatagramRate.update(getUdpDatagrams());
+	}
+
+	@Override
+	public long getUdpBytes() {
+		long count = 0;
+		for (Listener listener : listeners) {
+			count += listener.getStats().getUdpBytes();
+		}
+		for (MulticastGroup multicastGroup : multicastGroups) {
+			count += multicastGroup.getStats().getUdpBytes();
+		}
+		return count;
+	}
+
+	@Override
+	public double getUdpBytesPerSecond() {
+		return udpByteRate.update(getUdpBytes());
+	}
+
+	@Override
+	public int getConnectionQueueDepth() {
+		return connectionQueue.getDepth();
+	}
+
+	@Override
+	public long getDroppedNetworkData() {
+		return connectionQueue.getDropped();
+	}
+
+	/**
+	 * Returns the histogram of the time connections and datagrams waited in the
+	 * connection queue before being handed to the receivers.
+	 * 
+	 * @return The queue wait histogram.
+	 */
+	public LatencyHistogram getQueueWait() {
+		return connectionQueue.getQueueWait();
+	}
+
+	@Override
+	public double getQueueWaitMeanNanos() {
+		return getQueueWait().getMean();
+	}
+
+	@Override
+	public long getQueueWait99thPercentileNanos() {
+		return getQueueWait().getPercentile(99);
+	}
+
+	@Override
+	public long getQueueWaitMaxNanos() {
+		return getQueueWait().getMax();
+	}
+
+	/**
+	 * Returns the histogram of the time the registered receivers took to handle
+	 * a connection or datagram.
+	 * 
+	 * @return The receiver execution time histogram.
+	 */
+	public LatencyHistogram getReceiverTime() {
+		return connectionQueue.getReceiverTime();
+	}
+
+	@Override
+	public double getReceiverMeanNanos() {
+		return getReceiverTime().getMean();
+	}
+
+	@Override
+	public long getReceiver99thPercentileNanos() {
+		return getReceiverTime().getPercentile(99);
+	}
+
+	@Override
+	public long getReceiverMaxNanos() {
+		return getReceiverTime().getMax();
+	}
+
+	/**
+	 * Returns the counters of every dispatch lane or an empty list if the server
+	 * does not dispatch with lanes.
+	 * 
+	 * @return The counters of every dispatch lane.
+	 * @see Server#setDispatchExecutor(java.util.concurrent.Executor, int)
+	 */
+	public List<DispatchLaneStats> getDispatchLaneStats() {
+		return connectionQueue.getLaneStats();
+	}
+
+	/**
+	 * Returns how unevenly the objects were spread across the dispatch lanes:
+	 * the number of objects of the busiest lane divided by the mean number of
+	 * objects per lane. 1 means perfectly balanced, the number of lanes means a
+	 * single lane got everything, e.g. because one sender dominates.
+	 * 
+	 * @return The lane imbalance or 0 if nothing was dispatched with lanes.
+	 */
+	@Override
+	public double getDispatchLaneImbalance() {
+		List<DispatchLaneStats> laneStats = getDispatchLaneStats();
+		long sum = 0;
+		long max = 0;
+		for (DispatchLaneStats stats : laneStats) {
+			sum += stats.getDispatched();
+			max = Math.max(max, stats.getDispatched());
+		}
+		return sum == 0 ? 0 : (double) max * laneStats.size() / sum;
+	}
+
+	@Override
+	public int getMaxDispatchLaneBacklog() {
+		int max = 0;
+		for (DispatchLaneStats stats : getDispatchLaneStats()) {
+			max = Math.max(max, stats.getBacklog());
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the counters of every worker thread and, if present, the acceptor
+	 * thread.
+	 * 
+	 * @return The counters of every thread of the {@link Server}.
+	 */
+	public List<EventLoopStats> getEventLoopStats() {
+		return eventLoopStats;
+	}
+
+	@Override
+	public long getSelectorWakeups() {
+		long count = 0;
+		for (EventLoopStats stats : eventLoopStats) {
+			count += stats.getWakeups();
+		}
+		return count;
+	}
+
+	@Override
+	public long getSelectedKeys() {
+		long count = 0;
+		for (EventLoopStats stats : eventLoopStats) {
+			count += stats.getSelectedKeys();
+		}
+		return count;
+	}
+
+	@Override
+	public double getMeanEventLoopUtilization() {
+		double sum = 0;
+		for (EventLoopStats stats : eventLoopStats) {
+			sum += stats.getUtilization();
+		}
+		return eventLoopStats.isEmpty() ? 0 : sum / eventLoopStats.size();
+	}
+
+	@Override
+	public double getMaxEventLoopUtilization() {
+		double max = 0;
+		for (EventLoopStats stats : eventLoopStats) {
+			max = Math.max(max, stats.getUtilization());
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the {@link ServerMetrics} as string object.
+	 * 
+	 * @return The {@link ServerMetrics} as string object.
+	 */
+	@Override
+	public String toString() {
+		return "ServerMetrics [tcpConnections=" + getTcpConnections() + ", udpDatagrams=" + getUdpDatagrams()
+				+ ", udpBytes=" + getUdpBytes() + ", connectionQueueDepth=" + getConnectionQueueDepth()
+				+ ", droppedNetworkData=" + getDroppedNetworkData() + ", queueWait=" + getQueueWait()
+				+ ", receiverTime=" + getReceiverTime() + ", dispatchLaneStats=" + getDispatchLaneStats()
+				+ ", eventLoopStats=" + eventLoopStats + "]";
+	}
+
+	/**
+	 * Turns a growing counter into a per second rate. The rate is recalculated
+	 * when it is read and at least a second passed since the last calculation.
+	 */
+	private static class Rate {
+
+		private long lastCount;
+		private long lastTime;
+		private double rate;
+
+		Rate() {
+			lastTime = System.nanoTime();
+		}
+
+		synchronized double update(long count) {
+			long now = System.nanoTime();
+			long elapsed = now - lastTime;
+			if (elapsed >= RATE_INTERVAL) {
+				rate = (double) (count - lastCount) * RATE_INTERVAL / elapsed;
+				lastCount = count;
+				lastTime = now;
+			}
+			return rate;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package net.dschinghiskahn.server;
+
+/**
+ * The management interface the {@link ServerMetrics} are exported with through
+ * JMX. Rates are averaged over at least one second between two reads.
+ */
+public interface ServerMetricsMXBean {
+
+	long getTcpConnections();
+
+	double getTcpConnectionsPerSecond();
+
+	long getUdpDatagrams();
+
+	double getUdpDatagramsPerSecond();
+
+	long getUdpBytes();
+
+	double getUdpBytesPerSecond();
+
+	int getConnectionQueueDepth();
+
+	long getDroppedNetworkData();
+
+	double getQueueWaitMeanNanos();
+
+	long getQueueWait99thPercentileNanos();
+
+	long getQueueWaitMaxNanos();
+
+	double getReceiverMeanNanos();
+
+	long getReceiver99thPercentileNanos();
+
+	long getReceiverMaxNanos();
+
+	double getDispatchLaneImbalance();
+
+	int getMaxDispatchLaneBacklog();
+
+	long getSelectorWakeups();
+
+	long getSelectedKeys();
+
+	double getMeanEventLoopUtilization();
+
+	double getMaxEventLoopUtilization();
+}
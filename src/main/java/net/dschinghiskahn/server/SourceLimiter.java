@@ -0,0 +1,350 @@
+package net.dschinghiskahn.server;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the TCP connections and UDP datagrams the {@link Server} accepts per
+ * source. A source is the sender's address masked to a configurable prefix
+ * length, so a whole subnet can share one limit.
+ *
+ * The TCP accept rate and the UDP datagram rate are token buckets, each kept
+ * as a single timestamp per source: the time at which the bucket will be full
+ * again. Together with the number of open connections a source takes a few
+ * dozen bytes in an open addressing table of primitive arrays. The table is
+ * split into stripes with a lock each, so the threads of the {@link Server}
+ * rarely contend. Sources whose buckets are full and which have no open
+ * connections carry no state and are dropped whenever a stripe grows.
+ */
+class SourceLimiter {
+
+	private static final int STRIPES = 64;
+	private static final long IPV4_MAPPED = 0xFFFF00000000L;
+
+	private final Stripe[] stripes;
+	private volatile Limit tcpLimit;
+	private volatile Limit udpLimit;
+	private volatile int maxConnections;
+	private volatile int ipv4PrefixLength;
+	private volatile int ipv6PrefixLength;
+
+	SourceLimiter() {
+		stripes = new Stripe[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe(); // NOPMD
+		}
+		ipv4PrefixLength = 32;
+		ipv6PrefixLength = 64;
+	}
+
+	void setTcpRateLimit(long rate, long burst, TimeUnit unit) {
+		tcpLimit = Limit.create(rate, burst, unit);
+	}
+
+	void setUdpRateLimit(long rate, long burst, TimeUnit unit) {
+		udpLimit = Limit.create(rate, burst, unit);
+	}
+
+	void setMaxConnections(int maxConnections) {
+		if (maxConnections < 0) {
+			throw new IllegalArgumentException("The maximum number of connections must not be negative: "
+					+ maxConnections);
+		}
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Changes the prefix lengths sources are grouped by. Forgets all sources,
+	 * as their keys change.
+	 */
+	void setPrefixLengths(int ipv4PrefixLength, int ipv6PrefixLength) {
+		if (ipv4PrefixLength < 0 || ipv4PrefixLength > 32 || ipv6PrefixLength < 0 || ipv6PrefixLength > 128) {
+			throw new IllegalArgumentException(
+					"Invalid prefix lengths: /" + ipv4PrefixLength + ", /" + ipv6PrefixLength);
+		}
+		this.ipv4PrefixLength = ipv4PrefixLength;
+		this.ipv6PrefixLength = ipv6PrefixLength;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a TCP connection of the given source may be accepted and
+	 * counts it as open if so. Every admitted connection must be passed to
+	 * {@link #release(InetAddress)} once it was closed.
+	 */
+	boolean tryAcquireConnection(InetAddress source) {
+		Limit limit = tcpLimit;
+		int max = maxConnections;
+		if (limit == null && max == 0) {
+			return true;
+		}
+		long now = System.nanoTime();
+		long high = high(source);
+		long low = low(source);
+		Stripe stripe = stripe(high, low);
+		synchronized (stripe) {
+			int slot = stripe.find(high, low, now);
+			if (max > 0 && stripe.connections[slot] >= max) {
+				return false;
+			}
+			if (limit != null && !limit.tryAcquire(stripe.tcp, slot, now)) {
+				return false;
+			}
+			if (max > 0) {
+				stripe.connections[slot]++;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Counts a connection admitted by {@link #tryAcquireConnection(InetAddress)}
+	 * as closed.
+	 */
+	void release(InetAddress source) {
+		long high = high(source);
+		long low = low(source);
+		Stripe stripe = stripe(high, low);
+		synchronized (stripe) {
+			int slot = stripe.get(high, low);
+			if (slot >= 0 && stripe.connections[slot] > 0) {
+				stripe.connections[slot]--;
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a UDP datagram of the given source may be accepted.
+	 */
+	boolean tryAcquireDatagram(InetAddress source) {
+		Limit limit = udpLimit;
+		if (limit == null) {
+			return true;
+		}
+		long now = System.nanoTime();
+		long high = high(source);
+		long low = low(source);
+		Stripe stripe = stripe(high, low);
+		synchronized (stripe) {
+			return limit.tryAcquire(stripe.udp, stripe.find(high, low, now), now);
+		}
+	}
+
+	/**
+	 * Returns the number of sources currently tracked, including idle ones
+	 * which were not dropped yet.
+	 */
+	int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the upper 64 bits of the masked address. IPv4 addresses are
+	 * mapped into the IPv6 address space.
+	 */
+	private long high(InetAddress source) {
+		byte[] address = source.getAddress();
+		if (address.length == 4) {
+			return 0;
+		}
+		return mask(toLong(address, 0), ipv6PrefixLength);
+	}
+
+	private long low(InetAddress source) {
+		byte[] address = source.getAddress();
+		if (address.length == 4) {
+			return IPV4_MAPPED | mask(toLong(address, 0), ipv4PrefixLength) >>> 32;
+		}
+		return mask(toLong(address, 8), ipv6PrefixLength - 64);
+	}
+
+	private static long toLong(byte[] address, int offset) {
+		long value = 0;
+		for (int i = offset; i < offset + 8; i++) {
+			value <<= 8;
+			if (i < address.length) {
+				value |= address[i] & 0xFF;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Keeps the given number of most significant bits.
+	 */
+	private static long mask(long value, int bits) {
+		if (bits <= 0) {
+			return 0;
+		}
+		return bits >= 64 ? value : value & -1L << 64 - bits;
+	}
+
+	private Stripe stripe(long high, long low) {
+		return stripes[(int) (hash(high, low) >>> 58)];
+	}
+
+	private static long hash(long high, long low) {
+		long hash = (high * 0x9E3779B97F4A7C15L ^ low) * 0xC2B2AE3D27D4EB4FL;
+		return hash ^ hash >>> 31;
+	}
+
+	/**
+	 * A token bucket. The state of a source is the time at which its bucket is
+	 * full again; a permit is available while that time lies less than the
+	 * burst minus one permit ahead.
+	 */
+	private static final class Limit {
+
+		private final long interval;
+		private final long tolerance;
+
+		private Limit(long interval, long tolerance) {
+			this.interval = interval;
+			this.tolerance = tolerance;
+		}
+
+		static Limit create(long rate, long burst, TimeUnit unit) {
+			if (rate == 0) {
+				return null;
+			}
+			if (rate < 0 || burst < 1) {
+				throw new IllegalArgumentException("Invalid rate limit: " + rate + " per " + unit + ", burst " + burst);
+			}
+			long interval = Math.max(1, unit.toNanos(1) / rate);
+			return new Limit(interval, interval * (burst - 1));
+		}
+
+		boolean tryAcquire(long[] full, int slot, long now) {
+			long time = full[slot] - now > 0 ? full[slot] : now;
+			if (time - now > tolerance) {
+				return false;
+			}
+			full[slot] = time + interval;
+			return true;
+		}
+	}
+
+	/**
+	 * An open addressing table of sources with linear probing. Must only be
+	 * accessed while holding its monitor.
+	 */
+	private static final class Stripe {
+
+		private static final int INITIAL_CAPACITY = 16;
+
+		private long[] high;
+		private long[] low;
+		private long[] tcp;
+		private long[] udp;
+		private int[] connections;
+		private boolean[] isUsed;
+		private int size;
+
+		Stripe() {
+			clear();
+		}
+
+		void clear() {
+			allocate(INITIAL_CAPACITY);
+		}
+
+		private void allocate(int capacity) {
+			high = new long[capacity];
+			low = new long[capacity];
+			tcp = new long[capacity];
+			udp = new long[capacity];
+			connections = new int[capacity];
+			isUsed = new boolean[capacity];
+			size = 0;
+		}
+
+		/**
+		 * Returns the slot of the given source or -1.
+		 */
+		int get(long keyHigh, long keyLow) {
+			int mask = isUsed.length - 1;
+			for (int slot = (int) hash(keyHigh, keyLow) & mask; isUsed[slot]; slot = slot + 1 & mask) {
+				if (high[slot] == keyHigh && low[slot] == keyLow) {
+					return slot;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Returns the slot of the given source, adding it if necessary.
+		 */
+		int find(long keyHigh, long keyLow, long now) {
+			int slot = get(keyHigh, keyLow);
+			if (slot >= 0) {
+				return slot;
+			}
+			if (size + 1 > isUsed.length >> 1) {
+				rehash(now);
+			}
+			slot = insert(keyHigh, keyLow);
+			tcp[slot] = now;
+			udp[slot] = now;
+			return slot;
+		}
+
+		private int insert(long keyHigh, long keyLow) {
+			int mask = isUsed.length - 1;
+			int slot = (int) hash(keyHigh, keyLow) & mask;
+			while (isUsed[slot]) {
+				slot = slot + 1 & mask;
+			}
+			isUsed[slot] = true;
+			high[slot] = keyHigh;
+			low[slot] = keyLow;
+			size++;
+			return slot;
+		}
+
+		/**
+		 * Drops the idle sources and resizes the table to twice the number of
+		 * remaining sources, so a stripe shrinks again after a flood.
+		 */
+		private void rehash(long now) {
+			long[] oldHigh = high;
+			long[] oldLow = low;
+			long[] oldTcp = tcp;
+			long[] oldUdp = udp;
+			int[] oldConnections = connections;
+			boolean[] oldIsUsed = isUsed;
+			int live = 0;
+			for (int i = 0; i < oldIsUsed.length; i++) {
+				if (oldIsUsed[i] && !isIdle(oldTcp[i], oldUdp[i], oldConnections[i], now)) {
+					live++;
+				}
+			}
+			int capacity = INITIAL_CAPACITY;
+			while (capacity < (live + 1) * 4) {
+				capacity <<= 1;
+			}
+			allocate(capacity);
+			for (int i = 0; i < oldIsUsed.length; i++) {
+				if (oldIsUsed[i] && !isIdle(oldTcp[i], oldUdp[i], oldConnections[i], now)) {
+					int slot = insert(oldHigh[i], oldLow[i]);
+					tcp[slot] = oldTcp[i];
+					udp[slot] = oldUdp[i];
+					connections[slot] = oldConnections[i];
+				}
+			}
+		}
+
+		private static boolean isIdle(long tcp, long udp, int connections, long now) {
+			return connections == 0 && tcp - now <= 0 && udp - now <= 0;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package net.dschinghiskahn.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.dschinghiskahn.server.net.IDatagramSender;
+
+/**
+ * Queues the datagrams sent from a UDP socket of the {@link Server} and sends
+ * them on the event loop owning the socket. Every datagram queued until the
+ * loop picks up the queue is sent in the same pass, so a burst of replies
+ * costs a single wakeup. Datagrams the socket's send buffer has no room for
+ * wait for OP_WRITE. The queue is bounded, so a peer triggering replies faster
+ * than the socket drains cannot exhaust the heap: datagrams beyond the capacity
+ * and datagrams queued after the socket was closed are dropped and counted as
+ * send failures.
+ */
+class UdpReplyQueue implements IDatagramSender {
+
+	/**
+	 * The maximum number of datagrams waiting to be sent.
+	 */
+	static final int CAPACITY = 16384;
+
+	private final DatagramChannel channel;
+	private final SelectionKey key;
+	private final EventLoop eventLoop;
+	private final ListenerStats stats;
+	private final Queue<Datagram> datagrams;
+	private final AtomicInteger size;
+	private final AtomicBoolean isFlushScheduled;
+	private volatile boolean isClosed;
+	private final Runnable flushTask;
+
+	/**
+	 * Creates a queue for the given socket.
+	 * 
+	 * @param channel   The socket to send from.
+	 * @param key       The key of the socket's registration with the event loop.
+	 * @param eventLoop The event loop owning the socket.
+	 * @param stats     The statistics counting the sent datagrams.
+	 */
+	UdpReplyQueue(DatagramChannel channel, SelectionKey key, EventLoop eventLoop, ListenerStats stats) {
+		this.channel = channel;
+		this.key = key;
+		this.eventLoop = eventLoop;
+		this.stats = stats;
+		this.datagrams = new ConcurrentLinkedQueue<Datagram>();
+		this.size = new AtomicInteger();
+		this.isFlushScheduled = new AtomicBoolean();
+		this.flushTask = new Runnable() {
+
+			@Override
+			public void run() {
+				isFlushScheduled.set(false);
+				flush();
+			}
+		};
+	}
+
+	@Override
+	public void send(ByteBuffer data, InetSocketAddress target) {
+		if (isClosed) {
+			stats.udpSendFailed();
+			return;
+		}
+		if (size.incrementAndGet() > CAPACITY) {
+			size.decrementAndGet();
+			stats.udpSendFailed();
+			return;
+		}
+		datagrams.add(new Datagram(data, target));
+		if (isClosed) {
+			// Closed concurrently, so the loop may never send it.
+			clear();
+		} else if (isFlushScheduled.compareAndSet(false, true)) {
+			eventLoop.execute(flushTask);
+		}
+	}
+
+	/**
+	 * Drops the queued datagrams and every datagram queued from now on. Called
+	 * once the socket was closed, after its event loop terminated.
+	 */
+	void close() {
+		isClosed = true;
+		clear();
+	}
+
+	private void clear() {
+		while (datagrams.poll() != null) {
+			size.decrementAndGet();
+			stats.udpSendFailed();
+		}
+	}
+
+	/**
+	 * Sends the queued datagrams until the queue is empty or the socket's send
+	 * buffer is full. Must be called on the event loop thread.
+	 */
+	void flush() {
+		if (!key.isValid()) {
+			clear();
+			return;
+		}
+		Datagram datagram;
+		while ((datagram = datagrams.peek()) != null) {
+			int bytes = datagram.data.remaining();
+			try {
+				if (channel.send(datagram.data, datagram.target) == 0 && bytes > 0) {
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					return;
+				}
+				stats.udpDatagramSent(bytes);
+			} catch (IOException e) {
+				stats.udpSendFailed();
+			}
+			datagrams.poll();
+			size.decrementAndGet();
+		}
+		if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+		}
+	}
+
+	/**
+	 * A datagram waiting to be sent.
+	 */
+	private static class Datagram {
+
+		private final ByteBuffer data;
+		private final InetSocketAddress target;
+
+		Datagram(ByteBuffer data, InetSocketAddress target) {
+			this.data = data;
+			this.target = target;
+		}
+	}
+}
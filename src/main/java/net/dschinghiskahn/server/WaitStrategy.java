@@ -0,0 +1,81 @@
+package net.dschinghiskahn.server;
+
+/**
+ * Controls how the threads of the {@link Server} wait for ready channels and
+ * tasks. Waiting in a blocking select costs no CPU but every wakeup pays for a
+ * system call and a context switch, which easily takes tens of microseconds.
+ * Polling the selector instead reacts within a few microseconds at the cost of
+ * keeping a core busy.
+ */
+public final class WaitStrategy {
+
+	/**
+	 * The thread blocks in {@link java.nio.channels.Selector#select()} right
+	 * away. This is the default.
+	 */
+	public static final WaitStrategy BLOCKING = new WaitStrategy("BLOCKING", 0, 0);
+
+	/**
+	 * The thread polls with {@link java.nio.channels.Selector#selectNow()} and
+	 * never blocks, so it occupies a whole core even while the server is idle.
+	 * Meant for threads pinned to an isolated core.
+	 */
+	public static final WaitStrategy BUSY_SPIN = new WaitStrategy("BUSY_SPIN", Long.MAX_VALUE, 0);
+
+	private final String name;
+	private final long spins;
+	private final long yields;
+
+	private WaitStrategy(String name, long spins, long yields) {
+		this.name = name;
+		this.spins = spins;
+		this.yields = yields;
+	}
+
+	/**
+	 * Creates a strategy which polls the selector up to the given number of
+	 * times, then polls and yields the CPU to other threads up to the given
+	 * number of times, and finally blocks in
+	 * {@link java.nio.channels.Selector#select()}. Busy servers never reach the
+	 * blocking select, idle servers only burn CPU for a short while after each
+	 * wakeup.
+	 * 
+	 * @param spins  The number of polls before yielding.
+	 * @param yields The number of polls with a yield before blocking.
+	 * @return The new {@link WaitStrategy}.
+	 */
+	public static WaitStrategy spinYieldPark(long spins, long yields) {
+		if (spins < 0 || yields < 0) {
+			throw new IllegalArgumentException("The spins and yields must not be negative.");
+		}
+		return new WaitStrategy("SPIN_YIELD_PARK", spins, yields);
+	}
+
+	/**
+	 * Returns the number of polls before yielding.
+	 * 
+	 * @return The number of polls before yielding.
+	 */
+	public long getSpins() {
+		return spins;
+	}
+
+	/**
+	 * Returns the number of polls with a yield before blocking.
+	 * 
+	 * @return The number of polls with a yield before blocking.
+	 */
+	public long getYields() {
+		return yields;
+	}
+
+	/**
+	 * Returns the {@link WaitStrategy} as string object.
+	 * 
+	 * @return The {@link WaitStrategy} as string object.
+	 */
+	@Override
+	public String toString() {
+		return "WaitStrategy [name=" + name + ", spins=" + spins + ", yields=" + yields + "]";
+	}
+}
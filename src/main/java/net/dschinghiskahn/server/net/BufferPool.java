@@ -0,0 +1,223 @@
+package net.dschinghiskahn.server.net;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of direct {@link ByteBuffer}s organized in power-of-two size classes.
+ * The buffers are sliced out of larger off-heap slabs and are handed back to
+ * the pool once they are no longer needed. Leasing and releasing a buffer does
+ * not allocate any objects once the pool has warmed up.
+ */
+public class BufferPool {
+
+    /**
+     * The default maximum buffer size, large enough for any UDP datagram.
+     */
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 64 * 1024;
+    private static final int MIN_BUFFER_SIZE = 64;
+    private static final int SLAB_SIZE = 256 * 1024;
+
+    private final int maxBufferSize;
+    private final SizeClass[] sizeClasses;
+    private final AtomicLong slabAllocations;
+    private final AtomicLong allocatedBytes;
+    private final AtomicLong leases;
+    private final AtomicLong releases;
+
+    /**
+     * Creates a new pool handing out buffers of up to the given size.
+     * 
+     * @param maxBufferSize
+     *            The maximum size of a single buffer.
+     */
+    public BufferPool(int maxBufferSize) {
+        if (maxBufferSize <= 0) {
+            throw new IllegalArgumentException("The maximum buffer size must be positive: " + maxBufferSize);
+        }
+        this.maxBufferSize = maxBufferSize;
+        this.sizeClasses = new SizeClass[indexOf(maxBufferSize) + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(MIN_BUFFER_SIZE << i);
+        }
+        this.slabAllocations = new AtomicLong();
+        this.allocatedBytes = new AtomicLong();
+        this.leases = new AtomicLong();
+        this.releases = new AtomicLong();
+    }
+
+    /**
+     * Leases a buffer with room for at least the given number of bytes. The
+     * returned buffer is cleared and its limit is set to the requested size.
+     * 
+     * @param size
+     *            The number of bytes needed.
+     * @return A buffer which must be handed back with
+     *         {@link #release(ByteBuffer)}.
+     */
+    public ByteBuffer lease(int size) {
+        if (size < 0 || size > maxBufferSize) {
+            throw new IllegalArgumentException("Buffer size out of range [0, " + maxBufferSize + "]: " + size);
+        }
+        ByteBuffer buffer = sizeClasses[indexOf(size)].take();
+        buffer.limit(size);
+        leases.incrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Hands a leased buffer back to the pool. The buffer must not be used
+     * afterwards.
+     * 
+     * @param buffer
+     *            A buffer obtained by {@link #lease(int)}.
+     * @throws IllegalArgumentException
+     *             If the buffer was not leased from this pool or was already
+     *             released.
+     */
+    public void release(ByteBuffer buffer) {
+        if (!tryRelease(buffer)) {
+            throw new IllegalArgumentException("The buffer is not leased from this pool: " + buffer);
+        }
+    }
+
+    /**
+     * Hands the buffer back to the pool if it is leased from it. Lets callers
+     * mixing leased buffers with buffers of other origin release all of them
+     * alike.
+     * 
+     * @param buffer
+     *            Any buffer.
+     * @return True if the buffer was leased from this pool and was handed
+     *         back, false otherwise.
+     */
+    public boolean tryRelease(ByteBuffer buffer) {
+        int index = indexOf(buffer.capacity());
+        if (!buffer.isDirect() || index >= sizeClasses.length || sizeClasses[index].bufferSize != buffer.capacity()
+                || !sizeClasses[index].put(buffer)) {
+            return false;
+        }
+        releases.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns the maximum size of a single buffer.
+     * 
+     * @return The maximum size of a single buffer.
+     */
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * Returns the number of off-heap slabs allocated so far. This number stays
+     * constant in steady state.
+     * 
+     * @return The number of off-heap slabs allocated so far.
+     */
+    public long getSlabAllocations() {
+        return slabAllocations.get();
+    }
+
+    /**
+     * Returns the number of off-heap bytes allocated so far.
+     * 
+     * @return The number of off-heap bytes allocated so far.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * Returns the number of buffers leased so far.
+     * 
+     * @return The number of buffers leased so far.
+     */
+    public long getLeases() {
+        return leases.get();
+    }
+
+    /**
+     * Returns the number of buffers released so far.
+     * 
+     * @return The number of buffers released so far.
+     */
+    public long getReleases() {
+        return releases.get();
+    }
+
+    /**
+     * Returns the index of the smallest size class holding the given size.
+     */
+    private static int indexOf(int size) {
+        if (size <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    }
+
+    /**
+     * A stack of free buffers sharing the same capacity. The leased buffers
+     * are tracked by identity, so a buffer released twice or a foreign buffer
+     * of the same capacity is never pushed onto the stack. The identity map
+     * keeps its entries in a flat array, so it does not allocate once it has
+     * grown to the number of buffers in use.
+     */
+    private class SizeClass {
+
+        private final int bufferSize;
+        private final Map<ByteBuffer, Boolean> leased;
+        private ByteBuffer[] free;
+        private int count;
+
+        SizeClass(int bufferSize) {
+            this.bufferSize = bufferSize;
+            this.leased = new IdentityHashMap<ByteBuffer, Boolean>();
+            this.free = new ByteBuffer[0];
+        }
+
+        synchronized ByteBuffer take() {
+            if (count == 0) {
+                allocateSlab();
+            }
+            ByteBuffer buffer = free[--count];
+            free[count] = null;
+            leased.put(buffer, Boolean.TRUE);
+            return buffer;
+        }
+
+        /**
+         * Pushes the buffer back onto the stack unless it is not leased.
+         */
+        synchronized boolean put(ByteBuffer buffer) {
+            if (count == free.length || leased.remove(buffer) == null) {
+                return false;
+            }
+            buffer.clear();
+            free[count++] = buffer;
+            return true;
+        }
+
+        /**
+         * Slices a new off-heap slab into buffers of this size class. The free
+         * stack grows to hold every buffer ever allocated, so putting a buffer
+         * back never has to resize it.
+         */
+        private void allocateSlab() {
+            int slabSize = Math.max(SLAB_SIZE, bufferSize);
+            ByteBuffer slab = ByteBuffer.allocateDirect(slabSize);
+            int slices = slabSize / bufferSize;
+            free = Arrays.copyOf(free, free.length + slices);
+            for (int i = 0; i < slices; i++) {
+                slab.limit((i + 1) * bufferSize).position(i * bufferSize);
+                free[count++] = slab.slice();
+            }
+            slabAllocations.incrementAndGet();
+            allocatedBytes.addAndGet(slabSize);
+        }
+    }
+}
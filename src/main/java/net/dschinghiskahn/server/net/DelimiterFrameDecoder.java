@@ -0,0 +1,81 @@
+package net.dschinghiskahn.server.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes frames terminated by a delimiter, e.g. lines terminated by a line
+ * feed. The delimiter is not part of the decoded frame.
+ */
+public class DelimiterFrameDecoder extends FrameDecoder {
+
+    private final byte[] delimiter;
+    private final int maxFrameLength;
+    private int scanned;
+
+    /**
+     * Creates a delimiter decoder.
+     * 
+     * @param delimiter
+     *            The bytes terminating a frame.
+     * @param maxFrameLength
+     *            The maximum length of the content of a frame.
+     * @param frameHandler
+     *            The handler receiving the decoded frames.
+     */
+    public DelimiterFrameDecoder(byte[] delimiter, int maxFrameLength, IFrameHandler frameHandler) {
+        super(frameHandler);
+        if (delimiter.length == 0) {
+            throw new IllegalArgumentException("The delimiter must not be empty.");
+        }
+        this.delimiter = delimiter.clone();
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * Creates a decoder for lines terminated by a line feed. A carriage return
+     * preceding the line feed is part of the frame.
+     * 
+     * @param maxLineLength
+     *            The maximum length of a line.
+     * @param frameHandler
+     *            The handler receiving the decoded lines.
+     * @return A decoder for lines.
+     */
+    public static DelimiterFrameDecoder lines(int maxLineLength, IFrameHandler frameHandler) {
+        return new DelimiterFrameDecoder(new byte[] { '\n' }, maxLineLength, frameHandler);
+    }
+
+    @Override
+    protected ByteBuffer decode(ByteBuffer in) throws IOException {
+        int start = in.position();
+        int end = in.limit() - delimiter.length;
+        // Bytes scanned during earlier calls do not contain a delimiter.
+        for (int i = start + Math.max(0, scanned - delimiter.length + 1); i <= end; i++) {
+            if (isDelimiterAt(in, i)) {
+                int length = i - start;
+                if (length > maxFrameLength) {
+                    break;
+                }
+                ByteBuffer frame = slice(in, 0, length);
+                in.position(i + delimiter.length);
+                scanned = 0;
+                return frame;
+            }
+        }
+        scanned = in.remaining();
+        if (scanned > maxFrameLength + delimiter.length - 1) {
+            throw new IOException("Frame length exceeds the maximum of " + maxFrameLength + ".");
+        }
+        return null;
+    }
+
+    private boolean isDelimiterAt(ByteBuffer in, int index) {
+        for (int i = 0; i < delimiter.length; i++) {
+            if (in.get(index + i) != delimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
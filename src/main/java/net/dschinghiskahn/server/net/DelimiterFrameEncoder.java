@@ -0,0 +1,39 @@
+package net.dschinghiskahn.server.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Terminates frames with a delimiter as expected by the
+ * {@link DelimiterFrameDecoder}.
+ */
+public class DelimiterFrameEncoder extends FrameEncoder {
+
+    private final ByteBuffer delimiter;
+
+    /**
+     * Creates a delimiter encoder.
+     * 
+     * @param delimiter
+     *            The bytes terminating a frame.
+     */
+    public DelimiterFrameEncoder(byte[] delimiter) {
+        if (delimiter.length == 0) {
+            throw new IllegalArgumentException("The delimiter must not be empty.");
+        }
+        this.delimiter = ByteBuffer.wrap(delimiter.clone()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Creates an encoder for lines terminated by a line feed.
+     * 
+     * @return An encoder for lines.
+     */
+    public static DelimiterFrameEncoder lines() {
+        return new DelimiterFrameEncoder(new byte[] { '\n' });
+    }
+
+    @Override
+    public ByteBuffer[] encode(ByteBuffer frame) {
+        return new ByteBuffer[] { frame, delimiter.duplicate() };
+    }
+}
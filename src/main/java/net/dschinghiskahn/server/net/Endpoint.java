@@ -0,0 +1,147 @@
+package net.dschinghiskahn.server.net;
+
+import net.dschinghiskahn.server.Server;
+
+/**
+ * An address the {@link Server} listens on, together with the protocols it
+ * accepts there. A single {@link Server} can listen on many endpoints with a
+ * shared set of threads. Every {@link INetworkData} refers to the endpoint it
+ * arrived on, so receivers can route by comparing references.
+ */
+public final class Endpoint {
+
+    private final String host;
+    private final int port;
+    private final boolean isTcp;
+    private final boolean isUdp;
+    private final ListenerOptions options;
+
+    private Endpoint(String host, int port, boolean isTcp, boolean isUdp, ListenerOptions options) {
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("Invalid port: " + port);
+        }
+        if (options == null) {
+            throw new IllegalArgumentException("The options must not be null.");
+        }
+        this.host = host;
+        this.port = port;
+        this.isTcp = isTcp;
+        this.isUdp = isUdp;
+        this.options = options;
+    }
+
+    /**
+     * Creates an endpoint accepting TCP connections only.
+     * 
+     * @param host
+     *            The interface/ip to listen on (null refers to the wildcard
+     *            address).
+     * @param port
+     *            The port to listen on or 0 for an ephemeral port.
+     * @return The new {@link Endpoint}.
+     */
+    public static Endpoint tcp(String host, int port) {
+        return new Endpoint(host, port, true, false, ListenerOptions.DEFAULT);
+    }
+
+    /**
+     * Creates an endpoint receiving UDP datagrams only.
+     * 
+     * @param host
+     *            The interface/ip to listen on (null refers to the wildcard
+     *            address).
+     * @param port
+     *            The port to listen on or 0 for an ephemeral port.
+     * @return The new {@link Endpoint}.
+     */
+    public static Endpoint udp(String host, int port) {
+        return new Endpoint(host, port, false, true, ListenerOptions.DEFAULT);
+    }
+
+    /**
+     * Creates an endpoint accepting TCP connections and receiving UDP
+     * datagrams on the same address, like a {@link Server} created for a
+     * single port does.
+     * 
+     * @param host
+     *            The interface/ip to listen on (null refers to the wildcard
+     *            address).
+     * @param port
+     *            The port to listen on or 0 for an ephemeral port.
+     * @return The new {@link Endpoint}.
+     */
+    public static Endpoint tcpAndUdp(String host, int port) {
+        return new Endpoint(host, port, true, true, ListenerOptions.DEFAULT);
+    }
+
+    /**
+     * Creates a copy of this endpoint with the given socket options. The
+     * options are applied when the {@link Server} binds the endpoint, which
+     * fails if the platform does not support one of them.
+     * 
+     * @param options
+     *            The socket options of the endpoint.
+     * @return The new {@link Endpoint}.
+     */
+    public Endpoint withOptions(ListenerOptions options) {
+        return new Endpoint(host, port, isTcp, isUdp, options);
+    }
+
+    /**
+     * Returns the interface/ip to listen on.
+     * 
+     * @return The interface/ip to listen on or null for the wildcard address.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns the configured port. Use
+     * {@link net.dschinghiskahn.server.ListenerStats#getAddress()} for the
+     * bound port of an ephemeral endpoint.
+     * 
+     * @return The configured port.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns whether TCP connections are accepted.
+     * 
+     * @return Whether TCP connections are accepted.
+     */
+    public boolean isTcp() {
+        return isTcp;
+    }
+
+    /**
+     * Returns whether UDP datagrams are received.
+     * 
+     * @return Whether UDP datagrams are received.
+     */
+    public boolean isUdp() {
+        return isUdp;
+    }
+
+    /**
+     * Returns the socket options of the endpoint.
+     * 
+     * @return The socket options of the endpoint.
+     */
+    public ListenerOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Returns the {@link Endpoint} as string object.
+     * 
+     * @return The {@link Endpoint} as string object.
+     */
+    @Override
+    public String toString() {
+        return "Endpoint [host=" + host + ", port=" + port + ", tcp=" + isTcp + ", udp=" + isUdp + ", options="
+                + options + "]";
+    }
+}
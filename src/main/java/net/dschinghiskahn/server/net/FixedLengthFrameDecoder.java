@@ -0,0 +1,37 @@
+package net.dschinghiskahn.server.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes frames of a fixed length.
+ */
+public class FixedLengthFrameDecoder extends FrameDecoder {
+
+    private final int frameLength;
+
+    /**
+     * Creates a fixed length decoder.
+     * 
+     * @param frameLength
+     *            The length of every frame.
+     * @param frameHandler
+     *            The handler receiving the decoded frames.
+     */
+    public FixedLengthFrameDecoder(int frameLength, IFrameHandler frameHandler) {
+        super(frameHandler);
+        if (frameLength <= 0) {
+            throw new IllegalArgumentException("The frame length must be positive: " + frameLength);
+        }
+        this.frameLength = frameLength;
+    }
+
+    @Override
+    protected ByteBuffer decode(ByteBuffer in) {
+        if (in.remaining() < frameLength) {
+            return null;
+        }
+        ByteBuffer frame = slice(in, 0, frameLength);
+        in.position(in.position() + frameLength);
+        return frame;
+    }
+}
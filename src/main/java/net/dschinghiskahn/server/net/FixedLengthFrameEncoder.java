@@ -0,0 +1,33 @@
+package net.dschinghiskahn.server.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Checks that frames have the length expected by the
+ * {@link FixedLengthFrameDecoder}. Fixed length frames need no framing bytes.
+ */
+public class FixedLengthFrameEncoder extends FrameEncoder {
+
+    private final int frameLength;
+
+    /**
+     * Creates a fixed length encoder.
+     * 
+     * @param frameLength
+     *            The length of every frame.
+     */
+    public FixedLengthFrameEncoder(int frameLength) {
+        if (frameLength <= 0) {
+            throw new IllegalArgumentException("The frame length must be positive: " + frameLength);
+        }
+        this.frameLength = frameLength;
+    }
+
+    @Override
+    public ByteBuffer[] encode(ByteBuffer frame) {
+        if (frame.remaining() != frameLength) {
+            throw new IllegalArgumentException("Expected a frame of " + frameLength + " bytes: " + frame.remaining());
+        }
+        return new ByteBuffer[] { frame };
+    }
+}
@@ -0,0 +1,136 @@
+package net.dschinghiskahn.server.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the byte stream of a non-blocking {@link TcpNetworkData} connection
+ * into frames and passes them to an {@link IFrameHandler}. Frames contained
+ * completely in a single read are passed on as views of the read buffer
+ * without copying, only incomplete frames are copied into an internal buffer
+ * until the rest arrives. A decoder keeps per-connection state and must not be
+ * shared between connections. Connections sending invalid frames are closed.
+ */
+public abstract class FrameDecoder implements IConnectionHandler {
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private final IFrameHandler frameHandler;
+    private ByteBuffer cumulation;
+
+    /**
+     * Creates a decoder passing frames to the given handler.
+     * 
+     * @param frameHandler
+     *            The handler receiving the decoded frames.
+     */
+    protected FrameDecoder(IFrameHandler frameHandler) {
+        this.frameHandler = frameHandler;
+    }
+
+    /**
+     * Decodes all complete frames of the given data and keeps the remainder
+     * until more data arrives.
+     * 
+     * @param connection
+     *            The connection the data was read from.
+     * @param data
+     *            The data that was read.
+     */
+    @Override
+    public void receiveData(TcpNetworkData connection, ByteBuffer data) {
+        ByteBuffer in;
+        if (cumulation == null || cumulation.position() == 0) {
+            in = data;
+        } else {
+            append(data);
+            cumulation.flip();
+            in = cumulation;
+        }
+
+        try {
+            ByteBuffer frame;
+            while (in.hasRemaining() && (frame = decode(in)) != null) {
+                frameHandler.receiveFrame(connection, frame);
+            }
+        } catch (IOException e) {
+            if (cumulation != null) {
+                cumulation.clear();
+            }
+            try {
+                connection.close();
+            } catch (IOException e1) {
+                // Intentionally left empty
+            }
+            return;
+        }
+
+        if (in == cumulation) {
+            cumulation.compact();
+        } else if (in.hasRemaining()) {
+            append(in);
+        }
+    }
+
+    /**
+     * Discards incomplete frames and notifies the frame handler.
+     * 
+     * @param connection
+     *            The connection that was closed.
+     */
+    @Override
+    public void connectionClosed(TcpNetworkData connection) {
+        cumulation = null;
+        frameHandler.connectionClosed(connection);
+    }
+
+    /**
+     * Decodes the next frame starting at the position of the given buffer. If
+     * a complete frame is available the position is advanced past it,
+     * otherwise the buffer is left untouched.
+     * 
+     * @param in
+     *            The buffer to decode from.
+     * @return The content of the frame or null if the frame is incomplete.
+     * @throws IOException
+     *             Thrown if the data does not form a valid frame.
+     */
+    protected abstract ByteBuffer decode(ByteBuffer in) throws IOException;
+
+    /**
+     * Returns a view of length bytes of the given buffer starting offset bytes
+     * after its position.
+     * 
+     * @param in
+     *            The buffer to take the view of.
+     * @param offset
+     *            The offset relative to the buffer's position.
+     * @param length
+     *            The length of the view.
+     * @return A view sharing the content of the buffer.
+     */
+    protected static ByteBuffer slice(ByteBuffer in, int offset, int length) {
+        ByteBuffer view = in.duplicate();
+        view.position(in.position() + offset);
+        view.limit(in.position() + offset + length);
+        return view.slice();
+    }
+
+    /**
+     * Appends the remaining bytes of the given buffer to the internal buffer,
+     * growing it if necessary.
+     */
+    private void append(ByteBuffer data) {
+        if (cumulation == null) {
+            cumulation = ByteBuffer.allocate(Math.max(INITIAL_BUFFER_SIZE, data.remaining()));
+        } else if (cumulation.remaining() < data.remaining()) {
+            int capacity = cumulation.capacity();
+            while (capacity - cumulation.position() < data.remaining()) {
+                capacity *= 2;
+            }
+            cumulation.flip();
+            cumulation = ByteBuffer.allocate(capacity).put(cumulation);
+        }
+        cumulation.put(data);
+    }
+}
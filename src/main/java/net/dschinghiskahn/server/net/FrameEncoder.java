@@ -0,0 +1,36 @@
+package net.dschinghiskahn.server.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Adds framing to outgoing data. Encoders return the framing bytes and the
+ * content as separate buffers, so the content is never copied.
+ */
+public abstract class FrameEncoder {
+
+    /**
+     * Encodes the given frame content.
+     * 
+     * @param frame
+     *            The content of the frame.
+     * @return The buffers to send in the returned order.
+     */
+    public abstract ByteBuffer[] encode(ByteBuffer frame);
+
+    /**
+     * Encodes the given frame content and sends it on the given connection
+     * with a single gathering write.
+     * 
+     * @param connection
+     *            The connection to send the frame on.
+     * @param frame
+     *            The content of the frame, which must not be modified
+     *            afterwards.
+     * @throws IOException
+     *             Thrown on channel errors in blocking mode.
+     */
+    public void write(TcpNetworkData connection, ByteBuffer frame) throws IOException {
+        connection.write(encode(frame));
+    }
+}
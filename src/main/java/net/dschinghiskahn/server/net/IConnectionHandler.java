@@ -0,0 +1,46 @@
+package net.dschinghiskahn.server.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the events of a {@link TcpNetworkData} connection that was switched
+ * to non-blocking mode. All callbacks run on the server's event loop thread
+ * owning the connection and must not block.
+ */
+public interface IConnectionHandler {
+
+    /**
+     * Called when data was read from the connection.
+     * 
+     * @param connection
+     *            The connection the data was read from.
+     * @param data
+     *            The data that was read. The buffer is reused by the event
+     *            loop and is only valid for the duration of the call.
+     */
+    void receiveData(TcpNetworkData connection, ByteBuffer data);
+
+    /**
+     * Called once when the connection was closed, either by the remote side,
+     * by an I/O error or by {@link TcpNetworkData#close()}.
+     * 
+     * @param connection
+     *            The connection that was closed.
+     */
+    void connectionClosed(TcpNetworkData connection);
+
+    /**
+     * Called when the amount of data queued for sending rises above the high
+     * water mark of the connection, and again when it drops below the low
+     * water mark. Handlers should stop writing while the connection is not
+     * writable.
+     * 
+     * @param connection
+     *            The connection whose writability changed.
+     * @param isWritable
+     *            True if the connection is writable again, false otherwise.
+     * @see TcpNetworkData#setWriteWaterMarks(long, long)
+     */
+    default void writabilityChanged(TcpNetworkData connection, boolean isWritable) {
+    }
+}
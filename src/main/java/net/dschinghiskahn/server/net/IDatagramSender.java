@@ -0,0 +1,22 @@
+package net.dschinghiskahn.server.net;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Sends datagrams from a UDP socket of the server.
+ */
+public interface IDatagramSender {
+
+    /**
+     * Queues a datagram for sending. The datagram is sent asynchronously and
+     * dropped if the socket fails to send it, so the buffer must not be
+     * modified afterwards.
+     * 
+     * @param data
+     *            The content of the datagram from its position to its limit.
+     * @param target
+     *            The address to send the datagram to.
+     */
+    void send(ByteBuffer data, InetSocketAddress target);
+}
@@ -0,0 +1,48 @@
+package net.dschinghiskahn.server.net;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A selector loop of the server that drives non-blocking connections.
+ */
+public interface IEventLoop {
+
+    /**
+     * Runs the given task on the event loop thread.
+     * 
+     * @param task
+     *            The task to run.
+     */
+    void execute(Runnable task);
+
+    /**
+     * Runs the given task on the event loop thread once the given delay
+     * expired.
+     * 
+     * @param task
+     *            The task to run.
+     * @param delay
+     *            The delay.
+     * @param unit
+     *            The unit of the delay.
+     */
+    void schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * Returns the {@link Selector} of the event loop. Channels must only be
+     * registered from the event loop thread.
+     * 
+     * @return The {@link Selector} of the event loop.
+     */
+    Selector getSelector();
+
+    /**
+     * Returns a buffer owned by the event loop thread that may be used as
+     * scratch space for reads performed on that thread.
+     * 
+     * @return A buffer owned by the event loop thread.
+     */
+    ByteBuffer getReceiveBuffer();
+}
@@ -0,0 +1,32 @@
+package net.dschinghiskahn.server.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the frames a {@link FrameDecoder} decoded from a non-blocking
+ * {@link TcpNetworkData} connection. All callbacks run on the server's event
+ * loop thread owning the connection and must not block.
+ */
+public interface IFrameHandler {
+
+    /**
+     * Called for every complete frame.
+     * 
+     * @param connection
+     *            The connection the frame was read from.
+     * @param frame
+     *            The content of the frame without any framing bytes. The
+     *            buffer may be a view of a buffer reused by the decoder and is
+     *            only valid for the duration of the call.
+     */
+    void receiveFrame(TcpNetworkData connection, ByteBuffer frame);
+
+    /**
+     * Called once when the connection was closed. Incomplete frames received
+     * before are discarded.
+     * 
+     * @param connection
+     *            The connection that was closed.
+     */
+    void connectionClosed(TcpNetworkData connection);
+}
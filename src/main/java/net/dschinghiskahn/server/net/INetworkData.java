@@ -27,4 +27,15 @@ public interface INetworkData {
      *             Thrown on stream errors.
      */
     InetSocketAddress getReceiver() throws IOException;
+
+    /**
+     * Returns the {@link Endpoint} of the {@link Server} the connection arrived
+     * on.
+     * 
+     * @return The {@link Endpoint} the connection arrived on or null, e.g. for
+     *         datagrams of a multicast group.
+     */
+    default Endpoint getEndpoint() {
+        return null;
+    }
 }
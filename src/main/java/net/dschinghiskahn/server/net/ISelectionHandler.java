@@ -0,0 +1,22 @@
+package net.dschinghiskahn.server.net;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+
+/**
+ * Handles the readiness events of a channel registered with an
+ * {@link IEventLoop}. The handler is expected as the attachment of the
+ * {@link SelectionKey}.
+ */
+public interface ISelectionHandler {
+
+    /**
+     * Called by the event loop when the channel of the given key is ready.
+     * 
+     * @param key
+     *            The ready key.
+     * @throws IOException
+     *             Thrown on channel errors.
+     */
+    void handleSelection(SelectionKey key) throws IOException;
+}
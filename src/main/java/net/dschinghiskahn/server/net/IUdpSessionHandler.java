@@ -0,0 +1,41 @@
+package net.dschinghiskahn.server.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the datagrams of UDP peers grouped into {@link UdpSession}s. All
+ * callbacks of a session run on the server's event loop thread owning the
+ * socket the peer sends to, so the datagrams of a peer are delivered in the
+ * order they were received. Callbacks must not block.
+ */
+public interface IUdpSessionHandler {
+
+    /**
+     * Called when the first datagram of a new peer arrived, before it is
+     * passed to {@link #receiveData(UdpSession, ByteBuffer)}.
+     * 
+     * @param session
+     *            The new session.
+     */
+    void sessionOpened(UdpSession session);
+
+    /**
+     * Called for every datagram received from the peer of the session.
+     * 
+     * @param session
+     *            The session of the peer.
+     * @param data
+     *            The content of the datagram. The buffer is reused by the
+     *            event loop and is only valid for the duration of the call.
+     */
+    void receiveData(UdpSession session, ByteBuffer data);
+
+    /**
+     * Called once when the session was closed, either because the peer was
+     * idle for too long or by {@link UdpSession#close()}.
+     * 
+     * @param session
+     *            The session that was closed.
+     */
+    void sessionClosed(UdpSession session);
+}
@@ -0,0 +1,62 @@
+package net.dschinghiskahn.server.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes frames prefixed by a big-endian length field of 1, 2 or 4 bytes.
+ * The length field holds the length of the content, excluding the field
+ * itself.
+ */
+public class LengthFieldFrameDecoder extends FrameDecoder {
+
+    private final int lengthFieldSize;
+    private final int maxFrameLength;
+
+    /**
+     * Creates a length field decoder.
+     * 
+     * @param lengthFieldSize
+     *            The size of the length field in bytes (1, 2 or 4).
+     * @param maxFrameLength
+     *            The maximum length of the content of a frame.
+     * @param frameHandler
+     *            The handler receiving the decoded frames.
+     */
+    public LengthFieldFrameDecoder(int lengthFieldSize, int maxFrameLength, IFrameHandler frameHandler) {
+        super(frameHandler);
+        if (lengthFieldSize != 1 && lengthFieldSize != 2 && lengthFieldSize != 4) {
+            throw new IllegalArgumentException("The length field size must be 1, 2 or 4: " + lengthFieldSize);
+        }
+        this.lengthFieldSize = lengthFieldSize;
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected ByteBuffer decode(ByteBuffer in) throws IOException {
+        if (in.remaining() < lengthFieldSize) {
+            return null;
+        }
+        long length;
+        switch (lengthFieldSize) {
+        case 1:
+            length = in.get(in.position()) & 0xFF;
+            break;
+        case 2:
+            length = in.getShort(in.position()) & 0xFFFF;
+            break;
+        default:
+            length = in.getInt(in.position()) & 0xFFFFFFFFL;
+            break;
+        }
+        if (length > maxFrameLength) {
+            throw new IOException("Frame length " + length + " exceeds the maximum of " + maxFrameLength + ".");
+        }
+        if (in.remaining() < lengthFieldSize + length) {
+            return null;
+        }
+        ByteBuffer frame = slice(in, lengthFieldSize, (int) length);
+        in.position(in.position() + lengthFieldSize + (int) length);
+        return frame;
+    }
+}
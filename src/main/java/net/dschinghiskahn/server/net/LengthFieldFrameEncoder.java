@@ -0,0 +1,50 @@
+package net.dschinghiskahn.server.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Prefixes frames with a big-endian length field of 1, 2 or 4 bytes as
+ * expected by the {@link LengthFieldFrameDecoder}.
+ */
+public class LengthFieldFrameEncoder extends FrameEncoder {
+
+    private final int lengthFieldSize;
+
+    /**
+     * Creates a length field encoder.
+     * 
+     * @param lengthFieldSize
+     *            The size of the length field in bytes (1, 2 or 4).
+     */
+    public LengthFieldFrameEncoder(int lengthFieldSize) {
+        if (lengthFieldSize != 1 && lengthFieldSize != 2 && lengthFieldSize != 4) {
+            throw new IllegalArgumentException("The length field size must be 1, 2 or 4: " + lengthFieldSize);
+        }
+        this.lengthFieldSize = lengthFieldSize;
+    }
+
+    @Override
+    public ByteBuffer[] encode(ByteBuffer frame) {
+        int length = frame.remaining();
+        ByteBuffer header = ByteBuffer.allocate(lengthFieldSize);
+        switch (lengthFieldSize) {
+        case 1:
+            if (length > 0xFF) {
+                throw new IllegalArgumentException("Frame too long for a 1 byte length field: " + length);
+            }
+            header.put((byte) length);
+            break;
+        case 2:
+            if (length > 0xFFFF) {
+                throw new IllegalArgumentException("Frame too long for a 2 byte length field: " + length);
+            }
+            header.putShort((short) length);
+            break;
+        default:
+            header.putInt(length);
+            break;
+        }
+        header.flip();
+        return new ByteBuffer[] { header, frame };
+    }
+}
@@ -0,0 +1,300 @@
+package net.dschinghiskahn.server.net;
+
+/**
+ * The socket options of an {@link Endpoint}, applied to its listening sockets
+ * and to every TCP connection accepted on it. Options which are not set keep
+ * the defaults of the operating system. Instances are immutable and created
+ * with a {@link Builder}:
+ * 
+ * <pre>
+ * ListenerOptions options = ListenerOptions.builder().backlog(4096).tcpNoDelay(true)
+ *         .udpReceiveBufferSize(4 * 1024 * 1024).build();
+ * </pre>
+ */
+public final class ListenerOptions {
+
+    /**
+     * The options of an endpoint nothing was configured for.
+     */
+    public static final ListenerOptions DEFAULT = builder().build();
+
+    private final int backlog;
+    private final Integer tcpReceiveBufferSize;
+    private final Integer tcpSendBufferSize;
+    private final Boolean tcpNoDelay;
+    private final Boolean keepAlive;
+    private final Integer udpReceiveBufferSize;
+    private final Integer udpSendBufferSize;
+    private final Integer trafficClass;
+
+    private ListenerOptions(Builder builder) {
+        this.backlog = builder.backlog;
+        this.tcpReceiveBufferSize = builder.tcpReceiveBufferSize;
+        this.tcpSendBufferSize = builder.tcpSendBufferSize;
+        this.tcpNoDelay = builder.tcpNoDelay;
+        this.keepAlive = builder.keepAlive;
+        this.udpReceiveBufferSize = builder.udpReceiveBufferSize;
+        this.udpSendBufferSize = builder.udpSendBufferSize;
+        this.trafficClass = builder.trafficClass;
+    }
+
+    /**
+     * Creates a {@link Builder} without any options set.
+     * 
+     * @return A new {@link Builder}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a {@link Builder} starting with the options of this object.
+     * 
+     * @return A new {@link Builder}.
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.backlog = backlog;
+        builder.tcpReceiveBufferSize = tcpReceiveBufferSize;
+        builder.tcpSendBufferSize = tcpSendBufferSize;
+        builder.tcpNoDelay = tcpNoDelay;
+        builder.keepAlive = keepAlive;
+        builder.udpReceiveBufferSize = udpReceiveBufferSize;
+        builder.udpSendBufferSize = udpSendBufferSize;
+        builder.trafficClass = trafficClass;
+        return builder;
+    }
+
+    /**
+     * Returns the length of the TCP accept queue.
+     * 
+     * @return The length of the accept queue or 0 for the default.
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Returns SO_RCVBUF of the TCP listening socket, which is inherited by
+     * the accepted connections.
+     * 
+     * @return The receive buffer size in bytes or null for the default.
+     */
+    public Integer getTcpReceiveBufferSize() {
+        return tcpReceiveBufferSize;
+    }
+
+    /**
+     * Returns SO_SNDBUF of the accepted TCP connections.
+     * 
+     * @return The send buffer size in bytes or null for the default.
+     */
+    public Integer getTcpSendBufferSize() {
+        return tcpSendBufferSize;
+    }
+
+    /**
+     * Returns TCP_NODELAY of the accepted TCP connections.
+     * 
+     * @return Whether Nagle's algorithm is disabled or null for the default.
+     */
+    public Boolean getTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Returns SO_KEEPALIVE of the accepted TCP connections.
+     * 
+     * @return Whether keepalive probes are sent or null for the default.
+     */
+    public Boolean getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Returns SO_RCVBUF of the UDP socket.
+     * 
+     * @return The receive buffer size in bytes or null for the default.
+     */
+    public Integer getUdpReceiveBufferSize() {
+        return udpReceiveBufferSize;
+    }
+
+    /**
+     * Returns SO_SNDBUF of the UDP socket.
+     * 
+     * @return The send buffer size in bytes or null for the default.
+     */
+    public Integer getUdpSendBufferSize() {
+        return udpSendBufferSize;
+    }
+
+    /**
+     * Returns IP_TOS of the UDP socket and the accepted TCP connections.
+     * 
+     * @return The traffic class or null for the default.
+     */
+    public Integer getTrafficClass() {
+        return trafficClass;
+    }
+
+    /**
+     * Returns the {@link ListenerOptions} as string object.
+     * 
+     * @return The {@link ListenerOptions} as string object.
+     */
+    @Override
+    public String toString() {
+        return "ListenerOptions [backlog=" + backlog + ", tcpReceiveBufferSize=" + tcpReceiveBufferSize
+                + ", tcpSendBufferSize=" + tcpSendBufferSize + ", tcpNoDelay=" + tcpNoDelay + ", keepAlive="
+                + keepAlive + ", udpReceiveBufferSize=" + udpReceiveBufferSize + ", udpSendBufferSize="
+                + udpSendBufferSize + ", trafficClass=" + trafficClass + "]";
+    }
+
+    /**
+     * Collects the options of a {@link ListenerOptions} object. The values are
+     * validated when they are set.
+     */
+    public static final class Builder {
+
+        private int backlog;
+        private Integer tcpReceiveBufferSize;
+        private Integer tcpSendBufferSize;
+        private Boolean tcpNoDelay;
+        private Boolean keepAlive;
+        private Integer udpReceiveBufferSize;
+        private Integer udpSendBufferSize;
+        private Integer trafficClass;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the length of the TCP accept queue. Connections arriving while
+         * the queue is full are refused or retried by the client, so servers
+         * facing connect storms should raise it. The operating system may cap
+         * it, e.g. at net.core.somaxconn on Linux.
+         * 
+         * @param backlog
+         *            The length of the accept queue or 0 for the default.
+         * @return This {@link Builder}.
+         */
+        public Builder backlog(int backlog) {
+            if (backlog < 0) {
+                throw new IllegalArgumentException("The backlog must not be negative: " + backlog);
+            }
+            this.backlog = backlog;
+            return this;
+        }
+
+        /**
+         * Sets SO_RCVBUF of the TCP listening socket. It is set before the
+         * socket is bound, so accepted connections inherit it and can
+         * negotiate a window scale for buffers larger than 64 KiB.
+         * 
+         * @param size
+         *            The receive buffer size in bytes.
+         * @return This {@link Builder}.
+         */
+        public Builder tcpReceiveBufferSize(int size) {
+            this.tcpReceiveBufferSize = checkBufferSize(size);
+            return this;
+        }
+
+        /**
+         * Sets SO_SNDBUF of the accepted TCP connections.
+         * 
+         * @param size
+         *            The send buffer size in bytes.
+         * @return This {@link Builder}.
+         */
+        public Builder tcpSendBufferSize(int size) {
+            this.tcpSendBufferSize = checkBufferSize(size);
+            return this;
+        }
+
+        /**
+         * Sets TCP_NODELAY of the accepted TCP connections.
+         * 
+         * @param tcpNoDelay
+         *            Whether Nagle's algorithm is disabled.
+         * @return This {@link Builder}.
+         */
+        public Builder tcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        /**
+         * Sets SO_KEEPALIVE of the accepted TCP connections.
+         * 
+         * @param keepAlive
+         *            Whether keepalive probes are sent on idle connections.
+         * @return This {@link Builder}.
+         */
+        public Builder keepAlive(boolean keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Sets SO_RCVBUF of the UDP socket. A larger buffer absorbs bursts of
+         * datagrams arriving while the worker is busy. The operating system
+         * may cap it, e.g. at net.core.rmem_max on Linux, see
+         * {@link net.dschinghiskahn.server.ListenerStats#getOptions()} for the
+         * granted size.
+         * 
+         * @param size
+         *            The receive buffer size in bytes.
+         * @return This {@link Builder}.
+         */
+        public Builder udpReceiveBufferSize(int size) {
+            this.udpReceiveBufferSize = checkBufferSize(size);
+            return this;
+        }
+
+        /**
+         * Sets SO_SNDBUF of the UDP socket, which holds the replies.
+         * 
+         * @param size
+         *            The send buffer size in bytes.
+         * @return This {@link Builder}.
+         */
+        public Builder udpSendBufferSize(int size) {
+            this.udpSendBufferSize = checkBufferSize(size);
+            return this;
+        }
+
+        /**
+         * Sets IP_TOS of the UDP socket and the accepted TCP connections, e.g.
+         * a DSCP value shifted left by two bits.
+         * 
+         * @param trafficClass
+         *            The traffic class (0 - 255).
+         * @return This {@link Builder}.
+         */
+        public Builder trafficClass(int trafficClass) {
+            if (trafficClass < 0 || trafficClass > 0xFF) {
+                throw new IllegalArgumentException("The traffic class must be between 0 and 255: " + trafficClass);
+            }
+            this.trafficClass = trafficClass;
+            return this;
+        }
+
+        /**
+         * Creates the {@link ListenerOptions} object.
+         * 
+         * @return The new {@link ListenerOptions}.
+         */
+        public ListenerOptions build() {
+            return new ListenerOptions(this);
+        }
+
+        private static Integer checkBufferSize(int size) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("The buffer size must be positive: " + size);
+            }
+            return size;
+        }
+    }
+}
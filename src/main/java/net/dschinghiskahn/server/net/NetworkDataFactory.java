@@ -0,0 +1,70 @@
+package net.dschinghiskahn.server.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Creates the {@link INetworkData} objects of a
+ * {@link net.dschinghiskahn.server.Server}. The constructors wiring a
+ * connection to the internals of the server are package-private, so the
+ * public constructors of the network data classes stay as simple as they
+ * were. Applications have no use for this class.
+ */
+public final class NetworkDataFactory {
+
+    private NetworkDataFactory() {
+    }
+
+    /**
+     * Creates a UDP connection object which arrived on the given
+     * {@link Endpoint} and can be replied to.
+     * 
+     * @param data
+     *            The data that was received.
+     * @param sender
+     *            The senders location.
+     * @param receiver
+     *            The receivers location.
+     * @param pool
+     *            The pool the data was leased from or null.
+     * @param replySender
+     *            The sender of the socket the datagram was received on.
+     * @param endpoint
+     *            The endpoint the datagram arrived on or null.
+     * @return The UDP connection object.
+     */
+    public static UdpNetworkData newUdpNetworkData(ByteBuffer data, InetSocketAddress sender,
+            InetSocketAddress receiver, BufferPool pool, IDatagramSender replySender, Endpoint endpoint) {
+        return new UdpNetworkData(data, sender, receiver, pool, replySender, endpoint);
+    }
+
+    /**
+     * Creates a TCP connection object which arrived on the given
+     * {@link Endpoint} and can be switched to non-blocking mode on the given
+     * {@link IEventLoop}.
+     * 
+     * @param channel
+     *            The {@link SocketChannel} of the connection.
+     * @param tls
+     *            The {@link TlsChannel} wrapping the {@link SocketChannel} or
+     *            null for a plaintext connection. The TLS handshake must be
+     *            done already.
+     * @param eventLoop
+     *            The {@link IEventLoop} driving the connection in
+     *            non-blocking mode.
+     * @param closeListener
+     *            Run once when the connection is closed through the returned
+     *            object, its streams or its event loop, or null.
+     * @param endpoint
+     *            The endpoint the connection arrived on or null.
+     * @return The TCP connection object.
+     * @throws IOException
+     *             If the addresses of the channel cannot be read.
+     */
+    public static TcpNetworkData newTcpNetworkData(SocketChannel channel, TlsChannel tls, IEventLoop eventLoop,
+            Runnable closeListener, Endpoint endpoint) throws IOException {
+        return new TcpNetworkData(channel, tls, eventLoop, closeListener, endpoint);
+    }
+}
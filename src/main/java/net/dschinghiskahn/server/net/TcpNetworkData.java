@@ -7,16 +7,56 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSession;
 
 /**
- * Represents the TCP connection the server established.
+ * Represents the TCP connection the server established. The connection can
+ * either be used with blocking streams or be switched to non-blocking mode by
+ * setting an {@link IConnectionHandler}, in which case the server's event loop
+ * performs all reads and writes. Connections accepted on a TLS listener are
+ * encrypted transparently by a {@link TlsChannel}.
  */
-public class TcpNetworkData implements INetworkData {
+public class TcpNetworkData implements INetworkData, ISelectionHandler {
 
+    private static final int MAX_GATHER = 16;
     private final SocketChannel channel;
+    private final TlsChannel tls;
     private final InetSocketAddress sender;
     private final InetSocketAddress receiver;
+    private final Endpoint endpoint;
+    private final IEventLoop eventLoop;
+    private final Queue<Object> outbound;
+    private final AtomicBoolean isFlushScheduled;
+    private final AtomicBoolean isDelayedFlushScheduled;
+    private final AtomicBoolean isWritable;
+    private final AtomicLong pendingBytes;
+    private final Runnable flushTask;
+    private final Runnable closeListener;
+    private final AtomicBoolean isCloseNotified;
+    private volatile long lastReadTime;
+    private volatile long lastWriteTime;
+    private volatile IConnectionHandler handler;
+    private volatile int flushThreshold;
+    private volatile long maxFlushDelayNanos;
+    private volatile long lowWaterMark;
+    private volatile long highWaterMark;
+    private SelectionKey key;
+    private boolean isWritableNotified;
+    private ArrayDeque<Object> pending;
+    private ByteBuffer[] gather;
+    private boolean isClosed;
 
     /**
      * Creates a TCP connection object with the given {@link SocketChannel}.
@@ -27,9 +67,61 @@ public class TcpNetworkData implements INetworkData {
      * @throws IOException
      */
     public TcpNetworkData(SocketChannel channel) throws IOException {
+        this(channel, null, null, null, null);
+    }
+
+    /**
+     * Creates a TCP connection object which arrived on the given
+     * {@link Endpoint} of the server and can be switched to non-blocking mode
+     * on the given {@link IEventLoop}. Used by {@link NetworkDataFactory}.
+     * 
+     * @param channel
+     *            The {@link SocketChannel} of the connection.
+     * @param tls
+     *            The {@link TlsChannel} wrapping the {@link SocketChannel} or
+     *            null for a plaintext connection.
+     * @param eventLoop
+     *            The {@link IEventLoop} driving the connection in
+     *            non-blocking mode or null.
+     * @param closeListener
+     *            Run once when the connection is closed through this object,
+     *            its streams or its event loop, or null.
+     * @param endpoint
+     *            The endpoint the connection arrived on or null.
+     * @throws IOException
+     */
+    TcpNetworkData(SocketChannel channel, TlsChannel tls, IEventLoop eventLoop, Runnable closeListener,
+            Endpoint endpoint) throws IOException {
         this.channel = channel;
+        this.tls = tls;
+        this.closeListener = closeListener;
+        this.isCloseNotified = new AtomicBoolean();
+        this.lastReadTime = System.nanoTime();
+        this.lastWriteTime = lastReadTime;
         this.sender = (InetSocketAddress) channel.getRemoteAddress();
         this.receiver = (InetSocketAddress) channel.getLocalAddress();
+        this.endpoint = endpoint;
+        this.eventLoop = eventLoop;
+        this.outbound = new ConcurrentLinkedQueue<Object>();
+        this.isFlushScheduled = new AtomicBoolean();
+        this.isDelayedFlushScheduled = new AtomicBoolean();
+        this.isWritable = new AtomicBoolean(true);
+        this.isWritableNotified = true;
+        this.pendingBytes = new AtomicLong();
+        this.lowWaterMark = Long.MAX_VALUE;
+        this.highWaterMark = Long.MAX_VALUE;
+        this.flushTask = new Runnable() {
+
+            @Override
+            public void run() {
+                isFlushScheduled.set(false);
+                try {
+                    flushNow();
+                } catch (IOException e) {
+                    closeNow();
+                }
+            }
+        };
     }
 
     /**
@@ -52,13 +144,74 @@ public class TcpNetworkData implements INetworkData {
         return receiver;
     }
 
+    /**
+     * Returns the {@link Endpoint} the connection arrived on.
+     * 
+     * @return The {@link Endpoint} the connection arrived on or null.
+     */
+    @Override
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} data was last read from the
+     * connection at, or the time it was accepted at.
+     * 
+     * @return The time of the last read in nanoseconds.
+     */
+    public long getLastReadTime() {
+        return lastReadTime;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} data was last written to the
+     * connection at, or the time it was accepted at.
+     * 
+     * @return The time of the last write in nanoseconds.
+     */
+    public long getLastWriteTime() {
+        return lastWriteTime;
+    }
+
+    /**
+     * Returns the {@link SSLSession} of a TLS connection, e.g. to inspect the
+     * cipher suite or the peer certificates.
+     * 
+     * @return The {@link SSLSession} or null for a plaintext connection.
+     */
+    public SSLSession getSslSession() {
+        return tls == null ? null : tls.getSession();
+    }
+
+    /**
+     * Returns the application protocol negotiated through ALPN on a TLS
+     * connection.
+     * 
+     * @return The negotiated application protocol, an empty string if none
+     *         was negotiated, or null for a plaintext connection or if the Java
+     *         runtime does not support ALPN.
+     */
+    public String getApplicationProtocol() {
+        return tls == null ? null : tls.getApplicationProtocol();
+    }
+
+    /**
+     * Returns true as long as the connection was not closed.
+     * 
+     * @return True if the connection is open, false otherwise.
+     */
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
     /**
      * Returns the {@link InputStream} for this connection.
      * 
      * @return The {@link InputStream} for this connection.
      */
     public InputStream getTcpInputStream() {
-        return Channels.newInputStream(wrapChannel(channel));
+        return Channels.newInputStream(wrapChannel(tls == null ? channel : tls));
     }
 
     /**
@@ -67,7 +220,421 @@ public class TcpNetworkData implements INetworkData {
      * @return The {@link OutputStream} for this connection.
      */
     public OutputStream getTcpOutputStream() {
-        return Channels.newOutputStream(wrapChannel(channel));
+        return Channels.newOutputStream(wrapChannel(tls == null ? channel : tls));
+    }
+
+    /**
+     * Switches the connection to non-blocking mode. From now on the server's
+     * event loop reads from the connection and passes the data to the given
+     * handler, and data is sent with {@link #write(ByteBuffer)}. The streams of
+     * this connection must neither be in use nor be used afterwards.
+     * 
+     * @param handler
+     *            The handler receiving the events of this connection.
+     * @throws IOException
+     *             Thrown if the channel cannot be switched to non-blocking
+     *             mode.
+     */
+    public void setConnectionHandler(IConnectionHandler handler) throws IOException {
+        if (eventLoop == null) {
+            throw new IllegalStateException("The connection is not attached to an event loop.");
+        }
+        if (this.handler != null) {
+            throw new IllegalStateException("The connection already has a handler.");
+        }
+        channel.configureBlocking(false);
+        this.handler = handler;
+        eventLoop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    key = channel.register(eventLoop.getSelector(), SelectionKey.OP_READ, TcpNetworkData.this);
+                    if (pendingBytes.get() >= flushThreshold) {
+                        flushNow();
+                    }
+                    if (tls != null && tls.hasBufferedInput() && !isClosed) {
+                        // Data sent right after the handshake may already be
+                        // buffered, so OP_READ would not fire for it.
+                        read();
+                    }
+                } catch (IOException e) {
+                    closeNow();
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets when data queued in non-blocking mode is sent. By default it is
+     * sent as soon as possible. With a flush threshold, small writes are
+     * collected until at least that many bytes are queued, the given delay
+     * expired or {@link #flush()} is called, and are then sent with a single
+     * gathering write.
+     * 
+     * @param flushThreshold
+     *            The number of queued bytes triggering a flush, 0 to flush
+     *            every write.
+     * @param maxFlushDelay
+     *            The maximum time queued data waits for a flush, 0 to wait
+     *            for the threshold or an explicit flush only.
+     * @param unit
+     *            The unit of the delay.
+     */
+    public void setWriteCoalescing(int flushThreshold, long maxFlushDelay, TimeUnit unit) {
+        if (flushThreshold < 0 || maxFlushDelay < 0) {
+            throw new IllegalArgumentException("The flush threshold and delay must not be negative.");
+        }
+        this.flushThreshold = flushThreshold;
+        this.maxFlushDelayNanos = unit.toNanos(maxFlushDelay);
+    }
+
+    /**
+     * Sets the water marks signalling backpressure in non-blocking mode. Once
+     * more than highWaterMark bytes are queued for sending the connection is
+     * no longer writable, once the queue drains to lowWaterMark bytes it is
+     * writable again. Both transitions are reported to
+     * {@link IConnectionHandler#writabilityChanged(TcpNetworkData, boolean)}.
+     * 
+     * @param lowWaterMark
+     *            The number of queued bytes at which the connection becomes
+     *            writable again.
+     * @param highWaterMark
+     *            The number of queued bytes above which the connection is not
+     *            writable.
+     */
+    public void setWriteWaterMarks(long lowWaterMark, long highWaterMark) {
+        if (lowWaterMark < 0 || lowWaterMark > highWaterMark) {
+            throw new IllegalArgumentException("Invalid water marks: " + lowWaterMark + " / " + highWaterMark);
+        }
+        this.lowWaterMark = lowWaterMark;
+        this.highWaterMark = highWaterMark;
+    }
+
+    /**
+     * Returns false while more data than the high water mark is queued for
+     * sending.
+     * 
+     * @return True if the connection is writable, false otherwise.
+     * @see #setWriteWaterMarks(long, long)
+     */
+    public boolean isWritable() {
+        return isWritable.get();
+    }
+
+    /**
+     * Returns the number of bytes queued for sending in non-blocking mode.
+     * 
+     * @return The number of bytes queued for sending.
+     */
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Sends the given buffers from their position to their limit, using a
+     * single gathering write where possible. A {@link java.nio.MappedByteBuffer}
+     * is sent straight from the mapped file. In blocking mode the call returns
+     * once everything was sent. In non-blocking mode the buffers are queued for
+     * the event loop and must not be modified afterwards.
+     * 
+     * @param data
+     *            The data to send.
+     * @throws IOException
+     *             Thrown on channel errors in blocking mode.
+     */
+    public void write(ByteBuffer... data) throws IOException {
+        if (handler == null) {
+            long remaining = 0;
+            for (ByteBuffer buffer : data) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= written(write(data, 0, data.length));
+            }
+        } else {
+            long bytes = 0;
+            for (ByteBuffer buffer : data) {
+                bytes += buffer.remaining();
+                outbound.add(buffer);
+            }
+            queued(bytes);
+        }
+    }
+
+    /**
+     * Sends count bytes of the given file starting at position using
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * which lets the operating system copy the file content straight to the
+     * socket. In blocking mode the call returns once everything was sent. In
+     * non-blocking mode the region is queued for the event loop and the file
+     * must stay open until it was sent.
+     * 
+     * @param file
+     *            The file to send.
+     * @param position
+     *            The position of the first byte to send.
+     * @param count
+     *            The number of bytes to send.
+     * @throws IOException
+     *             Thrown on channel errors in blocking mode or if the file ends
+     *             before count bytes were sent.
+     */
+    public void sendFile(FileChannel file, long position, long count) throws IOException {
+        FileRegion region = new FileRegion(file, position, count);
+        if (handler == null) {
+            while (region.remaining > 0) {
+                written(region.transferTo(tls == null ? channel : tls));
+            }
+        } else {
+            outbound.add(region);
+            queued(count);
+        }
+    }
+
+    /**
+     * Sends the data queued in non-blocking mode as soon as possible. Has no
+     * effect in blocking mode.
+     */
+    public void flush() {
+        if (handler != null) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Accounts for newly queued data and decides when to flush it.
+     */
+    private void queued(long bytes) {
+        long pending = pendingBytes.addAndGet(bytes);
+        if (pending > highWaterMark && isWritable.compareAndSet(true, false)) {
+            eventLoop.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    notifyWritability();
+                }
+            });
+        }
+        if (pending >= flushThreshold) {
+            scheduleFlush();
+        } else if (maxFlushDelayNanos > 0 && isDelayedFlushScheduled.compareAndSet(false, true)) {
+            eventLoop.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    isDelayedFlushScheduled.set(false);
+                    flushTask.run();
+                }
+            }, maxFlushDelayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (isFlushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(flushTask);
+        }
+    }
+
+    /**
+     * Closes the connection. In non-blocking mode pending writes are discarded
+     * and the handler is notified on the event loop thread.
+     * 
+     * @throws IOException
+     *             Thrown on channel errors.
+     */
+    public void close() throws IOException {
+        if (handler == null) {
+            try {
+                closeChannel();
+            } finally {
+                notifyClosed();
+            }
+        } else {
+            eventLoop.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    closeNow();
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads from or writes to the channel once the event loop reports it as
+     * ready.
+     * 
+     * @param key
+     *            The ready key.
+     */
+    @Override
+    public void handleSelection(SelectionKey key) {
+        try {
+            if (key.isReadable()) {
+                read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flushNow();
+            }
+        } catch (IOException e) {
+            closeNow();
+        }
+    }
+
+    /**
+     * Reads from the channel and passes the data to the handler. A TLS
+     * connection is read until it has nothing left, as decrypted data may be
+     * buffered without the socket being readable again. Handshake messages the
+     * TLS engine could not send completely while reading are sent once the
+     * socket is writable.
+     */
+    private void read() throws IOException {
+        ByteBuffer buffer = eventLoop.getReceiveBuffer();
+        do {
+            buffer.clear();
+            int read = tls == null ? channel.read(buffer) : tls.read(buffer);
+            if (read < 0) {
+                closeNow();
+                return;
+            } else if (read == 0) {
+                if (tls != null && tls.hasPendingOutput()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+                return;
+            }
+            lastReadTime = System.nanoTime();
+            buffer.flip();
+            handler.receiveData(this, buffer);
+        } while (tls != null && !isClosed);
+    }
+
+    private long write(ByteBuffer[] data, int offset, int length) throws IOException {
+        return tls == null ? channel.write(data, offset, length) : tls.write(data, offset, length);
+    }
+
+    /**
+     * Writes as much of the queued data as the socket accepts and waits for
+     * OP_WRITE if some of it is left. Consecutive buffers are written with a
+     * single gathering write.
+     */
+    private void flushNow() throws IOException {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        if (pending == null) {
+            pending = new ArrayDeque<Object>();
+            gather = new ByteBuffer[MAX_GATHER];
+        }
+        Object next;
+        while ((next = outbound.poll()) != null) {
+            pending.add(next);
+        }
+        if (tls != null && !tls.flush()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            return;
+        }
+
+        while (!pending.isEmpty()) {
+            if (pending.peekFirst() instanceof FileRegion) {
+                FileRegion region = (FileRegion) pending.peekFirst();
+                sent(region.transferTo(tls == null ? channel : tls));
+                if (region.remaining > 0) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                pending.pollFirst();
+            } else {
+                int count = 0;
+                for (Object element : pending) {
+                    if (count == gather.length || !(element instanceof ByteBuffer)) {
+                        break;
+                    }
+                    gather[count++] = (ByteBuffer) element;
+                }
+                sent(write(gather, 0, count));
+                boolean isWritten = !gather[count - 1].hasRemaining();
+                Arrays.fill(gather, 0, count, null);
+                while (pending.peekFirst() instanceof ByteBuffer && !((ByteBuffer) pending.peekFirst()).hasRemaining()) {
+                    pending.pollFirst();
+                }
+                if (!isWritten) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+        }
+        if (tls != null && tls.hasPendingOutput()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            return;
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    private void sent(long bytes) {
+        written(bytes);
+        if (pendingBytes.addAndGet(-bytes) <= lowWaterMark && isWritable.compareAndSet(false, true)) {
+            notifyWritability();
+        }
+    }
+
+    /**
+     * Reports the current writability to the handler if it differs from the
+     * last reported one. Only called on the event loop thread, so the handler
+     * sees the transitions in order.
+     */
+    private void notifyWritability() {
+        boolean writable = isWritable.get();
+        if (writable != isWritableNotified) {
+            isWritableNotified = writable;
+            handler.writabilityChanged(this, writable);
+        }
+    }
+
+    private void closeNow() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            closeChannel();
+        } catch (IOException e) {
+            // Intentionally left empty
+        }
+        outbound.clear();
+        if (pending != null) {
+            pending.clear();
+        }
+        notifyClosed();
+        handler.connectionClosed(this);
+    }
+
+    /**
+     * Closes the channel. A TLS connection tries to send a close notification
+     * first and hands its buffers back to the pool.
+     */
+    private void closeChannel() throws IOException {
+        if (tls == null) {
+            channel.close();
+        } else {
+            tls.close();
+        }
+    }
+
+    private long written(long bytes) {
+        if (bytes > 0) {
+            lastWriteTime = System.nanoTime();
+        }
+        return bytes;
+    }
+
+    private void notifyClosed() {
+        if (closeListener != null && isCloseNotified.compareAndSet(false, true)) {
+            closeListener.run();
+        }
     }
 
     /**
@@ -88,7 +655,7 @@ public class TcpNetworkData implements INetworkData {
              */
             @Override
             public int write(ByteBuffer src) throws IOException {
-                return channel.write(src);
+                return (int) written(channel.write(src));
             }
 
             /**
@@ -101,7 +668,11 @@ public class TcpNetworkData implements INetworkData {
              */
             @Override
             public int read(ByteBuffer dst) throws IOException {
-                return channel.read(dst);
+                int read = channel.read(dst);
+                if (read > 0) {
+                    lastReadTime = System.nanoTime();
+                }
+                return read;
             }
 
             /**
@@ -122,11 +693,41 @@ public class TcpNetworkData implements INetworkData {
              */
             @Override
             public void close() throws IOException {
-                channel.close();
+                try {
+                    channel.close();
+                } finally {
+                    notifyClosed();
+                }
             }
         };
     }
 
+    /**
+     * A region of a file queued for sending.
+     */
+    private static class FileRegion {
+
+        private final FileChannel file;
+        private long position;
+        private long remaining;
+
+        FileRegion(FileChannel file, long position, long count) {
+            this.file = file;
+            this.position = position;
+            this.remaining = count;
+        }
+
+        long transferTo(WritableByteChannel channel) throws IOException {
+            long transferred = file.transferTo(position, remaining, channel);
+            if (transferred == 0 && position >= file.size()) {
+                throw new IOException("End of file reached with " + remaining + " bytes left to send.");
+            }
+            position += transferred;
+            remaining -= transferred;
+            return transferred;
+        }
+    }
+
     /**
      * Returns the {@link TcpNetworkData} as string object.
      * 
@@ -0,0 +1,594 @@
+package net.dschinghiskahn.server.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Encrypts and decrypts the data of a {@link SocketChannel} with an
+ * {@link SSLEngine}. The channel works in blocking and in non-blocking mode:
+ * in non-blocking mode reads and writes return 0 instead of waiting for the
+ * socket. The network and application buffers are leased from a
+ * {@link BufferPool} and handed back once the channel is closed.
+ */
+public class TlsChannel implements ByteChannel, GatheringByteChannel {
+
+    /**
+     * Returned by {@link #handshake(Executor, Runnable)} while the delegated
+     * tasks of the engine are running on the executor.
+     */
+    public static final int TASKS_PENDING = -1;
+    private static final ByteBuffer[] EMPTY = { ByteBuffer.allocate(0) };
+    private static final Method GET_APPLICATION_PROTOCOL = findGetApplicationProtocol();
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final BufferPool bufferPool;
+    private final ReentrantLock readLock;
+    private final ReentrantLock writeLock;
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private ByteBuffer appIn;
+    private boolean isInboundDone;
+    private boolean isHandshakeStarted;
+    private volatile boolean isHandshakeDone;
+
+    /**
+     * Creates a TLS channel over the given {@link SocketChannel}. The engine
+     * must be in server or client mode already.
+     *
+     * @param channel
+     *            The {@link SocketChannel} carrying the encrypted data.
+     * @param engine
+     *            The {@link SSLEngine} of the connection.
+     * @param bufferPool
+     *            The pool the buffers are leased from.
+     */
+    public TlsChannel(SocketChannel channel, SSLEngine engine, BufferPool bufferPool) {
+        this.channel = channel;
+        this.engine = engine;
+        this.bufferPool = bufferPool;
+        this.readLock = new ReentrantLock();
+        this.writeLock = new ReentrantLock();
+        SSLSession session = engine.getSession();
+        this.netIn = lease(session.getPacketBufferSize());
+        this.netOut = lease(session.getPacketBufferSize());
+        this.appIn = lease(session.getApplicationBufferSize());
+    }
+
+    /**
+     * Returns the {@link SSLSession} of the connection.
+     *
+     * @return The {@link SSLSession} of the connection.
+     */
+    public SSLSession getSession() {
+        return engine.getSession();
+    }
+
+    /**
+     * Returns the application protocol negotiated through ALPN.
+     *
+     * @return The negotiated application protocol, an empty string if none
+     *         was negotiated, or null if the Java runtime does not support
+     *         ALPN or the handshake is not done.
+     */
+    public String getApplicationProtocol() {
+        if (GET_APPLICATION_PROTOCOL == null) {
+            return null;
+        }
+        try {
+            return (String) GET_APPLICATION_PROTOCOL.invoke(engine);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns true once the initial handshake completed.
+     *
+     * @return True if the handshake completed, false otherwise.
+     */
+    public boolean isHandshakeDone() {
+        return isHandshakeDone;
+    }
+
+    /**
+     * Continues the initial handshake as far as possible without waiting for
+     * the socket. Meant to be called by an event loop whenever the socket is
+     * ready for the returned operations.
+     *
+     * @return 0 once the handshake completed, otherwise the
+     *         {@link SelectionKey} operations to wait for.
+     * @throws IOException
+     *             Thrown if the handshake failed or the remote side closed
+     *             the connection.
+     */
+    public int handshake() throws IOException {
+        return handshake(null, null);
+    }
+
+    /**
+     * Continues the initial handshake as far as possible without waiting for
+     * the socket or for the delegated tasks of the engine, e.g. the validation
+     * of a certificate. The tasks run on the given executor, so they do not
+     * block an event loop. Once they are done the given callback is run on the
+     * executor's thread, after which the handshake must be continued.
+     *
+     * @param taskExecutor
+     *            The executor running the delegated tasks or null to run them
+     *            on the calling thread.
+     * @param tasksDone
+     *            Run once the delegated tasks are done, e.g. to continue the
+     *            handshake on the event loop. Not used if no executor is given.
+     * @return 0 once the handshake completed, {@link #TASKS_PENDING} while the
+     *         delegated tasks are running, otherwise the {@link SelectionKey}
+     *         operations to wait for.
+     * @throws IOException
+     *             Thrown if the handshake failed or the remote side closed
+     *             the connection.
+     */
+    public int handshake(Executor taskExecutor, Runnable tasksDone) throws IOException {
+        readLock.lock();
+        writeLock.lock();
+        try {
+            checkOpen();
+            if (!isHandshakeStarted) {
+                isHandshakeStarted = true;
+                engine.beginHandshake();
+            }
+            while (true) {
+                HandshakeStatus status = engine.getHandshakeStatus();
+                if (status == HandshakeStatus.NEED_TASK) {
+                    if (taskExecutor == null) {
+                        runDelegatedTasks();
+                    } else if (runDelegatedTasks(taskExecutor, tasksDone)) {
+                        return TASKS_PENDING;
+                    }
+                } else if (status == HandshakeStatus.NEED_WRAP) {
+                    wrap(EMPTY, 0, 1);
+                } else if (!flushNetOut()) {
+                    // Consecutive handshake records are sent with a single
+                    // write, so Nagle's algorithm does not delay the flight.
+                    return SelectionKey.OP_WRITE;
+                } else if (status == HandshakeStatus.NOT_HANDSHAKING || status == HandshakeStatus.FINISHED) {
+                    isHandshakeDone = true;
+                    return 0;
+                } else {
+                    SSLEngineResult result = unwrap();
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        int read = channel.read(netIn);
+                        if (read < 0) {
+                            throw new EOFException("The connection was closed during the TLS handshake.");
+                        } else if (read == 0) {
+                            return SelectionKey.OP_READ;
+                        }
+                    } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new SSLException("The TLS handshake was aborted.");
+                    }
+                }
+            }
+        } finally {
+            writeLock.unlock();
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Reads and decrypts data from the socket. Handshake messages the engine
+     * produces while reading, e.g. a key update, are sent right away. In
+     * non-blocking mode the socket may not accept all of them, in which case
+     * {@link #hasPendingOutput()} returns true and {@link #flush()} must be
+     * called once the socket is writable.
+     *
+     * @param dst
+     *            The buffer to read into.
+     * @return The number of bytes read, 0 if no data is available in
+     *         non-blocking mode, or -1 once the remote side closed the
+     *         connection.
+     * @throws IOException
+     *             Thrown on channel or TLS errors.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        readLock.lock();
+        try {
+            checkOpen();
+            while (true) {
+                if (appIn.position() > 0) {
+                    appIn.flip();
+                    int count = Math.min(appIn.remaining(), dst.remaining());
+                    ByteBuffer slice = appIn.duplicate();
+                    slice.limit(slice.position() + count);
+                    dst.put(slice);
+                    appIn.position(appIn.position() + count);
+                    appIn.compact();
+                    return count;
+                }
+                if (isInboundDone) {
+                    return -1;
+                }
+                if (!dst.hasRemaining()) {
+                    return 0;
+                }
+                SSLEngineResult result = unwrap();
+                switch (result.getStatus()) {
+                case BUFFER_UNDERFLOW:
+                    int read = channel.read(netIn);
+                    if (read < 0) {
+                        isInboundDone = true;
+                    } else if (read == 0) {
+                        return 0;
+                    }
+                    break;
+                case CLOSED:
+                    isInboundDone = true;
+                    break;
+                default:
+                    if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+                        runDelegatedTasks();
+                    }
+                    if (engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) {
+                        respond();
+                    }
+                    break;
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Encrypts and sends the given data.
+     *
+     * @param src
+     *            The data to send.
+     * @return The number of bytes taken from the buffer.
+     * @throws IOException
+     *             Thrown on channel or TLS errors.
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[] { src }, 0, 1);
+    }
+
+    /**
+     * Encrypts and sends the given data.
+     *
+     * @param srcs
+     *            The data to send.
+     * @return The number of bytes taken from the buffers.
+     * @throws IOException
+     *             Thrown on channel or TLS errors.
+     */
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    /**
+     * Encrypts and sends as much of the given data as the socket accepts. In
+     * blocking mode everything is sent before the call returns. In non-blocking
+     * mode encrypted data the socket did not accept is kept until
+     * {@link #flush()} is called.
+     *
+     * @param srcs
+     *            The data to send.
+     * @param offset
+     *            The index of the first buffer to send.
+     * @param length
+     *            The number of buffers to send.
+     * @return The number of bytes taken from the buffers.
+     * @throws IOException
+     *             Thrown on channel or TLS errors.
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        writeLock.lock();
+        try {
+            checkOpen();
+            long consumed = 0;
+            while (flushNetOut() && hasRemaining(srcs, offset, length)) {
+                SSLEngineResult result = wrap(srcs, offset, length);
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    throw new ClosedChannelException();
+                }
+                consumed += result.bytesConsumed();
+                if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                }
+            }
+            return consumed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sends the encrypted data the socket did not accept so far.
+     *
+     * @return True if nothing is left to send, false otherwise.
+     * @throws IOException
+     *             Thrown on channel errors.
+     */
+    public boolean flush() throws IOException {
+        writeLock.lock();
+        try {
+            return netOut == null || flushNetOut();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true while received data is buffered which was not read yet,
+     * either still encrypted or already decrypted. Such data may arrive with
+     * the last handshake records, so the socket does not become readable for
+     * it again.
+     *
+     * @return True if received data is buffered, false otherwise.
+     */
+    public boolean hasBufferedInput() {
+        readLock.lock();
+        try {
+            return netIn != null && (netIn.position() > 0 || appIn.position() > 0);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true while encrypted data is waiting to be sent.
+     *
+     * @return True if encrypted data is waiting to be sent, false otherwise.
+     */
+    public boolean hasPendingOutput() {
+        writeLock.lock();
+        try {
+            return netOut != null && netOut.position() > 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the wrapped channel is open, false otherwise.
+     *
+     * @return True if the wrapped channel is open, false otherwise.
+     */
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Sends a close notification if possible without waiting, closes the
+     * wrapped channel and hands the buffers back to the pool.
+     *
+     * @throws IOException
+     *             Thrown on channel errors.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writeLock.tryLock()) {
+            try {
+                if (netOut != null && isHandshakeDone && channel.isOpen() && !channel.isBlocking()) {
+                    engine.closeOutbound();
+                    wrap(EMPTY, 0, 1);
+                    flushNetOut();
+                }
+            } catch (IOException e) {
+                // Intentionally left empty
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        try {
+            channel.close();
+        } finally {
+            readLock.lock();
+            writeLock.lock();
+            try {
+                release(netIn);
+                release(netOut);
+                release(appIn);
+                netIn = null;
+                netOut = null;
+                appIn = null;
+            } finally {
+                writeLock.unlock();
+                readLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Sends the handshake messages the engine produced while reading, e.g. a
+     * key update. Waits for the write lock, which is only held for the
+     * duration of a write. Whatever the socket does not accept stays in the
+     * network buffer and is reported by {@link #hasPendingOutput()}.
+     */
+    private void respond() throws IOException {
+        writeLock.lock();
+        try {
+            while (engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) {
+                if (wrap(EMPTY, 0, 1).getStatus() == SSLEngineResult.Status.CLOSED) {
+                    break;
+                }
+            }
+            flushNetOut();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private SSLEngineResult unwrap() throws SSLException {
+        while (true) {
+            netIn.flip();
+            SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+            }
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+            } else if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW
+                    && !netIn.hasRemaining()) {
+                netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+            } else {
+                return result;
+            }
+        }
+    }
+
+    private SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        while (true) {
+            SSLEngineResult result = engine.wrap(srcs, offset, length, netOut);
+            if (result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                return result;
+            }
+            if (netOut.position() > 0) {
+                if (!flushNetOut()) {
+                    return result;
+                }
+            } else {
+                netOut = grow(netOut, engine.getSession().getPacketBufferSize());
+            }
+        }
+    }
+
+    /**
+     * Writes the encrypted data to the socket. Returns false if the socket did
+     * not accept all of it.
+     */
+    private boolean flushNetOut() throws IOException {
+        if (netOut.position() == 0) {
+            return true;
+        }
+        netOut.flip();
+        try {
+            while (netOut.hasRemaining()) {
+                if (channel.write(netOut) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            netOut.compact();
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Runs the delegated tasks on the given executor, followed by the given
+     * callback. Returns false if the executor rejected them, in which case
+     * they were run on the calling thread.
+     */
+    private boolean runDelegatedTasks(Executor taskExecutor, final Runnable tasksDone) {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            tasks.add(task);
+        }
+        try {
+            taskExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        for (Runnable task : tasks) {
+                            task.run();
+                        }
+                    } finally {
+                        tasksDone.run();
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            for (Runnable rejected : tasks) {
+                rejected.run();
+            }
+            return false;
+        }
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (netIn == null) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] srcs, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (srcs[i].hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the given buffer by a larger one, keeping its content. Used
+     * when the session requires larger buffers than at the start.
+     */
+    private ByteBuffer grow(ByteBuffer buffer, int size) {
+        ByteBuffer larger = lease(Math.max(size, buffer.capacity() * 2));
+        larger.clear();
+        buffer.flip();
+        larger.put(buffer);
+        release(buffer);
+        return larger;
+    }
+
+    private ByteBuffer lease(int size) {
+        if (size > bufferPool.getMaxBufferSize()) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        ByteBuffer buffer = bufferPool.lease(size);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer back to the pool. The pool rounds leases up to its size
+     * classes, so only the pool can tell a leased buffer from one allocated
+     * by {@link #lease(int)} beyond the pool's maximum size.
+     */
+    private void release(ByteBuffer buffer) {
+        if (buffer != null) {
+            bufferPool.tryRelease(buffer);
+        }
+    }
+
+    private static Method findGetApplicationProtocol() {
+        try {
+            return SSLEngine.class.getMethod("getApplicationProtocol");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -11,6 +11,10 @@ public class UdpNetworkData implements INetworkData {
     private final ByteBuffer data;
     private final InetSocketAddress sender;
     private final InetSocketAddress receiver;
+    private final BufferPool pool;
+    private final IDatagramSender replySender;
+    private final Endpoint endpoint;
+    private boolean isReleased;
 
     /**
      * Creates a UDP connection object.
@@ -23,13 +27,46 @@ public class UdpNetworkData implements INetworkData {
      *            The receivers location.
      */
     public UdpNetworkData(ByteBuffer data, InetSocketAddress sender, InetSocketAddress receiver) {
+        this(data, sender, receiver, null, null, null);
+    }
+
+    /**
+     * Creates a UDP connection object which arrived on the given
+     * {@link Endpoint} of the server and can be replied to. Used by
+     * {@link NetworkDataFactory}.
+     * 
+     * @param data
+     *            The data that was received.
+     * @param sender
+     *            The senders location.
+     * @param receiver
+     *            The receivers location.
+     * @param pool
+     *            The pool the data was leased from or null.
+     * @param replySender
+     *            The sender of the socket the datagram was received on or
+     *            null.
+     * @param endpoint
+     *            The endpoint the datagram arrived on or null.
+     */
+    UdpNetworkData(ByteBuffer data, InetSocketAddress sender, InetSocketAddress receiver, BufferPool pool,
+            IDatagramSender replySender, Endpoint endpoint) {
         this.data = data;
         this.sender = sender;
         this.receiver = receiver;
+        this.pool = pool;
+        this.replySender = replySender;
+        this.endpoint = endpoint;
     }
 
     /**
-     * Returns the UDP data that was received.
+     * Returns the UDP data that was received. If the
+     * {@link net.dschinghiskahn.server.Server} pools UDP buffers, the data is
+     * leased from its {@link BufferPool}, so the buffer is direct:
+     * {@link ByteBuffer#hasArray()} returns false and {@link ByteBuffer#array()}
+     * throws an {@link UnsupportedOperationException}. Copy the data with
+     * {@link ByteBuffer#get(byte[])} instead. A pooled buffer is only valid
+     * until {@link #release()} is called.
      * 
      * @return The UDP data that was received.
      */
@@ -37,6 +74,42 @@ public class UdpNetworkData implements INetworkData {
         return data;
     }
 
+    /**
+     * Hands the UDP data back to the {@link BufferPool} it was leased from.
+     * The data must not be accessed after calling this method. Calling it more
+     * than once or on data that was not leased has no effect.
+     */
+    public void release() {
+        synchronized (this) {
+            if (isReleased) {
+                return;
+            }
+            isReleased = true;
+        }
+        if (pool != null) {
+            pool.release(data);
+        }
+    }
+
+    /**
+     * Sends a datagram back to the sender from the socket this datagram was
+     * received on, so the reply passes the same NAT mappings and firewall
+     * rules. Replies are queued and sent in batches by the server's event
+     * loop, so the buffer must not be modified afterwards. May be called from
+     * any thread and after {@link #release()}. If too many replies of the
+     * socket are waiting or the server was shut down, the reply is dropped and
+     * counted as send failure.
+     * 
+     * @param data
+     *            The content of the reply from its position to its limit.
+     */
+    public void reply(ByteBuffer data) {
+        if (replySender == null) {
+            throw new IllegalStateException("The datagram was not received by a server socket.");
+        }
+        replySender.send(data, sender);
+    }
+
     /**
      * Returns the {@link InetSocketAddress} of the sender.
      * 
@@ -57,6 +130,16 @@ public class UdpNetworkData implements INetworkData {
         return receiver;
     }
 
+    /**
+     * Returns the {@link Endpoint} the datagram arrived on.
+     * 
+     * @return The {@link Endpoint} the datagram arrived on or null.
+     */
+    @Override
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
     /**
      * Returns the {@link UdpNetworkData} as string object.
      * 
@@ -0,0 +1,115 @@
+package net.dschinghiskahn.server.net;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Represents a batch of UDP datagrams the server received during a single
+ * wakeup. Batches are only delivered if the server was configured with a UDP
+ * batch size greater than one.
+ */
+public class UdpNetworkDataBatch implements INetworkData, Iterable<UdpNetworkData> {
+
+    private final List<UdpNetworkData> datagrams;
+
+    /**
+     * Creates a batch of the first count datagrams of the given array. The
+     * array is copied and may be reused by the caller.
+     * 
+     * @param datagrams
+     *            The datagrams that were received.
+     * @param count
+     *            The number of datagrams to take from the array.
+     */
+    public UdpNetworkDataBatch(UdpNetworkData[] datagrams, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("A batch must contain at least one datagram: " + count);
+        }
+        this.datagrams = Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(datagrams, count)));
+    }
+
+    /**
+     * Returns the datagrams of this batch in the order they were received.
+     * 
+     * @return The datagrams of this batch.
+     */
+    public List<UdpNetworkData> getDatagrams() {
+        return datagrams;
+    }
+
+    /**
+     * Returns the number of datagrams in this batch.
+     * 
+     * @return The number of datagrams in this batch.
+     */
+    public int size() {
+        return datagrams.size();
+    }
+
+    /**
+     * Returns an {@link Iterator} over the datagrams of this batch.
+     * 
+     * @return An {@link Iterator} over the datagrams of this batch.
+     */
+    @Override
+    public Iterator<UdpNetworkData> iterator() {
+        return datagrams.iterator();
+    }
+
+    /**
+     * Releases the data of every datagram in this batch.
+     * 
+     * @see UdpNetworkData#release()
+     */
+    public void release() {
+        for (UdpNetworkData datagram : datagrams) {
+            datagram.release();
+        }
+    }
+
+    /**
+     * Returns the {@link InetSocketAddress} of the sender of the first
+     * datagram.
+     * 
+     * @return The {@link InetSocketAddress} of the sender of the first
+     *         datagram.
+     */
+    @Override
+    public InetSocketAddress getSender() {
+        return datagrams.get(0).getSender();
+    }
+
+    /**
+     * Returns the {@link InetSocketAddress} of the receiver.
+     * 
+     * @return The {@link InetSocketAddress} of the receiver
+     */
+    @Override
+    public InetSocketAddress getReceiver() {
+        return datagrams.get(0).getReceiver();
+    }
+
+    /**
+     * Returns the {@link Endpoint} the datagrams arrived on.
+     * 
+     * @return The {@link Endpoint} the datagrams arrived on or null.
+     */
+    @Override
+    public Endpoint getEndpoint() {
+        return datagrams.get(0).getEndpoint();
+    }
+
+    /**
+     * Returns the {@link UdpNetworkDataBatch} as string object.
+     * 
+     * @return The {@link UdpNetworkDataBatch} as string object.
+     */
+    @Override
+    public String toString() {
+        return "UdpNetworkDataBatch [size=" + datagrams.size() + ", receiver=" + getReceiver() + "]";
+    }
+
+}
@@ -0,0 +1,181 @@
+package net.dschinghiskahn.server.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The state the server keeps for a single UDP peer, identified by its
+ * {@link InetSocketAddress} and the socket it sends to. Sessions are created
+ * when the first datagram of a peer arrives and are closed once the peer was
+ * idle for longer than the idle timeout.
+ */
+public class UdpSession {
+
+    private final InetSocketAddress remoteAddress;
+    private final IEventLoop eventLoop;
+    private final IUdpSessionHandler handler;
+    private final ConcurrentMap<InetSocketAddress, UdpSession> sessions;
+    private final AtomicBoolean isClosed;
+    private volatile DatagramChannel channel;
+    private volatile long lastActivity;
+    private volatile Object attachment;
+
+    /**
+     * Creates a session. The caller adds it to the given session table.
+     * 
+     * @param remoteAddress
+     *            The address of the peer.
+     * @param channel
+     *            The socket the peer sends to.
+     * @param eventLoop
+     *            The event loop owning the socket.
+     * @param handler
+     *            The handler receiving the events of the session.
+     * @param sessions
+     *            The session table of the socket, which the session is
+     *            removed from when it is closed.
+     */
+    public UdpSession(InetSocketAddress remoteAddress, DatagramChannel channel, IEventLoop eventLoop,
+            IUdpSessionHandler handler, ConcurrentMap<InetSocketAddress, UdpSession> sessions) {
+        this.remoteAddress = remoteAddress;
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.handler = handler;
+        this.sessions = sessions;
+        this.isClosed = new AtomicBoolean();
+        this.lastActivity = System.nanoTime();
+    }
+
+    /**
+     * Marks the session active and remembers the socket the last datagram
+     * arrived on, which is used for replies.
+     * 
+     * @param channel
+     *            The socket the datagram arrived on.
+     */
+    public void touch(DatagramChannel channel) {
+        this.channel = channel;
+        this.lastActivity = System.nanoTime();
+    }
+
+    /**
+     * Returns the address of the peer.
+     * 
+     * @return The address of the peer.
+     */
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} the last datagram of the peer
+     * arrived at.
+     * 
+     * @return The time of the last activity in nanoseconds.
+     */
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * Returns the event loop delivering the datagrams of the session.
+     * 
+     * @return The event loop of the session.
+     */
+    public IEventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    /**
+     * Attaches arbitrary protocol state to the session.
+     * 
+     * @param attachment
+     *            The state to attach or null.
+     */
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * Returns the protocol state attached to the session.
+     * 
+     * @return The attached state or null.
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    /**
+     * Sends a datagram to the peer from the socket its last datagram arrived
+     * on. May be called from any thread.
+     * 
+     * @param data
+     *            The content of the datagram.
+     * @return False if the socket's send buffer was full and the datagram was
+     *         dropped.
+     * @throws IOException
+     *             Thrown on socket errors.
+     */
+    public boolean reply(ByteBuffer data) throws IOException {
+        return channel.send(data, remoteAddress) > 0 || !data.hasRemaining();
+    }
+
+    /**
+     * Returns if the session was closed.
+     * 
+     * @return True if the session was closed.
+     */
+    public boolean isClosed() {
+        return isClosed.get();
+    }
+
+    /**
+     * Closes the session. The handler is notified on the session's event loop.
+     * A new session is created if the peer sends again.
+     */
+    public void close() {
+        eventLoop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                closeNow();
+            }
+        });
+    }
+
+    /**
+     * Closes the session if it has been idle for at least the given time. Must
+     * be called on the session's event loop.
+     * 
+     * @param idleTimeout
+     *            The idle timeout in nanoseconds.
+     * @param now
+     *            The current {@link System#nanoTime()}.
+     */
+    public void closeIfIdle(long idleTimeout, long now) {
+        if (now - lastActivity >= idleTimeout) {
+            closeNow();
+        }
+    }
+
+    private void closeNow() {
+        if (isClosed.compareAndSet(false, true)) {
+            sessions.remove(remoteAddress, this);
+            handler.sessionClosed(this);
+        }
+    }
+
+    /**
+     * Returns the {@link UdpSession} as string object.
+     * 
+     * @return The {@link UdpSession} as string object.
+     */
+    @Override
+    public String toString() {
+        return "UdpSession [remoteAddress=" + remoteAddress + ", closed=" + isClosed + "]";
+    }
+}
@@ -0,0 +1,54 @@
+package net.dschinghiskahn.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HashedWheelTimerTest {
+
+	private final List<String> fired = new ArrayList<String>();
+
+	private Runnable task(final String name) {
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				fired.add(name);
+			}
+		};
+	}
+
+	@Test(timeout = 1000)
+	public void expiry() throws InterruptedException {
+		System.out.println(getClass().getSimpleName()+" - Running test: expiry()");
+		HashedWheelTimer timer = new HashedWheelTimer(5, TimeUnit.MILLISECONDS, 4);
+		timer.newTimeout(task("late"), TimeUnit.MILLISECONDS.toNanos(60));
+		timer.newTimeout(task("early"), TimeUnit.MILLISECONDS.toNanos(10));
+		HashedWheelTimer.Timeout cancelled = timer.newTimeout(task("cancelled"), TimeUnit.MILLISECONDS.toNanos(10));
+		cancelled.cancel();
+		Assert.assertEquals(2, timer.size());
+
+		while (timer.size() > 0) {
+			Thread.sleep(Math.max(1, TimeUnit.NANOSECONDS.toMillis(timer.nanosUntilNextTick())));
+			timer.advance(null);
+		}
+
+		Assert.assertEquals(Arrays.asList("early", "late"), fired);
+		Assert.assertEquals(-1, timer.nanosUntilNextTick());
+	}
+
+	@Test
+	public void notExpired() {
+		System.out.println(getClass().getSimpleName()+" - Running test: notExpired()");
+		HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.SECONDS, 8);
+		timer.newTimeout(task("task"), TimeUnit.SECONDS.toNanos(20));
+		timer.advance(null);
+
+		Assert.assertTrue(fired.isEmpty());
+		Assert.assertEquals(1, timer.size());
+	}
+}
@@ -0,0 +1,51 @@
+package net.dschinghiskahn.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void empty() {
+		System.out.println(getClass().getSimpleName()+" - Running test: empty()");
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		Assert.assertEquals(0, histogram.getCount());
+		Assert.assertEquals(0, histogram.getPercentile(99));
+		Assert.assertEquals(0, histogram.getMean(), 0);
+	}
+
+	@Test
+	public void percentiles() {
+		System.out.println(getClass().getSimpleName()+" - Running test: percentiles()");
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000);
+		}
+
+		Assert.assertEquals(1000, histogram.getCount());
+		Assert.assertEquals(1000000, histogram.getMax());
+		Assert.assertEquals(500500, histogram.getMean(), 0.001);
+		assertWithin(500000, histogram.getPercentile(50));
+		assertWithin(990000, histogram.getPercentile(99));
+		Assert.assertEquals(1000000, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void smallValues() {
+		System.out.println(getClass().getSimpleName()+" - Running test: smallValues()");
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(3);
+		histogram.record(7);
+
+		Assert.assertEquals(0, histogram.getPercentile(0));
+		Assert.assertEquals(3, histogram.getPercentile(50));
+		Assert.assertEquals(7, histogram.getPercentile(100));
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		Assert.assertTrue("Expected " + expected + " but was " + actual,
+				actual >= expected && actual <= expected + expected / 16);
+	}
+}
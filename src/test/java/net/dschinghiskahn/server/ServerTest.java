@@ -2,16 +2,52 @@ package net.dschinghiskahn.server;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
 import java.net.Socket;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -19,9 +55,20 @@ import org.junit.Before;
 import org.junit.Test;
 
 import net.dschinghiskahn.objectdecoupler.IObjectReceiver;
+import net.dschinghiskahn.server.net.BufferPool;
+import net.dschinghiskahn.server.net.Endpoint;
+import net.dschinghiskahn.server.net.FrameEncoder;
+import net.dschinghiskahn.server.net.IConnectionHandler;
+import net.dschinghiskahn.server.net.IFrameHandler;
+import net.dschinghiskahn.server.net.IUdpSessionHandler;
 import net.dschinghiskahn.server.net.INetworkData;
+import net.dschinghiskahn.server.net.LengthFieldFrameDecoder;
+import net.dschinghiskahn.server.net.LengthFieldFrameEncoder;
+import net.dschinghiskahn.server.net.ListenerOptions;
 import net.dschinghiskahn.server.net.TcpNetworkData;
 import net.dschinghiskahn.server.net.UdpNetworkData;
+import net.dschinghiskahn.server.net.UdpNetworkDataBatch;
+import net.dschinghiskahn.server.net.UdpSession;
 
 public class ServerTest implements IObjectReceiver<INetworkData> {
 
@@ -29,10 +76,12 @@ public class ServerTest implements IObjectReceiver<INetworkData> {
 	public static final String HOSTNAME = "localhost";
 	private Server server;
 	private INetworkData networkData;
+	private volatile Thread receivingThread;
 	private String read;
 
 	@Override
 	public void receiveObject(INetworkData networkData) {
+		this.receivingThread = Thread.currentThread();
 		this.networkData = networkData;
 	}
 
@@ -67,7 +116,7 @@ public class ServerTest implements IObjectReceiver<INetworkData> {
 		System.out.println(getClass().getSimpleName()+" - Running test: stop()");
 		server.shutdown();
 		for (Thread thread : Thread.getAllStackTraces().keySet()) {
-			Assert.assertFalse(thread.getName().equals("ServerWorker0"));
+			Assert.assertFalse(thread.getName().equals("ServerWorker-" + PORT + "-0"));
 		}
 	}
 
@@ -180,6 +229,289 @@ public class ServerTest implements IObjectReceiver<INetworkData> {
 		socket.close();
 	}
 
+	@Test(timeout = 1000)
+	public void udpPooledData() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: udpPooledData()");
+		server.setUdpBufferPooling(true);
+		DatagramSocket socket = new DatagramSocket();
+		DatagramPacket packet = new DatagramPacket("test".getBytes(), 4, InetAddress.getByName(HOSTNAME), PORT);
+		socket.send(packet);
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		ByteBuffer data = ((UdpNetworkData) networkData).getUdpData();
+		byte[] bytes = new byte[data.remaining()];
+		data.get(bytes);
+		Assert.assertEquals("test", new String(bytes));
+		Assert.assertEquals(1, server.getBufferPool().getLeases());
+
+		((UdpNetworkData) networkData).release();
+		((UdpNetworkData) networkData).release();
+		Assert.assertEquals(1, server.getBufferPool().getReleases());
+		Assert.assertEquals(1, server.getBufferPool().getSlabAllocations());
+
+		socket.close();
+	}
+
+	@Test(timeout = 1000)
+	public void udpHeapData() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: udpHeapData()");
+		DatagramSocket socket = new DatagramSocket();
+		DatagramPacket packet = new DatagramPacket("test".getBytes(), 4, InetAddress.getByName(HOSTNAME), PORT);
+		socket.send(packet);
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		ByteBuffer data = ((UdpNetworkData) networkData).getUdpData();
+		Assert.assertTrue(data.hasArray());
+		Assert.assertEquals("test", new String(data.array(), data.arrayOffset() + data.position(), data.remaining()));
+		((UdpNetworkData) networkData).release();
+		Assert.assertEquals(0, server.getBufferPool().getLeases());
+		Assert.assertEquals(0, server.getBufferPool().getReleases());
+
+		socket.close();
+	}
+
+	@Test(timeout = 5000)
+	public void bufferPoolReuse() {
+		System.out.println(getClass().getSimpleName()+" - Running test: bufferPoolReuse()");
+		BufferPool pool = new BufferPool(20000);
+		ByteBuffer buffer = pool.lease(1400);
+		pool.release(buffer);
+		ByteBuffer rounded = pool.lease(20000);
+		Assert.assertEquals(32768, rounded.capacity());
+		Assert.assertTrue(pool.tryRelease(rounded));
+		Assert.assertFalse(pool.tryRelease(ByteBuffer.allocateDirect(32768)));
+		try {
+			pool.release(buffer);
+			Assert.fail("A buffer was released twice.");
+		} catch (IllegalArgumentException e) {
+			// Intentionally left empty.
+		}
+		try {
+			pool.release(ByteBuffer.allocateDirect(buffer.capacity()));
+			Assert.fail("A foreign buffer was released.");
+		} catch (IllegalArgumentException e) {
+			// Intentionally left empty.
+		}
+		Assert.assertEquals(2, pool.getReleases());
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		for (int i = 0; i < 100000; i++) {
+			pool.release(pool.lease(i % 20000));
+		}
+		long allocated = threads.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < 100000; i++) {
+			pool.release(pool.lease(i % 20000));
+		}
+		allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+		// Less than a byte per lease, anything allocated per lease takes at least 16.
+		Assert.assertTrue("Allocated " + allocated + " bytes.", allocated < 100000);
+		Assert.assertEquals(pool.getLeases(), pool.getReleases());
+	}
+
+	@Test(timeout = 1000)
+	public void udpReply() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: udpReply()");
+		DatagramSocket socket = new DatagramSocket();
+		socket.send(new DatagramPacket("ping".getBytes(), 4, InetAddress.getByName(HOSTNAME), PORT));
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		UdpNetworkData datagram = (UdpNetworkData) networkData;
+		Assert.assertEquals(socket.getLocalPort(), datagram.getSender().getPort());
+		datagram.release();
+		for (String text : new String[] { "a", "b", "c" }) {
+			datagram.reply(ByteBuffer.wrap(text.getBytes()));
+		}
+		for (String expected : new String[] { "a", "b", "c" }) {
+			DatagramPacket packet = new DatagramPacket(new byte[16], 16);
+			socket.receive(packet);
+			Assert.assertEquals(expected, new String(packet.getData(), 0, packet.getLength()));
+			Assert.assertEquals(PORT, packet.getPort());
+		}
+		ListenerStats stats = server.getListenerStats().get(0);
+		while (stats.getUdpDatagramsSent() < 3) {
+			Thread.sleep(1);
+		}
+		Assert.assertEquals(3, stats.getUdpBytesSent());
+		Assert.assertEquals(0, stats.getUdpSendFailures());
+
+		server.shutdown();
+		datagram.reply(ByteBuffer.wrap("d".getBytes()));
+		Assert.assertEquals(3, stats.getUdpDatagramsSent());
+		Assert.assertEquals(1, stats.getUdpSendFailures());
+
+		socket.close();
+	}
+
+	@Test(timeout = 1000)
+	public void udpBatch() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: udpBatch()");
+		server.setUdpBatchSize(16);
+		DatagramSocket socket = new DatagramSocket();
+		DatagramPacket packet = new DatagramPacket("test".getBytes(), 4, InetAddress.getByName(HOSTNAME), PORT);
+		socket.send(packet);
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		Assert.assertTrue(String.valueOf(networkData), networkData instanceof UdpNetworkDataBatch);
+		UdpNetworkDataBatch batch = (UdpNetworkDataBatch) networkData;
+		Assert.assertTrue(batch.size() >= 1);
+		Assert.assertEquals(4, batch.getDatagrams().get(0).getUdpData().remaining());
+		batch.release();
+
+		socket.close();
+	}
+
+	@Test(timeout = 1000)
+	public void multicast() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: multicast()");
+		InetSocketAddress group = new InetSocketAddress("239.255.42.1", PORT + 4);
+		NetworkInterface loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+		ListenerStats stats = server.joinMulticastGroup(group, loopback);
+
+		DatagramChannel sender = DatagramChannel.open(StandardProtocolFamily.INET);
+		sender.setOption(StandardSocketOptions.IP_MULTICAST_IF, loopback);
+		sender.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, Boolean.TRUE);
+		while (networkData == null) {
+			sender.send(ByteBuffer.wrap("test".getBytes()), group);
+			Thread.sleep(10);
+		}
+		sender.close();
+
+		Assert.assertTrue(networkData instanceof UdpNetworkData);
+		Assert.assertEquals(group, networkData.getReceiver());
+		Assert.assertNotNull(networkData.getSender());
+		Assert.assertTrue(stats.getUdpDatagrams() >= 1);
+		Assert.assertTrue(server.leaveMulticastGroup(group));
+		Assert.assertTrue(server.getMulticastGroupStats().isEmpty());
+
+		server.shutdown();
+		try {
+			server.joinMulticastGroup(group, loopback);
+			Assert.fail("Joined a group after the shutdown.");
+		} catch (IllegalStateException e) {
+			// Intentionally left empty.
+		}
+		Assert.assertTrue(server.getMulticastGroupStats().isEmpty());
+		new DatagramSocket(PORT + 4).close();
+	}
+
+	@Test(timeout = 1000)
+	public void udpSessions() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: udpSessions()");
+		final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+		server.setUdpSessionHandler(new IUdpSessionHandler() {
+
+			@Override
+			public void sessionOpened(UdpSession session) {
+				events.add("opened");
+				session.setAttachment(new AtomicInteger());
+			}
+
+			@Override
+			public void receiveData(UdpSession session, ByteBuffer data) {
+				int sequence = ((AtomicInteger) session.getAttachment()).incrementAndGet();
+				ByteBuffer reply = ByteBuffer.allocate(data.remaining() + 1);
+				reply.put(data);
+				reply.put((byte) ('0' + sequence));
+				reply.flip();
+				try {
+					session.reply(reply);
+				} catch (IOException e) {
+					events.add(e.getLocalizedMessage());
+				}
+			}
+
+			@Override
+			public void sessionClosed(UdpSession session) {
+				events.add("closed");
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+
+		DatagramSocket socket = new DatagramSocket();
+		for (String text : new String[] { "a", "b", "c" }) {
+			socket.send(new DatagramPacket(text.getBytes(), 1, InetAddress.getByName(HOSTNAME), PORT));
+		}
+		for (String expected : new String[] { "a1", "b2", "c3" }) {
+			DatagramPacket packet = new DatagramPacket(new byte[16], 16);
+			socket.receive(packet);
+			Assert.assertEquals(expected, new String(packet.getData(), 0, packet.getLength()));
+		}
+		Assert.assertEquals(1, server.getUdpSessions().size());
+		Assert.assertEquals(socket.getLocalPort(), server.getUdpSessions().iterator().next().getRemoteAddress().getPort());
+
+		while (!server.getUdpSessions().isEmpty()) {
+			Thread.sleep(1);
+		}
+		Assert.assertEquals(Arrays.asList("opened", "closed"), events);
+		Assert.assertNull(networkData);
+		socket.close();
+	}
+
+	@Test(timeout = 5000)
+	public void udpSessionsPerSocket() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: udpSessionsPerSocket()");
+		final AtomicInteger concurrentCalls = new AtomicInteger();
+		final AtomicInteger received = new AtomicInteger();
+		Server multiServer = new Server(Arrays.asList(Endpoint.udp(HOSTNAME, PORT + 3), Endpoint.udp(HOSTNAME, PORT + 4)), 2);
+		multiServer.setUdpSessionHandler(new IUdpSessionHandler() {
+
+			@Override
+			public void sessionOpened(UdpSession session) {
+				session.setAttachment(new AtomicInteger());
+			}
+
+			@Override
+			public void receiveData(UdpSession session, ByteBuffer data) {
+				if (((AtomicInteger) session.getAttachment()).incrementAndGet() != 1) {
+					concurrentCalls.incrementAndGet();
+				}
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				((AtomicInteger) session.getAttachment()).decrementAndGet();
+				received.incrementAndGet();
+			}
+
+			@Override
+			public void sessionClosed(UdpSession session) {
+				// Intentionally left empty.
+			}
+		}, 1, TimeUnit.SECONDS);
+		try {
+			DatagramSocket socket = new DatagramSocket();
+			for (int i = 0; i < 50; i++) {
+				socket.send(new DatagramPacket("a".getBytes(), 1, InetAddress.getByName(HOSTNAME), PORT + 3));
+				socket.send(new DatagramPacket("b".getBytes(), 1, InetAddress.getByName(HOSTNAME), PORT + 4));
+			}
+			while (received.get() < 100) {
+				Thread.sleep(1);
+			}
+			socket.close();
+
+			Assert.assertEquals(0, concurrentCalls.get());
+			Assert.assertEquals(2, multiServer.getUdpSessions().size());
+			List<UdpSession> sessions = new ArrayList<UdpSession>(multiServer.getUdpSessions());
+			Assert.assertEquals(sessions.get(0).getRemoteAddress(), sessions.get(1).getRemoteAddress());
+			Assert.assertNotSame(sessions.get(0).getEventLoop(), sessions.get(1).getEventLoop());
+		} finally {
+			multiServer.shutdown();
+		}
+	}
+
 	@Test(timeout = 1000)
 	public void tcpConnectionType() throws InterruptedException, IOException {
 		System.out.println(getClass().getSimpleName()+" - Running test: tcpConnectionType()");
@@ -195,6 +527,325 @@ public class ServerTest implements IObjectReceiver<INetworkData> {
 		socket.close();
 	}
 
+	@Test(timeout = 1000)
+	public void executorDispatch() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: executorDispatch()");
+		ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, "TestDispatcher");
+			}
+		});
+		server.setDispatchExecutor(executor);
+		Socket socket = new Socket(HOSTNAME, PORT);
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		Assert.assertTrue(networkData instanceof TcpNetworkData);
+		Assert.assertEquals("TestDispatcher", receivingThread.getName());
+
+		socket.close();
+		executor.shutdown();
+	}
+
+	@Test(timeout = 5000)
+	public void dispatchLanes() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: dispatchLanes()");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		server.setDispatchExecutor(executor, 4);
+		final Map<InetSocketAddress, List<Byte>> received = new ConcurrentHashMap<InetSocketAddress, List<Byte>>();
+		final AtomicInteger count = new AtomicInteger();
+		server.registerSocketReceiver(new IObjectReceiver<INetworkData>() {
+
+			@Override
+			public void receiveObject(INetworkData networkData) {
+				UdpNetworkData datagram = (UdpNetworkData) networkData;
+				List<Byte> sequence = received.get(datagram.getSender());
+				if (sequence == null) {
+					sequence = Collections.synchronizedList(new ArrayList<Byte>());
+					received.put(datagram.getSender(), sequence);
+				}
+				sequence.add(datagram.getUdpData().get(0));
+				count.incrementAndGet();
+			}
+		});
+		DatagramSocket first = new DatagramSocket();
+		DatagramSocket second = new DatagramSocket();
+		for (byte i = 0; i < 50; i++) {
+			first.send(new DatagramPacket(new byte[] { i }, 1, InetAddress.getByName(HOSTNAME), PORT));
+			second.send(new DatagramPacket(new byte[] { i }, 1, InetAddress.getByName(HOSTNAME), PORT));
+		}
+
+		while (count.get() < 100) {
+			Thread.sleep(1);
+		}
+
+		for (List<Byte> sequence : received.values()) {
+			for (int i = 0; i < sequence.size(); i++) {
+				Assert.assertEquals(i, sequence.get(i).intValue());
+			}
+		}
+		List<DispatchLaneStats> laneStats = server.getMetrics().getDispatchLaneStats();
+		Assert.assertEquals(4, laneStats.size());
+		long dispatched = 0;
+		for (DispatchLaneStats stats : laneStats) {
+			dispatched += stats.getDispatched();
+		}
+		Assert.assertEquals(100, dispatched);
+		Assert.assertTrue(server.getMetrics().getDispatchLaneImbalance() >= 1);
+
+		first.close();
+		second.close();
+		executor.shutdown();
+	}
+
+	@Test(timeout = 1000)
+	public void boundedConnectionQueue() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: boundedConnectionQueue()");
+		final AtomicInteger dropped = new AtomicInteger();
+		final AtomicInteger aboveHighWaterMark = new AtomicInteger();
+		final AtomicInteger belowLowWaterMark = new AtomicInteger();
+		Server boundedServer = new Server(HOSTNAME, PORT + 3) {
+
+			@Override
+			protected void hookConnectionQueueAboveHighWaterMark(int depth) {
+				aboveHighWaterMark.incrementAndGet();
+			}
+
+			@Override
+			protected void hookConnectionQueueBelowLowWaterMark(int depth) {
+				belowLowWaterMark.incrementAndGet();
+			}
+
+			@Override
+			protected void hookNetworkDataDropped(INetworkData networkData) {
+				dropped.incrementAndGet();
+			}
+		};
+		try {
+			boundedServer.setUdpBufferPooling(true);
+			boundedServer.setConnectionQueueCapacity(2, OverflowPolicy.DROP_NEWEST);
+			boundedServer.setConnectionQueueWaterMarks(0, 2);
+			DatagramSocket socket = new DatagramSocket();
+			DatagramPacket packet = new DatagramPacket("test".getBytes(), 4, InetAddress.getByName(HOSTNAME),
+					PORT + 3);
+			for (int i = 0; i < 4; i++) {
+				socket.send(packet);
+			}
+			socket.close();
+
+			while (dropped.get() < 2) {
+				Thread.sleep(1);
+			}
+			Assert.assertEquals(2, boundedServer.getConnectionQueueDepth());
+			Assert.assertEquals(1, aboveHighWaterMark.get());
+			Assert.assertEquals(2, boundedServer.getBufferPool().getReleases());
+
+			boundedServer.registerSocketReceiver(this);
+			while (boundedServer.getConnectionQueueDepth() > 0) {
+				Thread.sleep(1);
+			}
+			Assert.assertEquals(1, belowLowWaterMark.get());
+			Assert.assertTrue(networkData instanceof UdpNetworkData);
+		} finally {
+			boundedServer.shutdown();
+		}
+	}
+
+	@Test(timeout = 2000)
+	public void blockPausesAccepting() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: blockPausesAccepting()");
+		final AtomicInteger received = new AtomicInteger();
+		Server boundedServer = new Server(HOSTNAME, PORT + 3);
+		try {
+			boundedServer.setConnectionQueueCapacity(1, OverflowPolicy.BLOCK);
+			Socket first = new Socket(HOSTNAME, PORT + 3);
+			while (boundedServer.getConnectionQueueDepth() < 1) {
+				Thread.sleep(1);
+			}
+			// Lets the acceptor apply the pause before the next connection.
+			Thread.sleep(100);
+			Socket second = new Socket(HOSTNAME, PORT + 3);
+			Thread.sleep(100);
+			Assert.assertEquals(1, boundedServer.getConnectionQueueDepth());
+			Assert.assertEquals(1, boundedServer.getListenerStats().get(0).getTcpConnections());
+
+			boundedServer.registerSocketReceiver(new IObjectReceiver<INetworkData>() {
+
+				@Override
+				public void receiveObject(INetworkData networkData) {
+					received.incrementAndGet();
+				}
+			});
+			while (received.get() < 2) {
+				Thread.sleep(1);
+			}
+			Assert.assertEquals(2, boundedServer.getListenerStats().get(0).getTcpConnections());
+			first.close();
+			second.close();
+		} finally {
+			boundedServer.shutdown();
+		}
+	}
+
+	@Test(timeout = 2000)
+	public void dropOldestRefusesConnections() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: dropOldestRefusesConnections()");
+		final List<INetworkData> dropped = new CopyOnWriteArrayList<INetworkData>();
+		Server boundedServer = new Server(HOSTNAME, PORT + 3) {
+
+			@Override
+			protected void hookNetworkDataDropped(INetworkData networkData) {
+				dropped.add(networkData);
+			}
+		};
+		try {
+			boundedServer.setConnectionQueueCapacity(1, OverflowPolicy.DROP_OLDEST);
+			Socket first = new Socket(HOSTNAME, PORT + 3);
+			while (boundedServer.getConnectionQueueDepth() < 1) {
+				Thread.sleep(1);
+			}
+			Socket second = new Socket(HOSTNAME, PORT + 3);
+			second.setSoTimeout(1000);
+			Assert.assertEquals(-1, second.getInputStream().read());
+			while (dropped.isEmpty()) {
+				Thread.sleep(1);
+			}
+			Assert.assertEquals(second.getLocalPort(), dropped.get(0).getSender().getPort());
+			Assert.assertEquals(1, boundedServer.getConnectionQueueDepth());
+			first.close();
+			second.close();
+		} finally {
+			boundedServer.shutdown();
+		}
+	}
+
+	@Test(timeout = 1000)
+	public void metrics() throws InterruptedException, IOException, JMException {
+		System.out.println(getClass().getSimpleName()+" - Running test: metrics()");
+		ObjectName name = server.registerMetricsMBean();
+		Socket socket = new Socket(HOSTNAME, PORT);
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		ServerMetrics metrics = server.getMetrics();
+		while (metrics.getReceiverTime().getCount() < 1) {
+			Thread.sleep(1);
+		}
+		Assert.assertEquals(1, metrics.getTcpConnections());
+		Assert.assertEquals(1, metrics.getQueueWait().getCount());
+		Assert.assertEquals(2, metrics.getEventLoopStats().size());
+		Assert.assertTrue(metrics.getSelectedKeys() >= 1);
+		Assert.assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "TcpConnections"));
+
+		socket.close();
+		server.shutdown();
+		server = null;
+		Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+
+	@Test(timeout = 1000)
+	public void connectionTimeout() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: connectionTimeout()");
+		server.shutdown();
+		final List<ConnectionTimeout> timeouts = Collections.synchronizedList(new ArrayList<ConnectionTimeout>());
+		server = new Server(HOSTNAME, PORT) {
+
+			@Override
+			protected void hookConnectionTimedOut(TcpNetworkData connection, ConnectionTimeout timeout) {
+				timeouts.add(timeout);
+			}
+		};
+		server.registerSocketReceiver(this);
+		server.setConnectionTimeouts(100, 0, 0, TimeUnit.MILLISECONDS);
+		Socket socket = new Socket(HOSTNAME, PORT);
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+		Assert.assertEquals(1, server.getConnections().size());
+
+		Assert.assertEquals(-1, socket.getInputStream().read());
+		while (!server.getConnections().isEmpty()) {
+			Thread.sleep(1);
+		}
+		Assert.assertEquals(Arrays.asList(ConnectionTimeout.READ), timeouts);
+		socket.close();
+	}
+
+	@Test(timeout = 1000)
+	public void gracefulShutdown() throws InterruptedException, IOException {
+		System.out.println(getClass().getSimpleName()+" - Running test: gracefulShutdown()");
+		Socket socket = new Socket(HOSTNAME, PORT);
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+		final TcpNetworkData connection = (TcpNetworkData) networkData;
+		new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+					connection.close();
+				} catch (Exception e) {
+					// Intentionally left empty
+				}
+			}
+		}).start();
+
+		long start = System.nanoTime();
+		server.shutdown(10, TimeUnit.SECONDS);
+		server = null;
+		Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		Assert.assertEquals(-1, socket.getInputStream().read());
+		socket.close();
+	}
+
+	@Test(timeout = 5000)
+	public void shutdownClosesConnections() throws InterruptedException, IOException, GeneralSecurityException {
+		System.out.println(getClass().getSimpleName()+" - Running test: shutdownClosesConnections()");
+		Socket socket = new Socket(HOSTNAME, PORT);
+		socket.setSoTimeout(1000);
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+		final AtomicInteger closed = new AtomicInteger();
+		((TcpNetworkData) networkData).setConnectionHandler(new IConnectionHandler() {
+
+			@Override
+			public void receiveData(TcpNetworkData connection, ByteBuffer data) {
+				data.position(data.limit());
+			}
+
+			@Override
+			public void connectionClosed(TcpNetworkData connection) {
+				closed.incrementAndGet();
+			}
+		});
+
+		server.setSslContext(createSslContext());
+		Socket handshaking = new Socket(HOSTNAME, PORT);
+		handshaking.setSoTimeout(1000);
+		while (server.getListenerStats().get(0).getTcpConnections() < 2) {
+			Thread.sleep(1);
+		}
+
+		server.shutdown();
+		server = null;
+		Assert.assertEquals(-1, socket.getInputStream().read());
+		Assert.assertEquals(-1, handshaking.getInputStream().read());
+		Assert.assertEquals(1, closed.get());
+		socket.close();
+		handshaking.close();
+	}
+
 	@Test(timeout = 5000)
 	public void shutdown() throws IOException {
 		System.out.println(getClass().getSimpleName()+" - Running test: shutdown()");
@@ -203,6 +854,207 @@ public class ServerTest implements IObjectReceiver<INetworkData> {
 		server.shutdown();
 	}
 
+	@Test(timeout = 5000)
+	public void shutdownAsync() throws IOException, InterruptedException, ExecutionException {
+		System.out.println(getClass().getSimpleName()+" - Running test: shutdownAsync()");
+		server.shutdown();
+		server = new Server(HOSTNAME, PORT, 64);
+		long start = System.nanoTime();
+		CompletableFuture<Void> future = server.shutdownAsync();
+		Assert.assertSame(future, server.shutdownAsync());
+		future.get();
+		Assert.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+		server = new Server(HOSTNAME, PORT, 1);
+	}
+
+	@Test(timeout = 5000)
+	public void reusePort() throws IOException, InterruptedException {
+		System.out.println(getClass().getSimpleName()+" - Running test: reusePort()");
+		Server reusePortServer = new Server(HOSTNAME, PORT + 2, 4, false, 1024, true);
+		try {
+			Assert.assertEquals(4, reusePortServer.getListenerStats().size());
+			for (int i = 0; i < 8; i++) {
+				new Socket(HOSTNAME, PORT + 2).close();
+			}
+
+			long accepted = 0;
+			while (accepted < 8) {
+				Thread.sleep(1);
+				accepted = 0;
+				for (ListenerStats stats : reusePortServer.getListenerStats()) {
+					accepted += stats.getTcpConnections();
+				}
+			}
+			Assert.assertEquals(8, accepted);
+		} finally {
+			reusePortServer.shutdown();
+		}
+	}
+
+	@Test(timeout = 1000)
+	public void multipleEndpoints() throws IOException, InterruptedException {
+		System.out.println(getClass().getSimpleName()+" - Running test: multipleEndpoints()");
+		Endpoint tcp = Endpoint.tcp(HOSTNAME, PORT + 3);
+		Endpoint udp = Endpoint.udp(HOSTNAME, PORT + 4);
+		Endpoint both = Endpoint.tcpAndUdp(HOSTNAME, PORT + 5);
+		Server multiServer = new Server(Arrays.asList(tcp, udp, both), 2);
+		multiServer.registerSocketReceiver(this);
+		try {
+			Assert.assertEquals(3, multiServer.getListenerStats().size());
+			Assert.assertSame(udp, multiServer.getListenerStats().get(1).getEndpoint());
+
+			Socket socket = new Socket(HOSTNAME, PORT + 3);
+			while (networkData == null) {
+				Thread.sleep(1);
+			}
+			Assert.assertSame(tcp, networkData.getEndpoint());
+			socket.close();
+
+			networkData = null;
+			DatagramSocket datagramSocket = new DatagramSocket();
+			datagramSocket.send(new DatagramPacket("test".getBytes(), 4, InetAddress.getByName(HOSTNAME), PORT + 4));
+			while (networkData == null) {
+				Thread.sleep(1);
+			}
+			Assert.assertSame(udp, networkData.getEndpoint());
+
+			networkData = null;
+			datagramSocket.send(new DatagramPacket("test".getBytes(), 4, InetAddress.getByName(HOSTNAME), PORT + 5));
+			while (networkData == null) {
+				Thread.sleep(1);
+			}
+			Assert.assertSame(both, networkData.getEndpoint());
+			Assert.assertEquals(PORT + 5, networkData.getReceiver().getPort());
+			datagramSocket.close();
+		} finally {
+			multiServer.shutdown();
+		}
+	}
+
+	@Test(timeout = 1000)
+	public void listenerOptions() throws IOException, InterruptedException {
+		System.out.println(getClass().getSimpleName()+" - Running test: listenerOptions()");
+		try {
+			ListenerOptions.builder().udpReceiveBufferSize(0);
+			Assert.fail("A buffer size of 0 was accepted.");
+		} catch (IllegalArgumentException e) {
+			// Intentionally left empty.
+		}
+		ListenerOptions options = ListenerOptions.builder().backlog(1024).tcpNoDelay(true).keepAlive(true)
+				.tcpReceiveBufferSize(128 * 1024).udpReceiveBufferSize(64 * 1024).trafficClass(0x10).build();
+		Server optionsServer = new Server(
+				Collections.singletonList(Endpoint.tcpAndUdp(HOSTNAME, PORT + 6).withOptions(options)), 1);
+		optionsServer.registerSocketReceiver(this);
+		try {
+			ListenerOptions effective = optionsServer.getListenerStats().get(0).getOptions();
+			Assert.assertEquals(1024, effective.getBacklog());
+			Assert.assertEquals(Boolean.TRUE, effective.getTcpNoDelay());
+			Assert.assertTrue(effective.getTcpReceiveBufferSize() > 0);
+			Assert.assertTrue(effective.getUdpReceiveBufferSize() >= 64 * 1024);
+			Assert.assertTrue(effective.getUdpSendBufferSize() > 0);
+
+			Socket socket = new Socket(HOSTNAME, PORT + 6);
+			socket.getOutputStream().write(15);
+			while (networkData == null) {
+				Thread.sleep(1);
+			}
+			Assert.assertEquals(15, ((TcpNetworkData) networkData).getTcpInputStream().read());
+			socket.close();
+		} finally {
+			optionsServer.shutdown();
+		}
+	}
+
+	@Test(timeout = 1000)
+	public void acceptBatch() throws IOException, InterruptedException {
+		System.out.println(getClass().getSimpleName()+" - Running test: acceptBatch()");
+		// Counts the connections registered per task of the worker, i.e. per
+		// hand-off of the acceptor.
+		final Map<Long, AtomicInteger> perHandOff = new ConcurrentHashMap<Long, AtomicInteger>();
+		Server batchServer = new Server(HOSTNAME, PORT + 3) {
+
+			@Override
+			protected void hookPostTcpConnectionAccepted(TcpNetworkData networkData) {
+				long handOff = getEventLoops().get(0).getStats().getTasks();
+				perHandOff.putIfAbsent(handOff, new AtomicInteger());
+				perHandOff.get(handOff).incrementAndGet();
+			}
+		};
+		List<Socket> sockets = new ArrayList<Socket>();
+		try {
+			batchServer.setAcceptBatchSize(16);
+			Assert.assertEquals(16, batchServer.getAcceptBatchSize());
+			List<EventLoop> eventLoops = batchServer.getEventLoops();
+			EventLoopStats acceptorStats = eventLoops.get(eventLoops.size() - 1).getStats();
+
+			// Stalls the acceptor until all connections are queued.
+			final CountDownLatch isQueued = new CountDownLatch(1);
+			long tasks = acceptorStats.getTasks();
+			eventLoops.get(eventLoops.size() - 1).execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						isQueued.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			while (acceptorStats.getTasks() == tasks) {
+				Thread.sleep(1);
+			}
+			long selectedKeys = acceptorStats.getSelectedKeys();
+			for (int i = 0; i < 40; i++) {
+				sockets.add(new Socket(HOSTNAME, PORT + 3));
+			}
+			isQueued.countDown();
+
+			while (batchServer.getConnections().size() < 40) {
+				Thread.sleep(1);
+			}
+			// At most 16 connections per wakeup and hand-off, so at least 3 of
+			// each, but fewer than one per connection.
+			long wakeups = acceptorStats.getSelectedKeys() - selectedKeys;
+			Assert.assertTrue(wakeups >= 3 && wakeups < 40);
+			Assert.assertTrue(perHandOff.size() >= 3 && perHandOff.size() < 40);
+			int accepted = 0;
+			for (AtomicInteger count : perHandOff.values()) {
+				Assert.assertTrue(count.get() <= 16);
+				accepted += count.get();
+			}
+			Assert.assertEquals(40, accepted);
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+			batchServer.shutdown();
+		}
+	}
+
+	@Test(timeout = 1000)
+	public void waitStrategy() throws IOException, InterruptedException {
+		System.out.println(getClass().getSimpleName()+" - Running test: waitStrategy()");
+		server.setWaitStrategy(WaitStrategy.BUSY_SPIN, WaitStrategy.spinYieldPark(1000, 100));
+		Socket socket = new Socket(HOSTNAME, PORT);
+		socket.getOutputStream().write(15);
+		socket.getOutputStream().flush();
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		Assert.assertEquals(15, ((TcpNetworkData) networkData).getTcpInputStream().read());
+		boolean isWorkerNamed = false;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			isWorkerNamed |= thread.getName().equals("ServerWorker-" + PORT + "-0");
+		}
+		Assert.assertTrue(isWorkerNamed);
+
+		server.setWaitStrategy(WaitStrategy.BLOCKING);
+		socket.close();
+	}
+
 	@Test(timeout = 1000)
 	public void basicTcpTransfer() throws IOException, InterruptedException {
 		System.out.println(getClass().getSimpleName()+" - Running test: basicTcpTransfer()");
@@ -224,6 +1076,54 @@ public class ServerTest implements IObjectReceiver<INetworkData> {
 		socket.close();
 	}
 
+	@Test(timeout = 1000)
+	public void sourceLimits() throws IOException, InterruptedException {
+		System.out.println(getClass().getSimpleName()+" - Running test: sourceLimits()");
+		server.setMaxConnectionsPerSource(1);
+		server.setUdpSourceRateLimit(1, 2, TimeUnit.HOURS);
+		ListenerStats stats = server.getListenerStats().get(0);
+
+		Socket first = new Socket(HOSTNAME, PORT);
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+		Socket second = new Socket(HOSTNAME, PORT);
+		while (stats.getTcpConnectionsRejected() < 1) {
+			Thread.sleep(1);
+		}
+		try {
+			second.getInputStream().read();
+			Assert.fail("The rejected connection was not reset.");
+		} catch (SocketException e) {
+			// Intentionally left empty.
+		}
+		second.close();
+
+		((TcpNetworkData) networkData).close();
+		while (!server.getConnections().isEmpty()) {
+			Thread.sleep(1);
+		}
+		networkData = null;
+		Socket third = new Socket(HOSTNAME, PORT);
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+		Assert.assertEquals(1, stats.getTcpConnectionsRejected());
+		first.close();
+		third.close();
+
+		DatagramSocket socket = new DatagramSocket();
+		for (int i = 0; i < 5; i++) {
+			socket.send(new DatagramPacket("test".getBytes(), 4, InetAddress.getByName(HOSTNAME), PORT));
+		}
+		while (stats.getUdpDatagrams() + stats.getUdpDatagramsRejected() < 5) {
+			Thread.sleep(1);
+		}
+		Assert.assertEquals(2, stats.getUdpDatagrams());
+		Assert.assertEquals(3, stats.getUdpDatagramsRejected());
+		socket.close();
+	}
+
 	@Test(timeout = 1000)
 	public void dataTcpTransfer() throws IOException, InterruptedException {
 		System.out.println(getClass().getSimpleName()+" - Running test: dataTcpTransfer()");
@@ -268,6 +1168,306 @@ public class ServerTest implements IObjectReceiver<INetworkData> {
 		socket.close();
 	}
 
+	@Test(timeout = 1000)
+	public void nonBlockingEcho() throws IOException, InterruptedException {
+		System.out.println(getClass().getSimpleName()+" - Running test: nonBlockingEcho()");
+		Socket socket = new Socket(HOSTNAME, PORT);
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		final boolean[] closed = new boolean[1];
+		((TcpNetworkData) networkData).setConnectionHandler(new IConnectionHandler() {
+
+			@Override
+			public void receiveData(TcpNetworkData connection, ByteBuffer data) {
+				ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+				copy.put(data);
+				copy.flip();
+				try {
+					connection.write(copy);
+				} catch (IOException e) {
+					Assert.fail(e.getLocalizedMessage());
+				}
+			}
+
+			@Override
+			public void connectionClosed(TcpNetworkData connection) {
+				closed[0] = true;
+			}
+		});
+
+		DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
+		DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+		outputStream.writeUTF("echo_test");
+		outputStream.flush();
+		Assert.assertEquals("echo_test", inputStream.readUTF());
+
+		socket.close();
+		while (!closed[0]) {
+			Thread.sleep(1);
+		}
+	}
+
+	@Test(timeout = 1000)
+	public void frameEcho() throws IOException, InterruptedException {
+		System.out.println(getClass().getSimpleName()+" - Running test: frameEcho()");
+		Socket socket = new Socket(HOSTNAME, PORT);
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		final FrameEncoder encoder = new LengthFieldFrameEncoder(2);
+		((TcpNetworkData) networkData).setConnectionHandler(new LengthFieldFrameDecoder(2, 1024, new IFrameHandler() {
+
+			@Override
+			public void receiveFrame(TcpNetworkData connection, ByteBuffer frame) {
+				ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+				copy.put(frame);
+				copy.flip();
+				try {
+					encoder.write(connection, copy);
+				} catch (IOException e) {
+					Assert.fail(e.getLocalizedMessage());
+				}
+			}
+
+			@Override
+			public void connectionClosed(TcpNetworkData connection) {
+			}
+		}));
+
+		DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
+		DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+		outputStream.writeUTF("frame_one");
+		outputStream.writeUTF("frame_two");
+		outputStream.flush();
+		Assert.assertEquals("frame_one", inputStream.readUTF());
+		Assert.assertEquals("frame_two", inputStream.readUTF());
+
+		socket.close();
+	}
+
+	@Test(timeout = 1000)
+	public void sendFile() throws IOException, InterruptedException {
+		System.out.println(getClass().getSimpleName()+" - Running test: sendFile()");
+		File file = File.createTempFile("sendFile", ".txt");
+		file.deleteOnExit();
+		FileOutputStream fileOutput = new FileOutputStream(file);
+		fileOutput.write("0123456789".getBytes());
+		fileOutput.close();
+
+		Socket socket = new Socket(HOSTNAME, PORT);
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		FileInputStream fileInput = new FileInputStream(file);
+		((TcpNetworkData) networkData).sendFile(fileInput.getChannel(), 2, 5);
+		((TcpNetworkData) networkData).write(ByteBuffer.wrap("ab".getBytes()), ByteBuffer.wrap("cd".getBytes()));
+		fileInput.close();
+
+		byte[] bytes = new byte[9];
+		new DataInputStream(socket.getInputStream()).readFully(bytes);
+		Assert.assertEquals("23456abcd", new String(bytes));
+
+		socket.close();
+	}
+
+	@Test(timeout = 1000)
+	public void writeCoalescing() throws IOException, InterruptedException {
+		System.out.println(getClass().getSimpleName()+" - Running test: writeCoalescing()");
+		Socket socket = new Socket(HOSTNAME, PORT);
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		TcpNetworkData connection = (TcpNetworkData) networkData;
+		connection.setWriteCoalescing(1024, 100, TimeUnit.MILLISECONDS);
+		connection.setWriteWaterMarks(0, 3);
+		connection.setConnectionHandler(new IConnectionHandler() {
+
+			@Override
+			public void receiveData(TcpNetworkData connection, ByteBuffer data) {
+			}
+
+			@Override
+			public void connectionClosed(TcpNetworkData connection) {
+			}
+		});
+
+		connection.write(ByteBuffer.wrap("ab".getBytes()));
+		connection.write(ByteBuffer.wrap("cd".getBytes()));
+		Assert.assertFalse(connection.isWritable());
+
+		byte[] bytes = new byte[4];
+		new DataInputStream(socket.getInputStream()).readFully(bytes);
+		Assert.assertEquals("abcd", new String(bytes));
+
+		while (!connection.isWritable()) {
+			Thread.sleep(1);
+		}
+		Assert.assertEquals(0, connection.getPendingBytes());
+
+		socket.close();
+	}
+
+	@Test(timeout = 5000)
+	public void tlsTransfer() throws IOException, InterruptedException, GeneralSecurityException {
+		System.out.println(getClass().getSimpleName()+" - Running test: tlsTransfer()");
+		SSLContext sslContext = createSslContext();
+		server.setSslContext(sslContext);
+		SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket(HOSTNAME, PORT);
+		DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
+		outputStream.writeUTF("tls_test");
+		outputStream.flush();
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		TcpNetworkData connection = (TcpNetworkData) networkData;
+		Assert.assertNotNull(connection.getSslSession());
+		Assert.assertEquals("tls_test", new DataInputStream(connection.getTcpInputStream()).readUTF());
+		DataOutputStream remoteOutput = new DataOutputStream(connection.getTcpOutputStream());
+		remoteOutput.writeUTF("tls_reply");
+		remoteOutput.flush();
+		Assert.assertEquals("tls_reply", new DataInputStream(socket.getInputStream()).readUTF());
+		Assert.assertEquals(1, server.getListenerStats().get(0).getTlsHandshakes());
+
+		socket.close();
+	}
+
+	@Test(timeout = 5000)
+	public void tlsNonBlockingEcho() throws IOException, InterruptedException, GeneralSecurityException {
+		System.out.println(getClass().getSimpleName()+" - Running test: tlsNonBlockingEcho()");
+		SSLContext sslContext = createSslContext();
+		server.setSslContext(sslContext);
+		SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket(HOSTNAME, PORT);
+		socket.startHandshake();
+		// Sent before the server switches to non-blocking mode, so it may
+		// already be buffered by the handshake.
+		socket.getOutputStream().write("hello".getBytes());
+		socket.getOutputStream().flush();
+
+		while (networkData == null) {
+			Thread.sleep(1);
+		}
+
+		((TcpNetworkData) networkData).setConnectionHandler(new IConnectionHandler() {
+
+			@Override
+			public void receiveData(TcpNetworkData connection, ByteBuffer data) {
+				ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+				copy.put(data);
+				copy.flip();
+				try {
+					connection.write(copy);
+				} catch (IOException e) {
+					Assert.fail(e.getLocalizedMessage());
+				}
+			}
+
+			@Override
+			public void connectionClosed(TcpNetworkData connection) {
+			}
+		});
+
+		byte[] hello = new byte[5];
+		new DataInputStream(socket.getInputStream()).readFully(hello);
+		Assert.assertEquals("hello", new String(hello));
+
+		byte[] data = new byte[100000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		socket.getOutputStream().write(data);
+		socket.getOutputStream().flush();
+		byte[] echo = new byte[data.length];
+		new DataInputStream(socket.getInputStream()).readFully(echo);
+		Assert.assertArrayEquals(data, echo);
+
+		socket.close();
+	}
+
+	@Test(timeout = 5000)
+	public void tlsTaskExecutor() throws IOException, InterruptedException, GeneralSecurityException {
+		System.out.println(getClass().getSimpleName()+" - Running test: tlsTaskExecutor()");
+		final List<String> threadNames = new CopyOnWriteArrayList<String>();
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			server.setTlsTaskExecutor(new Executor() {
+
+				@Override
+				public void execute(final Runnable command) {
+					executor.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							threadNames.add(Thread.currentThread().getName());
+							command.run();
+						}
+					});
+				}
+			});
+			SSLContext sslContext = createSslContext();
+			server.setSslContext(sslContext);
+			SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket(HOSTNAME, PORT);
+			socket.startHandshake();
+
+			while (networkData == null) {
+				Thread.sleep(1);
+			}
+			Assert.assertFalse(threadNames.isEmpty());
+			for (String threadName : threadNames) {
+				Assert.assertFalse(threadName.startsWith("ServerWorker"));
+			}
+			Assert.assertEquals(1, server.getListenerStats().get(0).getTlsHandshakes());
+			socket.close();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void tlsHandshakeFailure() throws IOException, InterruptedException, GeneralSecurityException {
+		System.out.println(getClass().getSimpleName()+" - Running test: tlsHandshakeFailure()");
+		server.setSslContext(createSslContext());
+		Socket socket = new Socket(HOSTNAME, PORT);
+		socket.getOutputStream().write("plaintext\r\n\r\n".getBytes());
+		socket.getOutputStream().flush();
+
+		Assert.assertEquals(-1, socket.getInputStream().read());
+		while (server.getListenerStats().get(0).getTlsHandshakeFailures() == 0) {
+			Thread.sleep(1);
+		}
+		Assert.assertNull(networkData);
+
+		socket.close();
+	}
+
+	private SSLContext createSslContext() throws IOException, GeneralSecurityException {
+		char[] password = "changeit".toCharArray();
+		KeyStore keyStore = KeyStore.getInstance("PKCS12");
+		InputStream input = getClass().getResourceAsStream("/localhost.p12");
+		try {
+			keyStore.load(input, password);
+		} finally {
+			input.close();
+		}
+		KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagers.init(keyStore, password);
+		TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trustManagers.init(keyStore);
+		SSLContext sslContext = SSLContext.getInstance("TLS");
+		sslContext.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+		return sslContext;
+	}
+
 	@Test(timeout = 1000)
 	public void simultaneousReadWrite() throws IOException, InterruptedException {
 		System.out.println(getClass().getSimpleName()+" - Running test: simultaneousReadWrite()");
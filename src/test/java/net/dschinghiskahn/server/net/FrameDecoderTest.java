@@ -0,0 +1,99 @@
+package net.dschinghiskahn.server.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrameDecoderTest implements IFrameHandler {
+
+	private List<String> frames;
+
+	@Override
+	public void receiveFrame(TcpNetworkData connection, ByteBuffer frame) {
+		byte[] bytes = new byte[frame.remaining()];
+		frame.get(bytes);
+		frames.add(new String(bytes));
+	}
+
+	@Override
+	public void connectionClosed(TcpNetworkData connection) {
+	}
+
+	@Before
+	public void before() {
+		frames = new ArrayList<String>();
+	}
+
+	@Test
+	public void lengthField() {
+		System.out.println(getClass().getSimpleName()+" - Running test: lengthField()");
+		FrameDecoder decoder = new LengthFieldFrameDecoder(2, 1024, this);
+		ByteBuffer data = ByteBuffer.allocate(64);
+		for (String frame : new String[] { "first", "", "second" }) {
+			for (ByteBuffer buffer : new LengthFieldFrameEncoder(2).encode(ByteBuffer.wrap(frame.getBytes()))) {
+				data.put(buffer);
+			}
+		}
+		data.flip();
+
+		feedInChunks(decoder, data, 3);
+
+		Assert.assertEquals(3, frames.size());
+		Assert.assertEquals("first", frames.get(0));
+		Assert.assertEquals("", frames.get(1));
+		Assert.assertEquals("second", frames.get(2));
+	}
+
+	@Test
+	public void lines() {
+		System.out.println(getClass().getSimpleName()+" - Running test: lines()");
+		FrameDecoder decoder = DelimiterFrameDecoder.lines(1024, this);
+
+		feedInChunks(decoder, ByteBuffer.wrap("one\ntwo\n\nthree\nrest".getBytes()), 2);
+
+		Assert.assertEquals(4, frames.size());
+		Assert.assertEquals("one", frames.get(0));
+		Assert.assertEquals("two", frames.get(1));
+		Assert.assertEquals("", frames.get(2));
+		Assert.assertEquals("three", frames.get(3));
+	}
+
+	@Test
+	public void multiByteDelimiter() {
+		System.out.println(getClass().getSimpleName()+" - Running test: multiByteDelimiter()");
+		FrameDecoder decoder = new DelimiterFrameDecoder("\r\n".getBytes(), 1024, this);
+
+		feedInChunks(decoder, ByteBuffer.wrap("one\r\ntwo\r\n".getBytes()), 1);
+
+		Assert.assertEquals(2, frames.size());
+		Assert.assertEquals("one", frames.get(0));
+		Assert.assertEquals("two", frames.get(1));
+	}
+
+	@Test
+	public void fixedLength() {
+		System.out.println(getClass().getSimpleName()+" - Running test: fixedLength()");
+		FrameDecoder decoder = new FixedLengthFrameDecoder(4, this);
+
+		decoder.receiveData(null, ByteBuffer.wrap("abcdefghij".getBytes()));
+		decoder.receiveData(null, ByteBuffer.wrap("kl".getBytes()));
+
+		Assert.assertEquals(3, frames.size());
+		Assert.assertEquals("abcd", frames.get(0));
+		Assert.assertEquals("efgh", frames.get(1));
+		Assert.assertEquals("ijkl", frames.get(2));
+	}
+
+	private void feedInChunks(FrameDecoder decoder, ByteBuffer data, int chunkSize) {
+		while (data.hasRemaining()) {
+			ByteBuffer chunk = data.duplicate();
+			chunk.limit(Math.min(data.limit(), data.position() + chunkSize));
+			data.position(chunk.limit());
+			decoder.receiveData(null, chunk);
+		}
+	}
+}